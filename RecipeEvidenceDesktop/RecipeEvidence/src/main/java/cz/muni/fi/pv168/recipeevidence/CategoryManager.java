@@ -3,6 +3,7 @@ package cz.muni.fi.pv168.recipeevidence;
 import cz.muni.fi.pv168.recipeevidence.impl.Category;
 import cz.muni.fi.pv168.recipeevidence.impl.ServiceFailureException;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -32,6 +33,15 @@ public interface CategoryManager {
      */
     void deleteCategory(Category category) throws ServiceFailureException;
 
+    /**
+     * Deletes categories with given ids in one transaction together with links
+     * to their recipes, missing ids are ignored
+     * @param ids ids of categories
+     * @return number of deleted categories
+     * @throws ServiceFailureException
+     */
+    int deleteCategories(Collection<Long> ids) throws ServiceFailureException;
+
     /**
      * Finds category by the given id
      * @param id is an id of wanted category
@@ -54,4 +64,14 @@ public interface CategoryManager {
      * @throws ServiceFailureException
      */
     List<Category> findAllCategories() throws ServiceFailureException;
+
+    /**
+     * Completes a name of category, ignoring case and diacritics
+     * @param prefix is beginning of the name
+     * @param limit is maximal number of returned names
+     * @return names of categories starting with the prefix, the ones with
+     * most recipes first
+     * @throws ServiceFailureException
+     */
+    List<String> suggestCategories(String prefix, int limit) throws ServiceFailureException;
 }
@@ -1,11 +1,15 @@
 package cz.muni.fi.pv168.recipeevidence;
 
 import cz.muni.fi.pv168.recipeevidence.impl.Category;
+import cz.muni.fi.pv168.recipeevidence.impl.IllegalEntityException;
 import cz.muni.fi.pv168.recipeevidence.impl.RCDependency;
 import cz.muni.fi.pv168.recipeevidence.impl.Recipe;
 import cz.muni.fi.pv168.recipeevidence.impl.ServiceFailureException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface for RCDependency objects
@@ -35,6 +39,16 @@ public interface RCDependencyManager {
      */
     void deleteDependency(RCDependency dependency) throws ServiceFailureException;
 
+    /**
+     * Store recipes into category in one batch, recipes already in the category are skipped
+     * @param category is category to be filled
+     * @param recipes are recipes to be stored into the category
+     * @return number of recipes newly stored into the category
+     * @throws IllegalEntityException when the category or some of the recipes is not in database
+     * @throws ServiceFailureException
+     */
+    int assignRecipesToCategory(Category category, Collection<Recipe> recipes) throws ServiceFailureException;
+
     /**
      * Get all dependencies currently stored in database
      * @return all found dependencies
@@ -50,6 +64,32 @@ public interface RCDependencyManager {
      */
     List<Recipe> findRecipesInCategory(Category category) throws ServiceFailureException;
 
+    /**
+     * Get recipes stored in at least one of the given categories
+     * @param categories are categories with recipes
+     * @return recipes ordered by id, empty list for no categories
+     * @throws ServiceFailureException
+     */
+    List<Recipe> findRecipesInAnyCategory(Set<Category> categories) throws ServiceFailureException;
+
+    /**
+     * Get recipes stored in every one of the given categories
+     * @param categories are categories with recipes
+     * @return recipes ordered by id, empty list for no categories
+     * @throws ServiceFailureException
+     */
+    List<Recipe> findRecipesInAllCategories(Set<Category> categories) throws ServiceFailureException;
+
+    /**
+     * Count recipes of the given set in each category, e.g. to show how many
+     * recipes of a search result are in each category
+     * @param recipeIds are ids of recipes to be counted, unknown ids are ignored
+     * @return number of the recipes by category id, ordered by id, categories
+     * without any of the recipes are left out
+     * @throws ServiceFailureException
+     */
+    Map<Long, Integer> countRecipesInCategories(Collection<Long> recipeIds) throws ServiceFailureException;
+
     /**
      * Get all categories containing the given recipe
      * @param recipe is a recipe stored in categories
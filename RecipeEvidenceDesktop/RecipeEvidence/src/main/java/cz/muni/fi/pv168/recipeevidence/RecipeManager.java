@@ -1,9 +1,13 @@
 package cz.muni.fi.pv168.recipeevidence;
 
+import cz.muni.fi.pv168.recipeevidence.impl.IngredientMatch;
 import cz.muni.fi.pv168.recipeevidence.impl.Recipe;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSortKey;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Interface for Recipe objects
@@ -18,23 +22,71 @@ public interface RecipeManager {
     void createRecipe(Recipe recipe);
 
     /**
-     * Updates recipe
+     * Stores all given recipes into database in one transaction
+     * @param recipes are new recipes
+     */
+    void createRecipes(Collection<Recipe> recipes);
+
+    /**
+     * Updates recipe. If version of the recipe is known, update fails with
+     * OptimisticLockException when the recipe was modified in the meantime.
      * @param recipe is a recipe for update
      */
     void updateRecipe(Recipe recipe);
 
+    /**
+     * Writes only columns and ingredients changed since the recipe was read from
+     * or written to the database, without reading it again. Update fails with
+     * OptimisticLockException when the recipe was modified in the meantime.
+     * @param recipe is a recipe read from the database and then changed
+     */
+    void updateRecipeChanges(Recipe recipe);
+
     /**
      * Delete given recipe from the database
      * @param recipe is recipe to be deleted
      */
     void deleteRecipe(Recipe recipe);
 
+    /**
+     * Delete recipes with given IDs from the database in one transaction together
+     * with their ingredients and links to categories. Missing IDs are ignored.
+     * @param ids are IDs of recipes to be deleted
+     * @return number of deleted recipes
+     */
+    int deleteRecipes(Collection<Long> ids);
+
     /**
      * Get all recipes
      * @return all recipes currently in database
      */
     List<Recipe> findAllRecipes();
 
+    /**
+     * Get all recipes one at a time, without loading all of them into memory.
+     * Stream holds a database connection until it is closed, so it should be
+     * used in try-with-resources statement.
+     * @return stream of all recipes currently in database ordered by ID
+     */
+    Stream<Recipe> streamAllRecipes();
+
+    /**
+     * Get one page of recipes. Page is addressed by the last recipe of the previous
+     * page, so fetching any page costs the same as fetching the first one.
+     * The previous recipe does not have to exist any more, only its ID and name are used.
+     * @param after is the last recipe of the previous page or null for the first page
+     * @param limit is maximal number of returned recipes
+     * @param sortKey is order of recipes
+     * @return at most limit recipes following the recipe after
+     */
+    List<Recipe> findRecipes(Recipe after, int limit, RecipeSortKey sortKey);
+
+    /**
+     * Get number of recipes, e.g. for paging controls
+     * @return number of recipes currently in database
+     */
+    long countRecipes();
+
     /**
      * Get recipe by the given ID
      * @param id is ID of the wanted recipe
@@ -55,4 +107,29 @@ public interface RecipeManager {
      */
     List<Recipe> findRecipeByIngredients(Set<String> ingredients);
 
+    /**
+     * @param ingredients is list of desired ingredients
+     * @param match is how the ingredients are compared with ingredients of recipes
+     * @return list of Recipes containing a matching ingredient for each given ingredient
+     */
+    List<Recipe> findRecipeByIngredients(Set<String> ingredients, IngredientMatch match);
+
+    /**
+     * Full-text search in names and procedures, ignoring case, diacritics and
+     * Czech case endings
+     * @param query are searched words
+     * @param limit is maximal number of returned recipes
+     * @return recipes containing any of the words, the most relevant first
+     */
+    List<Recipe> searchRecipes(String query, int limit);
+
+    /**
+     * Completes a name of ingredient, ignoring case and diacritics
+     * @param prefix is beginning of the name
+     * @param limit is maximal number of returned names
+     * @return names of ingredients starting with the prefix, the ones used
+     * by most recipes first
+     */
+    List<String> suggestIngredients(String prefix, int limit);
+
 }
\ No newline at end of file
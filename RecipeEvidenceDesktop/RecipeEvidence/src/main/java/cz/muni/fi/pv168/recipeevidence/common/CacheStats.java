@@ -0,0 +1,69 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+/**
+ * Snapshot of cache hit and miss counters
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long weight;
+
+    public CacheStats(long hits, long misses) {
+        this(hits, misses, 0, 0);
+    }
+
+    public CacheStats(long hits, long misses, long evictions, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.weight = weight;
+    }
+
+    /**
+     * @return number of lookups answered by the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups which had to read the database
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries removed to keep the cache within its bounds
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return estimated size of cached entries in bytes, 0 when the cache is not bounded by size
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return ratio of hits to all lookups, 0 when there was no lookup
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", weight=" + weight +
+                '}';
+    }
+}
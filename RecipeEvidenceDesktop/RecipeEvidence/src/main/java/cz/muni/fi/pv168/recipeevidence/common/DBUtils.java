@@ -101,7 +101,7 @@ public class DBUtils {
      * @param url url of the file
      * @return array of command  strings
      */
-    private static String[] readSqlStatements(URL url) {
+    static String[] readSqlStatements(URL url) {
         try {
             char buffer[] = new char[256];
             StringBuilder result = new StringBuilder();
@@ -166,6 +166,20 @@ public class DBUtils {
         }
     }
 
+    /**
+     * Creates parameter markers for IN predicate.
+     * 
+     * @param count number of parameters
+     * @return string like "?,?,?"
+     */
+    public static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder("?");
+        for (int i = 1; i < count; i++) {
+            builder.append(",?");
+        }
+        return builder.toString();
+    }
+
     /**
      * Check if updates count is one. Otherwise appropriate exception is thrown.
      * 
@@ -0,0 +1,99 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Creates pooled data sources. Pool is configured by properties, missing
+ * properties get defaults suitable for embedded Derby database:
+ *
+ * <ul>
+ * <li>url - JDBC url of the database, required</li>
+ * <li>driverClassName, username, password - empty by default</li>
+ * <li>minIdle (2), maxIdle (8), maxTotal (8) - number of pooled connections</li>
+ * <li>maxWaitMillis (10000) - how long to wait for a free connection</li>
+ * <li>poolPreparedStatements (true), maxOpenPreparedStatements (100) - statement pooling per connection</li>
+ * <li>validationQuery (VALUES 1), validationQueryTimeout (5) - connections are validated when borrowed</li>
+ * <li>timeBetweenEvictionRunsMillis (30000) - period of checks of idle and abandoned connections</li>
+ * <li>removeAbandonedTimeout (3600) - seconds after which not closed connection is considered leaked,
+ * leaked connections are logged together with stack trace of the code which borrowed them and closed
+ * by the periodic check. Export and import of all recipes hold one connection for the whole run,
+ * so the timeout has to be longer than the longest of them.</li>
+ * <li>jmxName - name under which the pool is registered as MBean, not registered by default</li>
+ * </ul>
+ * Metrics of the pool are available by {@link PooledDataSource#getMetrics()}.
+ */
+public class DataSourceFactory {
+
+    private static final Logger logger = Logger.getLogger(
+            DataSourceFactory.class.getName());
+
+    /**
+     * Creates pool with default configuration
+     *
+     * @param url JDBC url of the database
+     * @return new pool
+     */
+    public static PooledDataSource createPooledDataSource(String url) {
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        return createPooledDataSource(properties);
+    }
+
+    /**
+     * Creates pool configured by given properties
+     *
+     * @param properties configuration of the pool, see class description
+     * @return new pool
+     */
+    public static PooledDataSource createPooledDataSource(Properties properties) {
+        String url = properties.getProperty("url");
+        if (url == null) {
+            throw new IllegalArgumentException("url is not set");
+        }
+        PooledDataSource ds = new PooledDataSource();
+        ds.setUrl(url);
+        if (properties.getProperty("driverClassName") != null) {
+            ds.setDriverClassName(properties.getProperty("driverClassName"));
+        }
+        if (properties.getProperty("username") != null) {
+            ds.setUsername(properties.getProperty("username"));
+            ds.setPassword(properties.getProperty("password"));
+        }
+        ds.setMinIdle(getInt(properties, "minIdle", 2));
+        ds.setMaxIdle(getInt(properties, "maxIdle", 8));
+        ds.setMaxTotal(getInt(properties, "maxTotal", 8));
+        ds.setMaxWaitMillis(getInt(properties, "maxWaitMillis", 10000));
+
+        ds.setPoolPreparedStatements(Boolean.parseBoolean(
+                properties.getProperty("poolPreparedStatements", "true")));
+        ds.setMaxOpenPreparedStatements(getInt(properties, "maxOpenPreparedStatements", 100));
+
+        ds.setValidationQuery(properties.getProperty("validationQuery", "VALUES 1"));
+        ds.setValidationQueryTimeout(getInt(properties, "validationQueryTimeout", 5));
+        ds.setTestOnBorrow(true);
+
+        ds.setTimeBetweenEvictionRunsMillis(getInt(properties, "timeBetweenEvictionRunsMillis", 30000));
+        // only the periodic check, an exhausted pool must not reclaim a connection of a long export
+        ds.setRemoveAbandonedOnMaintenance(true);
+        ds.setRemoveAbandonedTimeout(getInt(properties, "removeAbandonedTimeout", 3600));
+        ds.setLogAbandoned(true);
+        if (properties.getProperty("jmxName") != null) {
+            ds.setJmxName(properties.getProperty("jmxName"));
+        }
+        logger.info("Created connection pool for " + url);
+        return ds;
+    }
+
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Property " + name + " is not a number: " + value, ex);
+        }
+    }
+}
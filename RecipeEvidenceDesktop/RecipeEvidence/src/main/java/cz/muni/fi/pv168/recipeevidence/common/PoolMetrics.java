@@ -0,0 +1,77 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+/**
+ * Snapshot of connection pool metrics
+ */
+public class PoolMetrics {
+
+    private final int active;
+    private final int idle;
+    private final long borrowed;
+    private final long created;
+    private final long meanWaitMillis;
+    private final long maxWaitMillis;
+
+    public PoolMetrics(int active, int idle, long borrowed, long created, long meanWaitMillis, long maxWaitMillis) {
+        this.active = active;
+        this.idle = idle;
+        this.borrowed = borrowed;
+        this.created = created;
+        this.meanWaitMillis = meanWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * @return number of connections currently borrowed from the pool
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return number of connections waiting in the pool
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return number of connections borrowed since the pool was created
+     */
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    /**
+     * @return number of physical connections opened since the pool was created
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return mean time spent waiting for a connection in recent borrows
+     */
+    public long getMeanWaitMillis() {
+        return meanWaitMillis;
+    }
+
+    /**
+     * @return maximal time spent waiting for a connection
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{" +
+                "active=" + active +
+                ", idle=" + idle +
+                ", borrowed=" + borrowed +
+                ", created=" + created +
+                ", meanWaitMillis=" + meanWaitMillis +
+                ", maxWaitMillis=" + maxWaitMillis +
+                '}';
+    }
+}
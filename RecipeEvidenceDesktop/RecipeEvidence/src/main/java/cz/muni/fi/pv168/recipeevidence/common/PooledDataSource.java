@@ -0,0 +1,27 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+/**
+ * Connection pool which exposes its metrics. Instances are created by
+ * {@link DataSourceFactory}, pool has to be closed when it is no longer used.
+ */
+public class PooledDataSource extends BasicDataSource {
+
+    /**
+     * Takes snapshot of the pool state
+     *
+     * @return current metrics of the pool
+     */
+    public PoolMetrics getMetrics() {
+        GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+        if (pool == null) {
+            // pool is created with the first connection
+            return new PoolMetrics(0, 0, 0, 0, 0, 0);
+        }
+        return new PoolMetrics(pool.getNumActive(), pool.getNumIdle(), pool.getBorrowedCount(),
+                pool.getCreatedCount(), pool.getMeanBorrowWaitTimeMillis(), pool.getMaxBorrowWaitTimeMillis());
+    }
+}
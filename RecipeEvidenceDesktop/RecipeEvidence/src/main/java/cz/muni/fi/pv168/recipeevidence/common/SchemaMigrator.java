@@ -0,0 +1,199 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import javax.sql.DataSource;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Brings database schema to the current version.
+ *
+ * Version of the schema is stored in table SCHEMA_VERSION. Empty database is created
+ * by script createTables.sql, which always describes the current schema. Database
+ * created before versioning was introduced is considered to be in version 1. Missing
+ * migrations are then applied in ascending order, each of them in one transaction
+ * together with the record of its version, so running the migrator repeatedly is safe.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = Logger.getLogger(
+            SchemaMigrator.class.getName());
+
+    private static final String CREATE_TABLES = "/cz/muni/fi/pv168/recipeevidence/createTables.sql";
+    private static final String MIGRATIONS = "/cz/muni/fi/pv168/recipeevidence/migrations/";
+
+    /**
+     * Ordered list of migrations, version of the last one is version of createTables.sql
+     */
+    private static final List<Migration> migrations = Arrays.asList(
+            new Migration(2, "indexes and keys", "V2__indexes_and_keys.sql"),
+            new Migration(3, "ingredient dictionary", "V3__ingredient_dictionary.sql"),
+            new Migration(4, "recipe version", "V4__recipe_version.sql"),
+            new Migration(5, "cascade category links", "V5__cascade_category_links.sql"),
+            new Migration(6, "import checkpoint", "V6__import_checkpoint.sql")
+    );
+
+    /**
+     * @return version of the current schema
+     */
+    public static int getLatestVersion() {
+        return migrations.get(migrations.size() - 1).version;
+    }
+
+    /**
+     * Creates or upgrades schema of the database to the latest version.
+     *
+     * @param ds dataSource
+     * @throws SQLException when operation fails
+     */
+    public static void migrate(DataSource ds) throws SQLException {
+        int version = getCurrentVersion(ds);
+        if (version == 0) {
+            DBUtils.executeSqlScript(ds, SchemaMigrator.class.getResource(CREATE_TABLES));
+            logger.warning("Tables created");
+            version = getCurrentVersion(ds);
+        }
+        for (Migration migration : migrations) {
+            if (migration.version > version) {
+                apply(ds, migration);
+                version = migration.version;
+            }
+        }
+        if (version != getLatestVersion()) {
+            throw new IllegalStateException("Database schema version " + version
+                    + " is not supported, expected " + getLatestVersion());
+        }
+    }
+
+    /**
+     * Reads version of the schema. Database without table SCHEMA_VERSION is either
+     * empty (version 0) or created before versioning (version 1), which is recorded.
+     *
+     * @param ds dataSource
+     * @return current version of the schema
+     * @throws SQLException when operation fails
+     */
+    public static int getCurrentVersion(DataSource ds) throws SQLException {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = ds.getConnection();
+            st = conn.prepareStatement("SELECT MAX(VERSION) FROM SCHEMA_VERSION");
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException ex) {
+            if (!TABLE_DOES_NOT_EXIST.equals(ex.getSQLState())) {
+                throw ex;
+            }
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        if (!tableExists(ds, "RECIPE")) {
+            return 0;
+        }
+        try {
+            conn = ds.getConnection();
+            conn.setAutoCommit(false);
+            conn.prepareStatement("CREATE TABLE SCHEMA_VERSION ("
+                    + "VERSION INT NOT NULL PRIMARY KEY, "
+                    + "DESCRIPTION VARCHAR(255) NOT NULL, "
+                    + "APPLIED TIMESTAMP DEFAULT CURRENT_TIMESTAMP)").executeUpdate();
+            recordVersion(conn, 1, "schema before versioning");
+            conn.commit();
+            logger.warning("Existing schema recorded as version 1");
+            return 1;
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * This code represents "Table/View ... does not exist"
+     * This code is Derby specific!
+     */
+    private static final String TABLE_DOES_NOT_EXIST = "42X05";
+
+    /**
+     * This code represents "Table/View/Index/Constraint ... already exists"
+     * This code is Derby specific!
+     */
+    private static final String ALREADY_EXISTS = "X0Y32";
+
+    private static boolean tableExists(DataSource ds, String table) throws SQLException {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = ds.getConnection();
+            st = conn.prepareStatement("SELECT 1 FROM " + table + " WHERE 1 = 0");
+            st.executeQuery();
+            return true;
+        } catch (SQLException ex) {
+            if (TABLE_DOES_NOT_EXIST.equals(ex.getSQLState())) {
+                return false;
+            }
+            throw ex;
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    private static void apply(DataSource ds, Migration migration) throws SQLException {
+        URL script = SchemaMigrator.class.getResource(MIGRATIONS + migration.script);
+        if (script == null) {
+            throw new IllegalStateException("Missing migration script " + migration.script);
+        }
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            conn.setAutoCommit(false);
+            for (String sqlStatement : DBUtils.readSqlStatements(script)) {
+                if (sqlStatement.trim().isEmpty()) {
+                    continue;
+                }
+                try (PreparedStatement st = conn.prepareStatement(sqlStatement)) {
+                    st.executeUpdate();
+                } catch (SQLException ex) {
+                    if (!ALREADY_EXISTS.equals(ex.getSQLState())) {
+                        throw ex;
+                    }
+                    // created by an earlier createTables.sql
+                    logger.info("Skipping existing object: " + ex.getMessage());
+                }
+            }
+            recordVersion(conn, migration.version, migration.description);
+            conn.commit();
+            logger.warning("Schema migrated to version " + migration.version + " (" + migration.description + ")");
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    private static void recordVersion(Connection conn, int version, String description) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPTION) VALUES (?,?)")) {
+            st.setInt(1, version);
+            st.setString(2, description);
+            DBUtils.checkUpdatesCount(st.executeUpdate(), "schema version " + version, true);
+        }
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String script;
+
+        private Migration(int version, String description, String script) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binds one connection with running transaction to the current thread, so that
+ * nested manager calls of one logical operation share it and the operation is
+ * committed once.
+ *
+ * Managers obtain connections by {@link #getConnection(DataSource)}. Outside of
+ * {@link #execute(DataSource, Work)} it returns a new connection of the data source.
+ * Inside it returns the bound connection wrapped so that commit, rollback, close and
+ * changes of autocommit mode done by the manager are ignored. The transaction is
+ * committed when the outermost work finishes and rolled back when it throws or when
+ * a manager rolled back work it had not committed.
+ * Actions which must not run before the data are committed (e.g. cache updates)
+ * are registered by {@link #afterCommit(DataSource, Runnable)}.
+ */
+public class TransactionContext {
+
+    private static final Logger logger = Logger.getLogger(
+            TransactionContext.class.getName());
+
+    private static final ThreadLocal<Map<DataSource, Transaction>> transactions = new ThreadLocal<>();
+
+    /**
+     * Work done in a transaction
+     *
+     * @param <T> type of the result
+     */
+    public interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs work in a transaction. If the current thread already runs a transaction
+     * for the data source, work joins it.
+     *
+     * @param dataSource dataSource
+     * @param work work to be done
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException when work or commit fails or a participant rolled back,
+     * transaction is rolled back
+     */
+    public static <T> T execute(DataSource dataSource, Work<T> work) throws SQLException {
+        Transaction transaction = getTransaction(dataSource);
+        if (transaction != null) {
+            return work.run(transaction.participant());
+        }
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException ex) {
+            DBUtils.closeQuietly(connection);
+            throw ex;
+        }
+        try {
+            transaction = new Transaction(connection);
+            bind(dataSource, transaction);
+            T result;
+            try {
+                result = work.run(transaction.participant());
+            } finally {
+                unbind(dataSource);
+            }
+            if (transaction.rollbackOnly) {
+                throw new SQLException("Transaction was rolled back by a participant");
+            }
+            connection.commit();
+            transaction.runAfterCommit();
+            return result;
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Returns connection of the transaction running in the current thread or
+     * a new connection when there is none. Connection has to be closed.
+     *
+     * @param dataSource dataSource
+     * @return connection
+     * @throws SQLException when connection cannot be obtained
+     */
+    public static Connection getConnection(DataSource dataSource) throws SQLException {
+        Transaction transaction = getTransaction(dataSource);
+        return transaction == null ? dataSource.getConnection() : transaction.participant();
+    }
+
+    /**
+     * @param dataSource dataSource
+     * @return true if the current thread runs a transaction for the data source
+     */
+    public static boolean isActive(DataSource dataSource) {
+        return getTransaction(dataSource) != null;
+    }
+
+    /**
+     * Runs action after the transaction running in the current thread is committed.
+     * When there is no such transaction, the caller has committed its own work and
+     * action runs immediately. Actions are dropped on rollback.
+     *
+     * @param dataSource dataSource
+     * @param action action to be run
+     */
+    public static void afterCommit(DataSource dataSource, Runnable action) {
+        Transaction transaction = getTransaction(dataSource);
+        if (transaction == null) {
+            action.run();
+        } else {
+            transaction.afterCommit.add(action);
+        }
+    }
+
+    private static Transaction getTransaction(DataSource dataSource) {
+        Map<DataSource, Transaction> bound = transactions.get();
+        return bound == null ? null : bound.get(dataSource);
+    }
+
+    private static void bind(DataSource dataSource, Transaction transaction) {
+        Map<DataSource, Transaction> bound = transactions.get();
+        if (bound == null) {
+            // data sources are compared by identity, not by their configuration
+            bound = new IdentityHashMap<>();
+            transactions.set(bound);
+        }
+        bound.put(dataSource, transaction);
+    }
+
+    private static void unbind(DataSource dataSource) {
+        Map<DataSource, Transaction> bound = transactions.get();
+        bound.remove(dataSource);
+        if (bound.isEmpty()) {
+            transactions.remove();
+        }
+    }
+
+    private static class Transaction {
+
+        private final Connection connection;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private boolean rollbackOnly;
+
+        private Transaction(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return view of the connection for one participant, which keeps
+         * its own autocommit flag so that DBUtils work with it as usual
+         */
+        private Connection participant() {
+            boolean[] autoCommit = {true};
+            // participant has work it has not committed yet, rolling back after
+            // commit (as DBUtils.doRollbackQuietly in finally does) is harmless
+            boolean[] uncommitted = {false};
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        return null;
+                    case "commit":
+                        uncommitted[0] = false;
+                        return null;
+                    case "rollback":
+                        if (args == null) {
+                            // the outermost work rolls back instead of committing
+                            if (uncommitted[0]) {
+                                rollbackOnly = true;
+                                uncommitted[0] = false;
+                            }
+                            return null;
+                        }
+                        break;
+                    case "setAutoCommit":
+                        autoCommit[0] = (Boolean) args[0];
+                        uncommitted[0] = !autoCommit[0];
+                        return null;
+                    case "getAutoCommit":
+                        return autoCommit[0];
+                    case "createStatement":
+                    case "prepareStatement":
+                    case "prepareCall":
+                        if (!autoCommit[0]) {
+                            uncommitted[0] = true;
+                        }
+                        break;
+                    case "unwrap":
+                        if (args[0] == Connection.class) {
+                            return connection;
+                        }
+                        break;
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(TransactionContext.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handler);
+        }
+
+        private void runAfterCommit() {
+            for (Runnable action : afterCommit) {
+                try {
+                    action.run();
+                } catch (RuntimeException ex) {
+                    // data are committed, failure of one action must not stop the others
+                    logger.log(Level.SEVERE, "Error in action after commit", ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.common.CacheStats;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of all categories of one database. Categories are few, so they are loaded
+ * all at once into an immutable snapshot, which is dropped whenever a category
+ * changes. Readers never lock, a snapshot loaded concurrently with a change is
+ * not published.
+ *
+ * The cache is shared by all managers of the data source, because managers
+ * create other managers for nested operations.
+ */
+class CategoryCache {
+
+    private static final DataSourceRegistry<CategoryCache> caches = new DataSourceRegistry<>(CategoryCache::new);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long generation;
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param dataSource dataSource
+     * @return cache of categories stored in the data source
+     */
+    static CategoryCache forDataSource(DataSource dataSource) {
+        return caches.get(dataSource);
+    }
+
+    /**
+     * @return current snapshot or null when it has to be loaded by
+     * {@link #startLoad()} and {@link #publish(long, List)}
+     */
+    Snapshot get() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return current;
+    }
+
+    /**
+     * @return token to be passed to {@link #publish(long, List)} once the categories are read
+     */
+    synchronized long startLoad() {
+        return generation;
+    }
+
+    /**
+     * Publishes categories unless the cache was invalidated since the load started
+     *
+     * @param token value returned by {@link #startLoad()}
+     * @param categories all categories
+     * @return snapshot of the categories
+     */
+    synchronized Snapshot publish(long token, List<Category> categories) {
+        Snapshot loaded = new Snapshot(categories);
+        if (token == generation) {
+            snapshot = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the snapshot, called after a change of categories is committed
+     */
+    synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+
+    CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum());
+    }
+
+    /**
+     * Immutable set of categories, lookups return copies
+     */
+    static class Snapshot {
+
+        private final Map<Long, Category> byId = new LinkedHashMap<>();
+        private final Map<String, List<Category>> byName = new HashMap<>();
+
+        private Snapshot(List<Category> categories) {
+            for (Category category : categories) {
+                Category copy = copy(category);
+                byId.put(copy.getId(), copy);
+                byName.computeIfAbsent(copy.getCategoryName(), name -> new ArrayList<>(1)).add(copy);
+            }
+        }
+
+        Category findById(Long id) {
+            return copy(byId.get(id));
+        }
+
+        List<Category> findByName(String name) {
+            List<Category> result = new ArrayList<>();
+            for (Category category : byName.getOrDefault(name, Collections.emptyList())) {
+                result.add(copy(category));
+            }
+            return result;
+        }
+
+        List<Category> findAll() {
+            List<Category> result = new ArrayList<>(byId.size());
+            for (Category category : byId.values()) {
+                result.add(copy(category));
+            }
+            return result;
+        }
+
+        private static Category copy(Category category) {
+            return category == null ? null : new Category(category.getId(), category.getCategoryName());
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of table RC_DEPENDENCY holding one bitmap of recipe ids per
+ * category. It answers how many recipes of a given set are in each category
+ * without reading any recipe. Names of categories are kept too, so that they
+ * are completed ranked by the number of their recipes. All changes are
+ * idempotent, so applying a change already contained in a loaded index does not
+ * break it.
+ *
+ * The index is shared by all managers of the data source, because links are also
+ * removed by deleting recipes and categories. It is loaded by reading the table
+ * into a new index and publishing it by {@link #publish(long, CategoryIndex)},
+ * an index loaded concurrently with a change is not published.
+ */
+class CategoryIndex {
+
+    private static final DataSourceRegistry<CategoryIndex> indexes
+            = new DataSourceRegistry<>(() -> new CategoryIndex(null, null));
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Bitmap> bitmaps;
+    private Map<Long, String> names;
+    private SuggestionIndex suggestions;
+    private long generation;
+
+    /**
+     * Creates empty index to be filled by {@link #putCategory(long, String)}
+     * and {@link #add(long, long)}
+     */
+    CategoryIndex() {
+        this(new TreeMap<>(), new HashMap<>());
+    }
+
+    private CategoryIndex(Map<Long, Bitmap> bitmaps, Map<Long, String> names) {
+        this.bitmaps = bitmaps;
+        this.names = names;
+        this.suggestions = names == null ? null : new SuggestionIndex();
+    }
+
+    /**
+     * @param dataSource dataSource
+     * @return index of links stored in the data source, not loaded yet when created
+     */
+    static CategoryIndex forDataSource(DataSource dataSource) {
+        return indexes.get(dataSource);
+    }
+
+    boolean isLoaded() {
+        lock.readLock().lock();
+        try {
+            return bitmaps != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return token to be passed to {@link #publish(long, CategoryIndex)} once the links are read
+     */
+    long startLoad() {
+        lock.readLock().lock();
+        try {
+            return generation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces content of this index by the loaded one unless this index changed
+     * since the load started
+     *
+     * @param token value returned by {@link #startLoad()}
+     * @param loaded index filled with all links
+     * @return true if the loaded index was published
+     */
+    boolean publish(long token, CategoryIndex loaded) {
+        lock.writeLock().lock();
+        try {
+            if (token != generation) {
+                return false;
+            }
+            bitmaps = loaded.bitmaps;
+            names = loaded.names;
+            suggestions = loaded.suggestions;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds created category or renames existing one
+     *
+     * @param categoryId id of the category
+     * @param name name of the category
+     */
+    void putCategory(long categoryId, String name) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            if (bitmaps != null) {
+                String previous = names.put(categoryId, name);
+                if (!name.equals(previous)) {
+                    Bitmap bitmap = bitmaps.get(categoryId);
+                    int count = bitmap == null ? 0 : bitmap.cardinality();
+                    if (previous != null) {
+                        removeName(previous, count);
+                    }
+                    suggestions.adjust(name, count);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds recipe into category
+     *
+     * @param recipeId id of the recipe
+     * @param categoryId id of the category
+     */
+    void add(long recipeId, long categoryId) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            if (bitmaps != null && bitmaps.computeIfAbsent(categoryId, id -> new Bitmap()).set(recipeId)) {
+                adjustCount(categoryId, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds recipes into category
+     *
+     * @param recipeIds ids of the recipes
+     * @param categoryId id of the category
+     */
+    void addAll(long[] recipeIds, long categoryId) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            if (bitmaps != null) {
+                Bitmap bitmap = bitmaps.computeIfAbsent(categoryId, id -> new Bitmap());
+                int added = 0;
+                for (long recipeId : recipeIds) {
+                    if (bitmap.set(recipeId)) {
+                        added++;
+                    }
+                }
+                adjustCount(categoryId, added);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes recipe from category
+     *
+     * @param recipeId id of the recipe
+     * @param categoryId id of the category
+     */
+    void remove(long recipeId, long categoryId) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            Bitmap bitmap = bitmaps == null ? null : bitmaps.get(categoryId);
+            if (bitmap != null && bitmap.clear(recipeId)) {
+                adjustCount(categoryId, -1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes deleted recipes from all categories
+     *
+     * @param recipeIds ids of deleted recipes
+     */
+    void removeRecipes(Collection<Long> recipeIds) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            if (bitmaps != null) {
+                for (Map.Entry<Long, Bitmap> entry : bitmaps.entrySet()) {
+                    int removed = 0;
+                    for (long recipeId : recipeIds) {
+                        if (entry.getValue().clear(recipeId)) {
+                            removed++;
+                        }
+                    }
+                    adjustCount(entry.getKey(), -removed);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes deleted categories
+     *
+     * @param categoryIds ids of deleted categories
+     */
+    void removeCategories(Collection<Long> categoryIds) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            if (bitmaps != null) {
+                for (Long categoryId : categoryIds) {
+                    Bitmap bitmap = bitmaps.remove(categoryId);
+                    String name = names.remove(categoryId);
+                    if (name != null) {
+                        removeName(name, bitmap == null ? 0 : bitmap.cardinality());
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Completes the prefix to names of categories
+     *
+     * @param prefix beginning of the name, case and diacritics are ignored
+     * @param limit maximal number of names
+     * @return names of categories, the ones with most recipes first
+     * @throws IllegalStateException if the index is not loaded
+     */
+    List<String> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            if (bitmaps == null) {
+                throw new IllegalStateException("Index is not loaded");
+            }
+            return suggestions.complete(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Changes number of recipes counted for the name of the category
+     */
+    private void adjustCount(long categoryId, int delta) {
+        String name = names.get(categoryId);
+        if (name != null && delta != 0) {
+            suggestions.adjust(name, delta);
+        }
+    }
+
+    /**
+     * Subtracts recipes of a removed or renamed category from its former name,
+     * which is removed unless another category has it too
+     */
+    private void removeName(String name, int count) {
+        if (names.containsValue(name)) {
+            suggestions.adjust(name, -count);
+        } else {
+            suggestions.remove(name);
+        }
+    }
+
+    /**
+     * Counts recipes of the given set in every category. The set is turned into
+     * a bitmap which is intersected with the bitmap of each category word by word.
+     *
+     * @param recipeIds ids of recipes, duplicates are counted once
+     * @return number of recipes by category id, ordered by id, categories
+     * without any of the recipes are left out
+     * @throws IllegalStateException if the index is not loaded
+     */
+    Map<Long, Integer> countRecipes(Collection<Long> recipeIds) {
+        Map<Long, Integer> counts = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            if (bitmaps == null) {
+                throw new IllegalStateException("Index is not loaded");
+            }
+            int length = 0;
+            for (Bitmap bitmap : bitmaps.values()) {
+                length = Math.max(length, bitmap.words.length);
+            }
+            // ids beyond all bitmaps are in no category
+            Bitmap filter = new Bitmap(length);
+            for (long recipeId : recipeIds) {
+                filter.setIfInRange(recipeId);
+            }
+            for (Map.Entry<Long, Bitmap> entry : bitmaps.entrySet()) {
+                int count = entry.getValue().andCardinality(filter);
+                if (count > 0) {
+                    counts.put(entry.getKey(), count);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    /**
+     * Set of recipe ids stored as bits of a long array. Recipe ids are generated
+     * from 1 upwards, so the array stays dense.
+     */
+    private static final class Bitmap {
+
+        private static final long[] EMPTY = new long[0];
+
+        private long[] words;
+
+        private Bitmap() {
+            this.words = EMPTY;
+        }
+
+        private Bitmap(int length) {
+            this.words = new long[length];
+        }
+
+        /**
+         * @return true if the id was not in the set
+         */
+        private boolean set(long id) {
+            int word = wordIndex(id);
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, Math.max(word + 1, words.length + (words.length >> 1)));
+            }
+            long before = words[word];
+            words[word] |= 1L << id;
+            return words[word] != before;
+        }
+
+        private void setIfInRange(long id) {
+            if (id >= 0 && (id >>> 6) < words.length) {
+                words[(int) (id >>> 6)] |= 1L << id;
+            }
+        }
+
+        /**
+         * @return true if the id was in the set
+         */
+        private boolean clear(long id) {
+            if (id < 0 || (id >>> 6) >= words.length) {
+                return false;
+            }
+            long before = words[(int) (id >>> 6)];
+            words[(int) (id >>> 6)] &= ~(1L << id);
+            return words[(int) (id >>> 6)] != before;
+        }
+
+        private int cardinality() {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        private int andCardinality(Bitmap other) {
+            int length = Math.min(words.length, other.words.length);
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                count += Long.bitCount(words[i] & other.words[i]);
+            }
+            return count;
+        }
+
+        private static int wordIndex(long id) {
+            if (id < 0 || (id >>> 6) >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Recipe id out of range: " + id);
+            }
+            return (int) (id >>> 6);
+        }
+    }
+}
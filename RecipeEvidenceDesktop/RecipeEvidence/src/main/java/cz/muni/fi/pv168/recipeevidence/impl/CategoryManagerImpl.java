@@ -1,7 +1,9 @@
 package cz.muni.fi.pv168.recipeevidence.impl;
 
 import cz.muni.fi.pv168.recipeevidence.CategoryManager;
+import cz.muni.fi.pv168.recipeevidence.common.CacheStats;
 import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.TransactionContext;
 
 import javax.sql.DataSource;
 import javax.sql.rowset.serial.SerialException;
@@ -20,11 +22,31 @@ public class CategoryManagerImpl implements CategoryManager {
     private static final Logger logger = Logger.getLogger(
             CategoryManagerImpl.class.getName());
 
+    /**
+     * Maximal number of category ids bound into one IN list
+     */
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
     private DataSource dataSource;
+    private CategoryCache cache;
+    private CategoryIndex links;
+    private RCDependencyManagerImpl dependencyManager;
 
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
+        this.cache = dataSource == null ? null : CategoryCache.forDataSource(dataSource);
+        this.links = dataSource == null ? null : CategoryIndex.forDataSource(dataSource);
+        this.dependencyManager = new RCDependencyManagerImpl();
+        this.dependencyManager.setDataSource(dataSource);
+    }
+
+    /**
+     * @return hit and miss counters of the category cache shared by managers of the data source
+     */
+    public CacheStats getCacheStats() {
+        checkDataSource();
+        return cache.getStats();
     }
 
     private void checkDataSource() {
@@ -52,7 +74,7 @@ public class CategoryManagerImpl implements CategoryManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = TransactionContext.getConnection(dataSource);
             conn.setAutoCommit(false);
             //TABLE CATEGORY
             st = conn.prepareStatement(
@@ -66,6 +88,8 @@ public class CategoryManagerImpl implements CategoryManager {
             Long id = DBUtils.getId(st.getGeneratedKeys());
             category.setCategoryID(id);
             conn.commit();
+            TransactionContext.afterCommit(dataSource, cache::invalidate);
+            putIntoIndex(id, category.getCategoryName());
         } catch (SQLException ex) {
             String msg = "Error when inserting category into db";
             logger.log(Level.SEVERE, msg, ex);
@@ -87,7 +111,7 @@ public class CategoryManagerImpl implements CategoryManager {
         Connection connection = null;
         PreparedStatement st = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             connection.setAutoCommit(false);
             st = connection.prepareStatement(
                     "UPDATE Category SET name = ? WHERE id = ?");
@@ -98,7 +122,8 @@ public class CategoryManagerImpl implements CategoryManager {
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, category, false);
             connection.commit();
-
+            TransactionContext.afterCommit(dataSource, cache::invalidate);
+            putIntoIndex(category.getId(), category.getCategoryName());
         } catch (SQLException ex) {
             String msg = "Error when updating category in the DB";
             logger.log(Level.SEVERE, msg, ex);
@@ -120,34 +145,23 @@ public class CategoryManagerImpl implements CategoryManager {
         }
         Connection connection = null;
         PreparedStatement st = null;
-        PreparedStatement st2 = null;
-        RCDependencyManagerImpl rcDependencyManager = new RCDependencyManagerImpl();
-        rcDependencyManager.setDataSource(dataSource);
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             connection.setAutoCommit(false);
+            // links to recipes are deleted by cascade
             st = connection.prepareStatement(
-                    "SELECT NAME FROM CATEGORY WHERE ID = ?");
-
+                    "DELETE FROM Category WHERE ID = ?");
             st.setLong(1, category.getId());
-
-            if (executeQueryForSingleCategory(st) == null) {
+            int count = st.executeUpdate();
+            if (count == 0) {
                 throw new IllegalArgumentException("Category " + category + " was not found in database!");
             }
-
-            List<Recipe> recipes = rcDependencyManager.findRecipesInCategory(category);
-            for (Recipe r : recipes) {
-                RCDependency dependency = new RCDependency();
-                dependency.setRecipe(r);
-                dependency.setCategory(category);
-                rcDependencyManager.deleteDependency(dependency);
-            }
-            st2 = connection.prepareStatement(
-                    "DELETE FROM Category WHERE ID = ?");
-            st2.setLong(1, category.getId());
-            int count = st2.executeUpdate();
             DBUtils.checkUpdatesCount(count, category, false);
             connection.commit();
+            TransactionContext.afterCommit(dataSource, cache::invalidate);
+            CategoryIndex index = links;
+            TransactionContext.afterCommit(dataSource,
+                    () -> index.removeCategories(Collections.singleton(category.getId())));
         } catch (SQLException ex) {
             String msg = "Error when deleting category from DB";
             logger.log(Level.SEVERE, msg, ex);
@@ -157,34 +171,79 @@ public class CategoryManagerImpl implements CategoryManager {
             throw new IllegalArgumentException(ex);
         } finally {
             DBUtils.doRollbackQuietly(connection);
-            if (st2 != null) {
-                DBUtils.closeQuietly(connection, st2, st);
-            } else {
-                DBUtils.closeQuietly(connection, st);
-            }
+            DBUtils.closeQuietly(connection, st);
         }
     }
 
     @Override
-    public List<Category> findAllCategories() {
+    public int deleteCategories(Collection<Long> ids) throws ServiceFailureException {
         checkDataSource();
-        Connection conn = null;
-        PreparedStatement st = null;
+        if (ids == null) {
+            throw new IllegalArgumentException("Ids are null");
+        }
+        if (ids.contains(null)) {
+            throw new IllegalArgumentException("Ids contain null");
+        }
+        List<Long> distinctIds = new ArrayList<>(new TreeSet<>(ids));
+        if (distinctIds.isEmpty()) {
+            return 0;
+        }
+        Connection connection = null;
         try {
-            conn = dataSource.getConnection();
-            st = conn.prepareStatement(
-                    "SELECT ID, NAME FROM Category");
-            List<Category> categories = executeQueryForMultipleCategories(st);
-            return categories;
+            connection = TransactionContext.getConnection(dataSource);
+            connection.setAutoCommit(false);
+            int count = 0;
+            for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST_SIZE) {
+                int to = Math.min(from + MAX_IN_LIST_SIZE, distinctIds.size());
+                // links to recipes are deleted by cascade
+                try (PreparedStatement st = connection.prepareStatement(
+                        "DELETE FROM Category WHERE ID IN (" + DBUtils.placeholders(to - from) + ")")) {
+                    for (int i = from; i < to; i++) {
+                        st.setLong(i - from + 1, distinctIds.get(i));
+                    }
+                    count += st.executeUpdate();
+                }
+            }
+            connection.commit();
+            TransactionContext.afterCommit(dataSource, cache::invalidate);
+            CategoryIndex index = links;
+            TransactionContext.afterCommit(dataSource, () -> index.removeCategories(distinctIds));
+            return count;
         } catch (SQLException ex) {
-            String msg = "Error when getting all categories from DB";
+            String msg = "Error when deleting categories from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
-            DBUtils.closeQuietly(conn, st);
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection);
         }
     }
 
+    @Override
+    public List<String> suggestCategories(String prefix, int limit) {
+        checkDataSource();
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix is null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        // the index of links is loaded by the dependency manager
+        return dependencyManager.getCategoryIndex().suggest(prefix, limit);
+    }
+
+    private void putIntoIndex(long id, String name) {
+        CategoryIndex index = links;
+        TransactionContext.afterCommit(dataSource, () -> index.putCategory(id, name));
+    }
+
+    @Override
+    public List<Category> findAllCategories() {
+        checkDataSource();
+        CategoryCache.Snapshot snapshot = getSnapshot();
+        return snapshot == null ? selectAllCategories() : snapshot.findAll();
+    }
+
     @Override
     public Category findCategoryById(Long id) throws ServiceFailureException {
         checkDataSource();
@@ -192,12 +251,16 @@ public class CategoryManagerImpl implements CategoryManager {
         if (id == null) {
             throw new IllegalArgumentException("id is null");
         }
+        CategoryCache.Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.findById(id);
+        }
 
         Connection connection = null;
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             st = connection.prepareStatement(
                     "SELECT NAME FROM Category WHERE ID = ?");
 
@@ -225,26 +288,21 @@ public class CategoryManagerImpl implements CategoryManager {
         if (name == null) {
             throw new IllegalArgumentException("Name is null");
         }
+        CategoryCache.Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return singleCategory(snapshot.findByName(name), name);
+        }
 
         Connection connection = null;
         PreparedStatement ps = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             ps = connection.prepareStatement(
                     "SELECT ID, NAME FROM Category WHERE name = ?"
             );
 
             ps.setString(1, name);
-            List<Category> categories = executeQueryForMultipleCategories(ps);
-            if (categories.size() == 0) {
-                return null;
-            } else if (categories.size() == 1) {
-                return categories.get(0);
-            } else {
-                throw new ServiceFailureException("Multiple categories with same name (" + name + ")");
-            }
-
-
+            return singleCategory(executeQueryForMultipleCategories(ps), name);
         } catch (SQLException ex) {
             String msg = "Error when getting category with name = " + name + " from DB";
             logger.log(Level.SEVERE, msg, ex);
@@ -254,6 +312,52 @@ public class CategoryManagerImpl implements CategoryManager {
         }
     }
 
+    private static Category singleCategory(List<Category> categories, String name) {
+        if (categories.size() == 0) {
+            return null;
+        } else if (categories.size() == 1) {
+            return categories.get(0);
+        } else {
+            throw new ServiceFailureException("Multiple categories with same name (" + name + ")");
+        }
+    }
+
+    /**
+     * Returns cached categories, loading them on a miss. Within a transaction the
+     * cache is bypassed, because the transaction may have changed categories.
+     *
+     * @return snapshot of all categories or null when the cache cannot be used
+     */
+    private CategoryCache.Snapshot getSnapshot() {
+        if (TransactionContext.isActive(dataSource)) {
+            return null;
+        }
+        CategoryCache.Snapshot snapshot = cache.get();
+        if (snapshot == null) {
+            long token = cache.startLoad();
+            snapshot = cache.publish(token, selectAllCategories());
+        }
+        return snapshot;
+    }
+
+    private List<Category> selectAllCategories() {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = TransactionContext.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT ID, NAME FROM Category ORDER BY ID");
+            List<Category> categories = executeQueryForMultipleCategories(st);
+            return categories;
+        } catch (SQLException ex) {
+            String msg = "Error when getting all categories from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
     static private Category rowToCategory(ResultSet rs) throws SQLException {
         if (rs == null) {
             throw new IllegalArgumentException("Null rs");
@@ -0,0 +1,57 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import javax.sql.DataSource;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Holds one value per data source, e.g. a cache shared by all managers of it.
+ * Data sources are compared by identity, because some of them (Derby) are equal
+ * whenever their properties are, and they are referenced weakly. An application
+ * uses few data sources, so they are kept in a list.
+ *
+ * @param <T> type of the values
+ */
+class DataSourceRegistry<T> {
+
+    private final List<Registration<T>> registrations = new ArrayList<>();
+    private final Supplier<T> factory;
+
+    DataSourceRegistry(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @param dataSource dataSource
+     * @return value of the data source, created on the first call
+     */
+    synchronized T get(DataSource dataSource) {
+        Iterator<Registration<T>> iterator = registrations.iterator();
+        while (iterator.hasNext()) {
+            Registration<T> registration = iterator.next();
+            DataSource registered = registration.dataSource.get();
+            if (registered == null) {
+                iterator.remove();
+            } else if (registered == dataSource) {
+                return registration.value;
+            }
+        }
+        T value = factory.get();
+        registrations.add(new Registration<>(dataSource, value));
+        return value;
+    }
+
+    private static class Registration<T> {
+
+        private final WeakReference<DataSource> dataSource;
+        private final T value;
+
+        private Registration(DataSource dataSource, T value) {
+            this.dataSource = new WeakReference<>(dataSource);
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of a running or finished import. Counts include records imported
+ * before the import was resumed from a checkpoint. Throughput of each stage is
+ * the number of records it processed per second of its own work, so the
+ * slowest stage is the one limiting the import.
+ */
+public class ImportProgress {
+
+    private final long recordsRead;
+    private final long recordsParsed;
+    private final long recipesImported;
+    private final long recordsRejected;
+    private final long bytesRead;
+    private final long totalBytes;
+    private final int queuedChunks;
+    private final Duration elapsed;
+    private final double readThroughput;
+    private final double parseThroughput;
+    private final double writeThroughput;
+
+    ImportProgress(long recordsRead, long recordsParsed, long recipesImported, long recordsRejected,
+                   long bytesRead, long totalBytes, int queuedChunks, Duration elapsed,
+                   double readThroughput, double parseThroughput, double writeThroughput) {
+        this.recordsRead = recordsRead;
+        this.recordsParsed = recordsParsed;
+        this.recipesImported = recipesImported;
+        this.recordsRejected = recordsRejected;
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.queuedChunks = queuedChunks;
+        this.elapsed = elapsed;
+        this.readThroughput = readThroughput;
+        this.parseThroughput = parseThroughput;
+        this.writeThroughput = writeThroughput;
+    }
+
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    public long getRecordsParsed() {
+        return recordsParsed;
+    }
+
+    /**
+     * @return number of committed recipes
+     */
+    public long getRecipesImported() {
+        return recipesImported;
+    }
+
+    /**
+     * @return number of malformed or invalid records, which were skipped
+     */
+    public long getRecordsRejected() {
+        return recordsRejected;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return part of the file read so far, between 0 and 1
+     */
+    public double getFractionRead() {
+        return totalBytes == 0 ? 1 : (double) bytesRead / totalBytes;
+    }
+
+    /**
+     * @return number of chunks waiting for the writer
+     */
+    public int getQueuedChunks() {
+        return queuedChunks;
+    }
+
+    /**
+     * @return time since the import (or its resumption) started
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return records read per second of reading
+     */
+    public double getReadThroughput() {
+        return readThroughput;
+    }
+
+    /**
+     * @return records parsed and validated per second of parsing, summed over parser threads
+     */
+    public double getParseThroughput() {
+        return parseThroughput;
+    }
+
+    /**
+     * @return records written per second of writing
+     */
+    public double getWriteThroughput() {
+        return writeThroughput;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImportProgress{read=%d, parsed=%d, imported=%d, rejected=%d, %.1f%% of %d bytes, "
+                        + "queued=%d, elapsed=%s, records/s read=%.0f parse=%.0f write=%.0f}",
+                recordsRead, recordsParsed, recipesImported, recordsRejected, 100 * getFractionRead(), totalBytes,
+                queuedChunks, elapsed, readThroughput, parseThroughput, writeThroughput);
+    }
+}
@@ -0,0 +1,124 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of table INGREDIENT translating ingredient names to their ids. Rows of the
+ * dictionary are never deleted, so a cached id stays valid. Ids read or inserted
+ * within a running transaction are only returned to the caller, which publishes
+ * them by {@link #cacheAll(Map)} once the transaction is committed.
+ */
+class IngredientDictionary {
+
+    /**
+     * Maximal number of names bound into one IN list
+     */
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
+    /**
+     * This code represents "duplicate key value in unique constraint"
+     * This code is Derby specific!
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Finds ids of given ingredients, missing ingredients are inserted into the dictionary
+     *
+     * @param connection connection with running transaction
+     * @param names names of ingredients
+     * @return map from every given name to its id
+     * @throws SQLException
+     */
+    Map<String, Long> resolve(Connection connection, Collection<String> names) throws SQLException {
+        Map<String, Long> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            Long id = ids.get(name);
+            if (id != null) {
+                result.put(name, id);
+            } else if (!result.containsKey(name)) {
+                result.put(name, null);
+                missing.add(name);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        selectIds(connection, missing, result);
+        PreparedStatement statement = null;
+        try {
+            for (String name : missing) {
+                if (result.get(name) != null) {
+                    continue;
+                }
+                if (statement == null) {
+                    statement = connection.prepareStatement(
+                            "INSERT INTO INGREDIENT (NAME) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+                }
+                statement.setString(1, name);
+                try {
+                    DBUtils.checkUpdatesCount(statement.executeUpdate(), name, true);
+                    result.put(name, DBUtils.getId(statement.getGeneratedKeys()));
+                } catch (SQLException ex) {
+                    if (!DUPLICATE_KEY.equals(ex.getSQLState())) {
+                        throw ex;
+                    }
+                    // inserted by concurrent transaction in the meantime
+                    selectIds(connection, Collections.singletonList(name), result);
+                }
+            }
+        } finally {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Publishes ids resolved in a committed transaction
+     *
+     * @param resolved ids returned by {@link #resolve(Connection, Collection)}
+     */
+    void cacheAll(Map<String, Long> resolved) {
+        ids.putAll(resolved);
+    }
+
+    /**
+     * Reads ids of existing ingredients
+     */
+    private static void selectIds(Connection connection, List<String> names, Map<String, Long> result)
+            throws SQLException {
+        for (int from = 0; from < names.size(); from += MAX_IN_LIST_SIZE) {
+            int to = Math.min(from + MAX_IN_LIST_SIZE, names.size());
+            StringBuilder sql = new StringBuilder("SELECT ID, NAME FROM INGREDIENT WHERE NAME IN (?");
+            for (int i = from + 1; i < to; i++) {
+                sql.append(",?");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql.append(')').toString())) {
+                for (int i = from; i < to; i++) {
+                    statement.setString(i - from + 1, names.get(i));
+                }
+                ResultSet rs = statement.executeQuery();
+                while (rs.next()) {
+                    result.put(rs.getString("NAME"), rs.getLong("ID"));
+                }
+            }
+        }
+    }
+}
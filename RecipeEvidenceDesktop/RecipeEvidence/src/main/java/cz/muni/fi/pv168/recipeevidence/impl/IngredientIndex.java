@@ -0,0 +1,259 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index mapping ingredient name to ids of recipes containing it.
+ * Every posting list is a sorted array of primitive recipe ids. All operations are
+ * idempotent, so adding or removing the same pair twice does not break the index.
+ * Ingredient names are also completed, ranked by the number of recipes using them.
+ * Index is safe for concurrent readers, writers are serialized.
+ */
+class IngredientIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final IngredientVocabulary vocabulary = new IngredientVocabulary();
+    private final SuggestionIndex suggestions = new SuggestionIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds recipe into posting lists of given ingredients
+     *
+     * @param recipeId id of the recipe
+     * @param ingredients ingredients of the recipe
+     */
+    void add(long recipeId, Collection<String> ingredients) {
+        lock.writeLock().lock();
+        try {
+            for (String ingredient : ingredients) {
+                PostingList list = postings.get(ingredient);
+                if (list == null) {
+                    list = new PostingList();
+                    postings.put(ingredient, list);
+                    vocabulary.add(ingredient);
+                }
+                if (list.add(recipeId)) {
+                    suggestions.adjust(ingredient, 1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes recipe from posting lists of given ingredients
+     *
+     * @param recipeId id of the recipe
+     * @param ingredients ingredients which are no longer part of the recipe
+     */
+    void remove(long recipeId, Collection<String> ingredients) {
+        lock.writeLock().lock();
+        try {
+            for (String ingredient : ingredients) {
+                PostingList list = postings.get(ingredient);
+                if (list == null || !list.remove(recipeId)) {
+                    continue;
+                }
+                if (list.size == 0) {
+                    postings.remove(ingredient);
+                    vocabulary.remove(ingredient);
+                    suggestions.remove(ingredient);
+                } else {
+                    suggestions.adjust(ingredient, -1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds recipes containing all given ingredients. Posting lists are intersected
+     * starting from the rarest ingredient, so the work is bounded by its list size.
+     *
+     * @param ingredients wanted ingredients
+     * @return sorted ids of recipes containing all ingredients
+     */
+    long[] findContainingAll(Collection<String> ingredients) {
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[ingredients.size()];
+            int i = 0;
+            for (String ingredient : ingredients) {
+                PostingList list = postings.get(ingredient);
+                if (list == null) {
+                    return EMPTY;
+                }
+                lists[i++] = list;
+            }
+            return intersect(lists);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds recipes containing an ingredient similar to each of the given ones.
+     * Every given ingredient is expanded to its variants found by the trigram
+     * vocabulary, posting lists of the variants are merged and the merged lists
+     * are intersected as by {@link #findContainingAll(Collection)}.
+     *
+     * @param ingredients wanted ingredients
+     * @return sorted ids of recipes containing a variant of every ingredient
+     */
+    long[] findContainingAllSimilar(Collection<String> ingredients) {
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[ingredients.size()];
+            int i = 0;
+            for (String ingredient : ingredients) {
+                Set<String> variants = vocabulary.findSimilar(ingredient);
+                PostingList merged = new PostingList();
+                for (String variant : variants) {
+                    PostingList list = postings.get(variant);
+                    if (list != null) {
+                        merged.addAll(list);
+                    }
+                }
+                if (merged.size == 0) {
+                    return EMPTY;
+                }
+                lists[i++] = merged.distinct();
+            }
+            return intersect(lists);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Completes the prefix to names of ingredients
+     *
+     * @param prefix beginning of the name, case and diacritics are ignored
+     * @param limit maximal number of names
+     * @return names of ingredients, the ones used by most recipes first
+     */
+    List<String> suggest(String prefix, int limit) {
+        return suggestions.complete(prefix, limit);
+    }
+
+    /**
+     * Intersects posting lists starting from the shortest one, so the work is
+     * bounded by its size
+     */
+    private static long[] intersect(PostingList[] lists) {
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+        long[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int size = result.length;
+        for (int l = 1; l < lists.length && size > 0; l++) {
+            size = retainAll(result, size, lists[l]);
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Keeps in the first {@code size} elements of {@code candidates} only ids present
+     * in the given posting list. Uses exponential search, because the candidates are
+     * usually much shorter than the list.
+     *
+     * @return number of retained candidates
+     */
+    private static int retainAll(long[] candidates, int size, PostingList list) {
+        int retained = 0;
+        int from = 0;
+        for (int c = 0; c < size && from < list.size; c++) {
+            long id = candidates[c];
+            int bound = 1;
+            while (from + bound < list.size && list.ids[from + bound] < id) {
+                bound <<= 1;
+            }
+            int position = Arrays.binarySearch(list.ids, from + (bound >> 1),
+                    Math.min(from + bound + 1, list.size), id);
+            if (position >= 0) {
+                candidates[retained++] = id;
+                from = position + 1;
+            } else {
+                from = -position - 1;
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Sorted array of recipe ids
+     */
+    private static final class PostingList {
+
+        private long[] ids = new long[4];
+        private int size;
+
+        private boolean add(long id) {
+            if (size > 0 && ids[size - 1] < id) {
+                // recipes are mostly added in order of their ids
+                ensureCapacity();
+                ids[size++] = id;
+                return true;
+            }
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            ensureCapacity();
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+            return true;
+        }
+
+        /**
+         * Appends ids of another list, the order is restored by {@link #distinct()}
+         */
+        private void addAll(PostingList other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, size + other.size);
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        private PostingList distinct() {
+            Arrays.sort(ids, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            size = distinct;
+            return this;
+        }
+
+        private boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+/**
+ * How ingredients of a search are matched to ingredients of recipes
+ */
+public enum IngredientMatch {
+
+    /**
+     * Ingredient names must be equal
+     */
+    EXACT,
+
+    /**
+     * Ingredient names may differ in case, diacritics, Czech case endings and
+     * a typo or two, e.g. "rajcata" matches "rajčata" and "rajče"
+     */
+    SIMILAR
+}
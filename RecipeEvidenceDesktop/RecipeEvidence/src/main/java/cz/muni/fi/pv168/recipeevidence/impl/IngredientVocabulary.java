@@ -0,0 +1,191 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index of distinct ingredient names used by {@link IngredientIndex} to
+ * find names similar to a searched one. Names are compared by their keys, which
+ * are folded and stemmed by {@link TextAnalyzer}, so "rajčata", "rajcata" and
+ * "rajče" share one key. Keys within a small edit distance are similar too.
+ *
+ * Candidates are found by counting trigrams shared with the searched key. One
+ * edit changes at most three trigrams, so a key within distance d shares all
+ * but 3d of its trigrams and other keys are never compared by Levenshtein
+ * distance. The vocabulary is not thread safe, it is guarded by the index.
+ */
+class IngredientVocabulary {
+
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    /**
+     * Ingredient names by key id, empty for keys of removed ingredients
+     */
+    private final List<Set<String>> names = new ArrayList<>();
+    private final Map<String, IdList> trigrams = new HashMap<>();
+
+    /**
+     * Adds ingredient name into the vocabulary
+     *
+     * @param ingredient name of the ingredient
+     */
+    void add(String ingredient) {
+        String key = key(ingredient);
+        Integer id = keyIds.get(key);
+        if (id == null) {
+            id = keys.size();
+            keyIds.put(key, id);
+            keys.add(key);
+            names.add(new HashSet<>(1));
+            for (String trigram : trigrams(key)) {
+                trigrams.computeIfAbsent(trigram, t -> new IdList()).add(id);
+            }
+        }
+        names.get(id).add(ingredient);
+    }
+
+    /**
+     * Removes ingredient name from the vocabulary. Its key stays indexed, so that
+     * the name can be added back cheaply, and is skipped by searches.
+     *
+     * @param ingredient name of the ingredient
+     */
+    void remove(String ingredient) {
+        Integer id = keyIds.get(key(ingredient));
+        if (id != null) {
+            names.get(id).remove(ingredient);
+        }
+    }
+
+    /**
+     * Finds ingredient names similar to the given one
+     *
+     * @param ingredient searched name
+     * @return names of ingredients whose keys are within {@link #maxDistance(int)}
+     * of the key of the searched name
+     */
+    Set<String> findSimilar(String ingredient) {
+        String key = key(ingredient);
+        int maxDistance = maxDistance(key.length());
+        Set<String> result = new HashSet<>();
+        if (maxDistance == 0) {
+            Integer id = keyIds.get(key);
+            if (id != null) {
+                result.addAll(names.get(id));
+            }
+            return result;
+        }
+        Set<String> queryTrigrams = trigrams(key);
+        int minShared = queryTrigrams.size() - 3 * maxDistance;
+        int[] shared = new int[keys.size()];
+        IdList candidates = new IdList();
+        for (String trigram : queryTrigrams) {
+            IdList ids = trigrams.get(trigram);
+            if (ids != null) {
+                for (int i = 0; i < ids.size; i++) {
+                    if (shared[ids.values[i]]++ == 0) {
+                        candidates.add(ids.values[i]);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < candidates.size; i++) {
+            int id = candidates.values[i];
+            if (shared[id] >= minShared && !names.get(id).isEmpty()
+                    && withinDistance(key, keys.get(id), maxDistance)) {
+                result.addAll(names.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param ingredient name of an ingredient
+     * @return folded and stemmed words of the name
+     */
+    static String key(String ingredient) {
+        List<String> terms = TextAnalyzer.analyze(ingredient);
+        return terms.isEmpty() ? TextAnalyzer.fold(ingredient).trim() : String.join(" ", terms);
+    }
+
+    /**
+     * @param length length of a key
+     * @return number of typos tolerated in a key of given length
+     */
+    static int maxDistance(int length) {
+        if (length <= 3) {
+            return 0;
+        }
+        return length <= 6 ? 1 : 2;
+    }
+
+    /**
+     * Decides whether Levenshtein distance of two strings is at most {@code max}.
+     * Only a band of width 2 * max + 1 around the diagonal is computed and the
+     * computation stops as soon as the whole row exceeds the bound.
+     */
+    static boolean withinDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return false;
+        }
+        int infinity = max + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j <= max ? j : infinity;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length(), i + max);
+            Arrays.fill(current, infinity);
+            current[0] = i <= max ? i : infinity;
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(distance, infinity);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= max;
+    }
+
+    /**
+     * @return distinct trigrams of the key padded by one character on each side
+     */
+    private static Set<String> trigrams(String key) {
+        String padded = "$" + key + "$";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Growable array of key ids
+     */
+    private static final class IdList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size + (size >> 1) + 1);
+            }
+            values[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+/**
+ * This exception is thrown when update operation is performed with entity
+ * which was modified in the database since it has been read.
+ */
+public class OptimisticLockException extends RuntimeException {
+
+    /**
+     * Constructs an instance of <code>OptimisticLockException</code> with the specified detail message.
+     * @param msg the detail message.
+     */
+    public OptimisticLockException(String msg) {
+        super(msg);
+    }
+}
@@ -3,17 +3,22 @@ package cz.muni.fi.pv168.recipeevidence.impl;
 import cz.muni.fi.pv168.recipeevidence.CategoryManager;
 import cz.muni.fi.pv168.recipeevidence.RCDependencyManager;
 
-import cz.muni.fi.pv168.recipeevidence.RecipeManager;
 import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.TransactionContext;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.time.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -29,10 +34,29 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
     private static final Logger logger = Logger.getLogger(
             CategoryManager.class.getName());
 
+    /**
+     * Number of links sent to the database in one JDBC batch
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * This code represents "duplicate key value in unique constraint"
+     * This code is Derby specific!
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    /**
+     * This code represents "foreign key constraint violated"
+     * This code is Derby specific!
+     */
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
     private DataSource dataSource;
+    private CategoryIndex categoryIndex;
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
+        this.categoryIndex = dataSource == null ? null : CategoryIndex.forDataSource(dataSource);
     }
 
     private void checkDataSource() {
@@ -41,55 +65,80 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
         }
     }
 
-    private static Clock prepareClockMock(ZonedDateTime now){
-        return Clock.fixed(now.toInstant(), now.getZone());
-    }
-    private final static ZonedDateTime NOW
-            = LocalDateTime.of(2016, Month.FEBRUARY, 29, 14, 00).atZone(ZoneId.of("UTC"));
-
 
     @Override
     public List<RCDependency> findAllDependencies() throws ServiceFailureException {
         checkDataSource();
         Connection connection = null;
         PreparedStatement st = null;
+        PreparedStatement ingredientsSt = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             st = connection.prepareStatement(
-                    "SELECT recipe_id, category_id FROM Rc_dependency");
-
-            ResultSet rs = st.executeQuery();
-            List<RCDependency> result = new ArrayList<>();
-            while (rs.next()) {
-                Long[] ids = resultSetToRCDependency(rs);
-                CategoryManagerImpl categoryManager = new CategoryManagerImpl();
-                RecipeManagerImpl recipeManager = new RecipeManagerImpl(prepareClockMock(NOW));
-                categoryManager.setDataSource(dataSource);
-                recipeManager.setDataSource(dataSource);
-                Category category = categoryManager.findCategoryById(ids[0]);
-                Recipe recipe = recipeManager.findRecipeById(ids[1]);
-                RCDependency dependency = new RCDependency();
-                dependency.setCategory(category);
-                dependency.setRecipe(recipe);
-                result.add(dependency);
-            }
-            return result;
+                    "SELECT d.CATEGORY_ID, c.NAME AS CATEGORY_NAME, r.ID, r.VERSION, r.NAME, r.DATE, "
+                            + "r.RECIPE_PROCEDURE FROM Rc_dependency d "
+                            + "JOIN Category c ON c.ID = d.CATEGORY_ID JOIN Recipe r ON r.ID = d.RECIPE_ID "
+                            + "ORDER BY r.ID, d.CATEGORY_ID");
+            // ingredients are read separately, joining them too multiplies the rows
+            // and Derby executes such join several times slower
+            ingredientsSt = connection.prepareStatement(
+                    "SELECT ri.RECIPE_ID, i.NAME FROM RECIPE_INGREDIENT ri "
+                            + "JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID "
+                            + "WHERE ri.RECIPE_ID IN (SELECT RECIPE_ID FROM Rc_dependency)");
+            return executeQueryForDependencies(st, ingredientsSt);
         } catch (SQLException ex) {
             String msg = "Error when getting all rcdependencies from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
-            DBUtils.closeQuietly(connection, st);
+            DBUtils.closeQuietly(connection, st, ingredientsSt);
         }
     }
 
-
-    private static Long[] resultSetToRCDependency(ResultSet rs) throws SQLException {
-        Long[] dependency = new Long[2];
-        dependency[0] = rs.getLong("category_id");
-        dependency[1] = rs.getLong("recipe_id");
-        return dependency;
+    /**
+     * Builds dependencies from rows ordered by recipe and category. Recipes and
+     * categories are kept in identity maps, so each of them is created once and
+     * shared by all its dependencies.
+     */
+    private static List<RCDependency> executeQueryForDependencies(PreparedStatement st,
+            PreparedStatement ingredientsSt) throws SQLException {
+        ResultSet rs = st.executeQuery();
+        List<RCDependency> result = new ArrayList<>();
+        Map<Long, Recipe> recipes = new HashMap<>();
+        Map<Long, Category> categories = new HashMap<>();
+        while (rs.next()) {
+            long recipeId = rs.getLong("ID");
+            long categoryId = rs.getLong("CATEGORY_ID");
+            Recipe recipe = recipes.get(recipeId);
+            if (recipe == null) {
+                recipe = RecipeManagerImpl.rowToRecipe(rs);
+                recipe.setId(recipeId);
+                recipe.setIngredients(new HashSet<>());
+                recipes.put(recipeId, recipe);
+            }
+            Category category = categories.get(categoryId);
+            if (category == null) {
+                category = new Category(categoryId, rs.getString("CATEGORY_NAME"));
+                categories.put(categoryId, category);
+            }
+            RCDependency dependency = new RCDependency();
+            dependency.setRecipe(recipe);
+            dependency.setCategory(category);
+            result.add(dependency);
+        }
+        rs = ingredientsSt.executeQuery();
+        while (rs.next()) {
+            Recipe recipe = recipes.get(rs.getLong("RECIPE_ID"));
+            // recipe linked after the first query was executed
+            if (recipe != null) {
+                recipe.getIngredients().add(rs.getString("NAME"));
+            }
+        }
+        for (Recipe recipe : recipes.values()) {
+            recipe.markStored();
+        }
+        return result;
     }
 
     public boolean findDependency(Recipe recipe, Category category) throws ServiceFailureException {
@@ -110,7 +159,7 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = TransactionContext.getConnection(dataSource);
             st = conn.prepareStatement(
                     "SELECT recipe_id,category_id FROM Rc_dependency WHERE RECIPE_ID = ? and CATEGORY_ID = ?");
             st.setLong(1, recipe.getId());
@@ -146,48 +195,17 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
             throw new IllegalEntityException("Invalid dependency");
         }
 
-        if (findDependency(dependency.getRecipe(), dependency.getCategory())){
-            throw new IllegalArgumentException("Recipe is already in category");
-        }
-
-        RecipeManagerImpl existingRecipe = new RecipeManagerImpl(prepareClockMock(NOW));
-        existingRecipe.setDataSource(dataSource);
-        CategoryManagerImpl existingCategory = new CategoryManagerImpl();
-        existingCategory.setDataSource(dataSource);
-
-        if (existingRecipe.findRecipeById(dependency.getRecipe().getId()) == null){
-            throw new IllegalEntityException("Recipe not in DB");
-        }
-
-        if (existingCategory.findCategoryById(dependency.getCategory().getId()) == null){
-            throw new IllegalEntityException("Category not in DB");
-        }
-
         Connection conn = null;
-        PreparedStatement st = null;
-
         try {
-            conn = dataSource.getConnection();
-            // Temporary turn autocommit mode off. It is turned back on in
-            // method DBUtils.closeQuietly(...)
-            conn.setAutoCommit(false);
-            st = conn.prepareStatement(
-                    "INSERT INTO Rc_dependency (RECIPE_ID, CATEGORY_ID) VALUES (?,?)");
-            st.setLong(1, dependency.getRecipe().getId());
-            st.setLong(2, dependency.getCategory().getId());
-
-            int count = st.executeUpdate();
-            DBUtils.checkUpdatesCount(count, dependency, true);
-            conn.commit();
+            conn = TransactionContext.getConnection(dataSource);
+            // existence of the recipe and category and uniqueness of the link
+            // are checked by constraints of the table
+            insertLink(conn, dependency.getRecipe().getId(), dependency.getCategory().getId());
         } catch (SQLException ex) {
-            String msg = "Error when inserting dependency into db";
-            logger.log(Level.SEVERE, msg, ex);
-            throw new ServiceFailureException(msg, ex);
+            throw translateInsertFailure(ex, "Error when inserting dependency into db");
         } finally {
-            DBUtils.doRollbackQuietly(conn);
-            DBUtils.closeQuietly(conn, st);
+            DBUtils.closeQuietly(conn);
         }
-
     }
 
     @Override
@@ -200,7 +218,7 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = TransactionContext.getConnection(dataSource);
             // Temporary turn autocommit mode off. It is turned back on in
             // method DBUtils.closeQuietly(...)
             conn.setAutoCommit(false);
@@ -211,6 +229,10 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, dependency, false);
             conn.commit();
+            long recipeId = dependency.getRecipe().getId();
+            long categoryId = dependency.getCategory().getId();
+            CategoryIndex index = categoryIndex;
+            TransactionContext.afterCommit(dataSource, () -> index.remove(recipeId, categoryId));
         } catch (SQLException ex) {
             String msg = "Error when deleting dependency from the db";
             logger.log(Level.SEVERE, msg, ex);
@@ -237,12 +259,114 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
             throw new IllegalArgumentException("category id is null");
         }
 
-        RCDependency dependency = new RCDependency();
-        dependency.setRecipe(recipe);
-        dependency.setCategory(category);
-        if (!findDependency(recipe, category)){
-            createDependency(dependency);
+        Connection conn = null;
+        try {
+            conn = TransactionContext.getConnection(dataSource);
+            insertLink(conn, recipe.getId(), category.getId());
+        } catch (SQLException ex) {
+            if (!DUPLICATE_KEY.equals(ex.getSQLState())) {
+                throw translateInsertFailure(ex,
+                        "Error when inserting recipe " + recipe + " into category " + category);
+            }
+            // recipe is already in the category
+        } finally {
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    @Override
+    public int assignRecipesToCategory(Category category, Collection<Recipe> recipes)
+            throws ServiceFailureException {
+        checkDataSource();
+        if (category == null) {
+            throw new IllegalArgumentException("Cat is null");
+        }
+        if (category.getId() == null) {
+            throw new IllegalEntityException("Cat id is null");
+        }
+        if (recipes == null) {
+            throw new IllegalArgumentException("Recipes are null");
+        }
+        Set<Long> recipeIds = new TreeSet<>();
+        for (Recipe recipe : recipes) {
+            if (recipe == null) {
+                throw new IllegalArgumentException("Recipe is null");
+            }
+            if (recipe.getId() == null) {
+                throw new IllegalEntityException("Recipe id is null");
+            }
+            recipeIds.add(recipe.getId());
+        }
+        if (recipeIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            long[] inserted = TransactionContext.execute(dataSource, conn -> {
+                try (PreparedStatement st = conn.prepareStatement(
+                        "SELECT RECIPE_ID FROM Rc_dependency WHERE CATEGORY_ID = ?")) {
+                    st.setLong(1, category.getId());
+                    ResultSet rs = st.executeQuery();
+                    while (rs.next()) {
+                        recipeIds.remove(rs.getLong("RECIPE_ID"));
+                    }
+                }
+                try (PreparedStatement st = conn.prepareStatement(
+                        "INSERT INTO Rc_dependency (RECIPE_ID, CATEGORY_ID) VALUES (?,?)")) {
+                    int batched = 0;
+                    for (long recipeId : recipeIds) {
+                        st.setLong(1, recipeId);
+                        st.setLong(2, category.getId());
+                        st.addBatch();
+                        if (++batched == BATCH_SIZE) {
+                            st.executeBatch();
+                            batched = 0;
+                        }
+                    }
+                    if (batched > 0) {
+                        st.executeBatch();
+                    }
+                }
+                return recipeIds.stream().mapToLong(Long::longValue).toArray();
+            });
+            CategoryIndex index = categoryIndex;
+            long categoryId = category.getId();
+            TransactionContext.afterCommit(dataSource, () -> index.addAll(inserted, categoryId));
+            return inserted.length;
+        } catch (SQLException ex) {
+            throw translateInsertFailure(ex, "Error when assigning recipes into category " + category);
+        }
+    }
+
+    /**
+     * Inserts one link and updates the category index once it is committed
+     */
+    private void insertLink(Connection conn, long recipeId, long categoryId) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "INSERT INTO Rc_dependency (RECIPE_ID, CATEGORY_ID) VALUES (?,?)")) {
+            st.setLong(1, recipeId);
+            st.setLong(2, categoryId);
+            DBUtils.checkUpdatesCount(st.executeUpdate(), recipeId + "/" + categoryId, true);
         }
+        CategoryIndex index = categoryIndex;
+        TransactionContext.afterCommit(dataSource, () -> index.add(recipeId, categoryId));
+    }
+
+    /**
+     * Maps violated constraints of table RC_DEPENDENCY to exceptions of the manager
+     *
+     * @param ex failure of the insert
+     * @param msg message used for other failures
+     * @return exception to be thrown
+     */
+    private static RuntimeException translateInsertFailure(SQLException ex, String msg) {
+        if (DUPLICATE_KEY.equals(ex.getSQLState())) {
+            return new IllegalArgumentException("Recipe is already in category", ex);
+        }
+        if (FOREIGN_KEY_VIOLATION.equals(ex.getSQLState())) {
+            return new IllegalEntityException("Recipe or category not in DB", ex);
+        }
+        logger.log(Level.SEVERE, msg, ex);
+        return new ServiceFailureException(msg, ex);
     }
 
     @Override
@@ -254,25 +378,92 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
         if (category.getId() == null) {
             throw new IllegalEntityException("Cat id is null");
         }
+        return findRecipes("SELECT RECIPE_ID FROM Rc_dependency WHERE CATEGORY_ID = ?",
+                "Error " + category, category.getId());
+    }
+
+    @Override
+    public List<Recipe> findRecipesInAnyCategory(Set<Category> categories) throws ServiceFailureException {
+        checkDataSource();
+        long[] ids = categoryIds(categories);
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        return findRecipes("SELECT RECIPE_ID FROM Rc_dependency WHERE CATEGORY_ID IN ("
+                        + DBUtils.placeholders(ids.length) + ")",
+                "Error when getting recipes in any of categories " + categories, ids);
+    }
+
+    @Override
+    public List<Recipe> findRecipesInAllCategories(Set<Category> categories) throws ServiceFailureException {
+        checkDataSource();
+        long[] ids = categoryIds(categories);
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        // links are unique, so a recipe in all categories has one link to each of them
+        return findRecipes("SELECT RECIPE_ID FROM Rc_dependency WHERE CATEGORY_ID IN ("
+                        + DBUtils.placeholders(ids.length) + ") GROUP BY RECIPE_ID HAVING COUNT(*) = "
+                        + ids.length,
+                "Error when getting recipes in all of categories " + categories, ids);
+    }
+
+    @Override
+    public Map<Long, Integer> countRecipesInCategories(Collection<Long> recipeIds) throws ServiceFailureException {
+        checkDataSource();
+        if (recipeIds == null) {
+            throw new IllegalArgumentException("Recipe ids are null");
+        }
+        if (recipeIds.contains(null)) {
+            throw new IllegalArgumentException("Recipe ids contain null");
+        }
+        return getCategoryIndex().countRecipes(recipeIds);
+    }
+
+    /**
+     * Loads index of recipes in categories from the database, replacing the current
+     * one. Index is otherwise loaded on the first counting of recipes in categories.
+     *
+     * @throws ServiceFailureException when loading fails
+     */
+    public void loadCategoryIndex() throws ServiceFailureException {
+        checkDataSource();
+        CategoryIndex index = categoryIndex;
+        // changes committed during the load make it unpublished, they are rare
+        // enough to try once more
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long token = index.startLoad();
+            if (index.publish(token, readCategoryIndex())) {
+                return;
+            }
+        }
+    }
+
+    private CategoryIndex readCategoryIndex() throws ServiceFailureException {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
-            st = conn.prepareStatement(
-                    "SELECT RECIPE_ID FROM Rc_dependency WHERE CATEGORY_ID = ?");
-            st.setLong(1, category.getId());
-
-            List<Long> ids = RCDependencyManagerImpl.executeQueryForMultipleRCDependenciesRecipe(st);
-            List<Recipe> resultSet = new ArrayList<>();
-            RecipeManagerImpl manager = new RecipeManagerImpl(prepareClockMock(ZonedDateTime.now()));
-            manager.setDataSource(dataSource);
-            for( Long id: ids){
-                Recipe foundRecipe = manager.findRecipeById(id);
-                resultSet.add(foundRecipe);
+            conn = TransactionContext.getConnection(dataSource);
+            // categories without recipes are read too, their names are completed
+            st = conn.prepareStatement("SELECT c.ID, c.NAME, d.RECIPE_ID FROM Category c "
+                    + "LEFT JOIN Rc_dependency d ON d.CATEGORY_ID = c.ID ORDER BY c.ID");
+            ResultSet rs = st.executeQuery();
+            CategoryIndex index = new CategoryIndex();
+            long categoryId = 0;
+            while (rs.next()) {
+                long id = rs.getLong("ID");
+                if (id != categoryId) {
+                    index.putCategory(id, rs.getString("NAME"));
+                    categoryId = id;
+                }
+                long recipeId = rs.getLong("RECIPE_ID");
+                if (!rs.wasNull()) {
+                    index.add(recipeId, id);
+                }
             }
-            return resultSet;
+            return index;
         } catch (SQLException ex) {
-            String msg = "Error " + category;
+            String msg = "Error when loading category index from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
@@ -280,23 +471,55 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
         }
     }
 
-    private static List<Long> executeQueryForMultipleRCDependenciesRecipe(PreparedStatement st) throws SQLException {
-        ResultSet rs = st.executeQuery();
-        List<Long> result = new ArrayList<>();
-        while (rs.next()) {
-            result.add(rs.getLong("RECIPE_ID")); //rowToGrave
+    /**
+     * @return loaded index of links, within a transaction an index read just for the caller
+     */
+    CategoryIndex getCategoryIndex() {
+        CategoryIndex index = categoryIndex;
+        if (TransactionContext.isActive(dataSource)) {
+            // shared index does not contain uncommitted changes of the transaction,
+            // so an index read within it is used only for this call
+            return readCategoryIndex();
         }
-        return result;
+        if (index.isLoaded()) {
+            return index;
+        }
+        long token = index.startLoad();
+        CategoryIndex loaded = readCategoryIndex();
+        return index.publish(token, loaded) ? index : loaded;
     }
 
+    private static long[] categoryIds(Set<Category> categories) {
+        if (categories == null) {
+            throw new IllegalArgumentException("Categories are null");
+        }
+        long[] ids = new long[categories.size()];
+        int index = 0;
+        for (Category category : categories) {
+            if (category == null) {
+                throw new IllegalArgumentException("Cat is null");
+            }
+            if (category.getId() == null) {
+                throw new IllegalEntityException("Cat id is null");
+            }
+            ids[index++] = category.getId();
+        }
+        // categories equal by id but not by name would be counted twice
+        return Arrays.stream(ids).distinct().toArray();
+    }
 
-    static List<Long> executeQueryForMultipleRCDependenciesCategory(PreparedStatement st) throws SQLException {
-        ResultSet rs = st.executeQuery();
-        List<Long> result = new ArrayList<>();
-        while (rs.next()) {
-            result.add(rs.getLong("CATEGORY_ID")); //rowToGrave
+    private List<Recipe> findRecipes(String idQuery, String errorMessage, long... parameters)
+            throws ServiceFailureException {
+        Connection conn = null;
+        try {
+            conn = TransactionContext.getConnection(dataSource);
+            return RecipeManagerImpl.findRecipesByQuery(conn, idQuery, parameters);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, errorMessage, ex);
+            throw new ServiceFailureException(errorMessage, ex);
+        } finally {
+            DBUtils.closeQuietly(conn);
         }
-        return result;
     }
 
     @Override
@@ -311,18 +534,16 @@ public class RCDependencyManagerImpl implements RCDependencyManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = TransactionContext.getConnection(dataSource);
             st = conn.prepareStatement(
-                    "SELECT Category_id FROM Rc_dependency WHERE RECIPE_ID = ?");
+                    "SELECT c.ID, c.NAME FROM Rc_dependency d JOIN Category c ON c.ID = d.CATEGORY_ID "
+                            + "WHERE d.RECIPE_ID = ? ORDER BY c.ID");
             st.setLong(1, recipe.getId());
 
-            List<Long> ids = RCDependencyManagerImpl.executeQueryForMultipleRCDependenciesCategory(st);
+            ResultSet rs = st.executeQuery();
             List<Category> resultSet = new ArrayList<>();
-            CategoryManagerImpl manager = new CategoryManagerImpl();
-            manager.setDataSource(dataSource);
-            for( Long id: ids){
-                Category foundCategory = manager.findCategoryById(id);
-                resultSet.add(foundCategory);
+            while (rs.next()) {
+                resultSet.add(new Category(rs.getLong("ID"), rs.getString("NAME")));
             }
             return resultSet;
 
@@ -1,21 +1,37 @@
 package cz.muni.fi.pv168.recipeevidence.impl;
 
 import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
  * Recipe contains ingredients and procedure for preparing meal specified by its name.
  * Each Recipe belongs to at least one Category.
+ *
+ * Recipe remembers which of its columns were set and which ingredients it had since
+ * it was last read from or written to the database, so that only changes are written.
  * @author Petra Halova
  */
 public class Recipe {
 
+    /**
+     * Columns of table RECIPE which can be changed
+     */
+    enum Field {
+        NAME, PROCEDURE, DATE
+    }
+
     private Long id;
+    private Long version;
     private String name;
     private Set<String> ingredients;
     private String procedure;
     private LocalDate date;
 
+    private final Set<Field> dirtyFields = EnumSet.noneOf(Field.class);
+    private Set<String> storedIngredients;
+
     public Recipe() {
     }
 
@@ -24,8 +40,16 @@ public class Recipe {
         this.id = id;
     }
 
+    /**
+     * @param version version of the recipe in the database, used to detect concurrent modifications
+     */
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setName(String name) {
         this.name = name;
+        dirtyFields.add(Field.NAME);
     }
 
     public void setIngredients(Set<String> ingredients) {
@@ -34,16 +58,22 @@ public class Recipe {
 
     public void setProcedure(String procedure) {
         this.procedure = procedure;
+        dirtyFields.add(Field.PROCEDURE);
     }
 
     public void setDate(LocalDate date) {
         this.date = date;
+        dirtyFields.add(Field.DATE);
     }
 
     public Long getId() {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public String getName() {
         return name;
     }
@@ -59,4 +89,53 @@ public class Recipe {
     public LocalDate getDate() {
         return date;
     }
+
+    /**
+     * @return true if the recipe was changed since it was last read from or written to the database
+     */
+    public boolean isDirty() {
+        return !dirtyFields.isEmpty() || isIngredientsChanged();
+    }
+
+    Set<Field> getDirtyFields() {
+        return dirtyFields;
+    }
+
+    /**
+     * @return ingredients which are stored in the database, null if they are not known
+     */
+    Set<String> getStoredIngredients() {
+        return storedIngredients;
+    }
+
+    /**
+     * @return true if ingredients differ from the stored ones or the stored ones are not known
+     */
+    boolean isIngredientsChanged() {
+        return storedIngredients == null || !storedIngredients.equals(ingredients);
+    }
+
+    /**
+     * @return deep copy of the recipe including its stored state
+     */
+    Recipe copy() {
+        Recipe copy = new Recipe();
+        copy.id = id;
+        copy.version = version;
+        copy.name = name;
+        copy.ingredients = ingredients == null ? null : new HashSet<>(ingredients);
+        copy.procedure = procedure;
+        copy.date = date;
+        copy.dirtyFields.addAll(dirtyFields);
+        copy.storedIngredients = storedIngredients == null ? null : new HashSet<>(storedIngredients);
+        return copy;
+    }
+
+    /**
+     * Marks current state of the recipe as the state stored in the database
+     */
+    void markStored() {
+        dirtyFields.clear();
+        storedIngredients = ingredients == null ? null : new HashSet<>(ingredients);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.common.CacheStats;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of recipes read by id, bounded by estimated size of the recipes in bytes.
+ * Entries are kept in the least recently used order. When the cache is full, a new
+ * recipe replaces the least recently used one only if it was requested more often
+ * recently, so that a scan over many recipes does not flush the frequently read ones.
+ * Recipes are copied on the way in and out, callers cannot change cached state.
+ *
+ * The cache is shared by all managers of the data source, like {@link CategoryCache}.
+ */
+class RecipeCache {
+
+    /**
+     * Default bound of the estimated size of cached recipes
+     */
+    static final long DEFAULT_MAX_WEIGHT = 16L * 1024 * 1024;
+
+    private static final DataSourceRegistry<RecipeCache> caches =
+            new DataSourceRegistry<>(() -> new RecipeCache(DEFAULT_MAX_WEIGHT));
+
+    private final long maxWeight;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long weight;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    RecipeCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @param dataSource dataSource
+     * @return cache of recipes stored in the data source
+     */
+    static RecipeCache forDataSource(DataSource dataSource) {
+        return caches.get(dataSource);
+    }
+
+    /**
+     * @param id id of the recipe
+     * @return copy of the cached recipe or null
+     */
+    synchronized Recipe get(long id) {
+        sketch.increment(id);
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.recipe.copy();
+    }
+
+    /**
+     * @return token to be passed to {@link #put(long, Recipe)} once the recipe is read
+     */
+    synchronized long startLoad() {
+        return generation;
+    }
+
+    /**
+     * Caches copy of the recipe read from the database, unless some recipe was
+     * invalidated since the read started
+     *
+     * @param token value returned by {@link #startLoad()}
+     * @param recipe recipe with id
+     */
+    synchronized void put(long token, Recipe recipe) {
+        long recipeWeight = weigh(recipe);
+        if (token != generation || recipeWeight > maxWeight) {
+            return;
+        }
+        remove(recipe.getId());
+        // decide admission first, the recipe must not evict anything unless it
+        // is requested more often than every recipe it would replace
+        int frequency = sketch.frequency(recipe.getId());
+        long freed = 0;
+        int victims = 0;
+        for (Map.Entry<Long, Entry> victim : entries.entrySet()) {
+            if (weight - freed + recipeWeight <= maxWeight) {
+                break;
+            }
+            if (frequency <= sketch.frequency(victim.getKey())) {
+                return;
+            }
+            freed += victim.getValue().weight;
+            victims++;
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        for (int i = 0; i < victims; i++) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+        entries.put(recipe.getId(), new Entry(recipe.copy(), recipeWeight));
+        weight += recipeWeight;
+    }
+
+    /**
+     * Removes recipes, called once their change is committed
+     *
+     * @param ids ids of changed or deleted recipes
+     */
+    synchronized void invalidate(Collection<Long> ids) {
+        generation++;
+        for (Long id : ids) {
+            remove(id);
+        }
+    }
+
+    synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, weight);
+    }
+
+    private void remove(Long id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * @return rough estimate of heap bytes held by the cached copy of the recipe
+     */
+    static long weigh(Recipe recipe) {
+        long result = 128 + 2L * recipe.getName().length() + 2L * recipe.getProcedure().length();
+        for (String ingredient : recipe.getIngredients()) {
+            // element of the ingredients and of the stored ingredients set
+            result += 96 + 2L * ingredient.length();
+        }
+        return result;
+    }
+
+    private static class Entry {
+
+        private final Recipe recipe;
+        private final long weight;
+
+        private Entry(Recipe recipe, long weight) {
+            this.recipe = recipe;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Approximate counts of recent requests of recipe ids. Four 4-bit counters per id
+     * are taken from a fixed table, the smallest one is the estimate. All counters
+     * are halved periodically, so the counts reflect recent requests.
+     */
+    private static class FrequencySketch {
+
+        private static final int TABLE_SIZE = 1 << 14;
+        private static final long[] SEEDS = {
+                0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final byte[] counters = new byte[TABLE_SIZE];
+        private int additions;
+
+        private void increment(long id) {
+            for (long seed : SEEDS) {
+                int index = index(id, seed);
+                if (counters[index] < 15) {
+                    counters[index]++;
+                }
+            }
+            if (++additions == 10 * TABLE_SIZE) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(long id) {
+            int result = Integer.MAX_VALUE;
+            for (long seed : SEEDS) {
+                result = Math.min(result, counters[index(id, seed)]);
+            }
+            return result;
+        }
+
+        private static int index(long id, long seed) {
+            long hash = (id + seed) * seed;
+            return (int) (hash >>> 40) & (TABLE_SIZE - 1);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.TransactionContext;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exports all recipes with their ingredients and categories to a {@link RecipeFormat}
+ * file, which {@link RecipeImporter} reads back.
+ *
+ * Recipes are read by a forward-only cursor ordered by id and links to categories
+ * by a second cursor ordered by recipe id, which are merged while writing. Only
+ * the recipe being written is held in memory, so the export runs in constant
+ * memory however large the catalogue is. Ingredients are written sorted by name,
+ * categories sorted by name. Categories without recipes are not exported.
+ */
+public class RecipeExporter {
+
+    private static final Logger logger = Logger.getLogger(
+            RecipeExporter.class.getName());
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SELECT_RECIPES = "SELECT r.ID, r.VERSION, r.NAME, r.DATE, r.RECIPE_PROCEDURE, "
+            + "i.NAME AS INGREDIENT FROM Recipe r LEFT JOIN RECIPE_INGREDIENT ri ON ri.RECIPE_ID = r.ID "
+            + "LEFT JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID ORDER BY r.ID";
+
+    private static final String SELECT_LINKS = "SELECT d.RECIPE_ID, c.NAME FROM Rc_dependency d "
+            + "JOIN Category c ON c.ID = d.CATEGORY_ID ORDER BY d.RECIPE_ID, c.NAME";
+
+    private DataSource dataSource;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Writes all recipes in UTF-8, one record per line, preceded by the header of
+     * the format. The stream is flushed but not closed.
+     *
+     * @param out stream the recipes are written to
+     * @param format format of the output
+     * @return number of exported recipes
+     * @throws IOException when writing fails, the export is stopped
+     * @throws ServiceFailureException when reading from the database fails
+     */
+    public long exportAll(OutputStream out, RecipeFormat format) throws IOException, ServiceFailureException {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream is null");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Format is null");
+        }
+        checkDataSource();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long count;
+        try {
+            if (format.header() != null) {
+                writer.write(format.header());
+                writer.write('\n');
+            }
+            count = TransactionContext.execute(dataSource, connection -> {
+                PreparedStatement recipeStatement = null;
+                PreparedStatement linkStatement = null;
+                try {
+                    recipeStatement = connection.prepareStatement(SELECT_RECIPES,
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    recipeStatement.setFetchSize(FETCH_SIZE);
+                    linkStatement = connection.prepareStatement(SELECT_LINKS,
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    linkStatement.setFetchSize(FETCH_SIZE);
+                    return writeRecords(new RecipeRowAssembler(recipeStatement.executeQuery()),
+                            linkStatement.executeQuery(), format, writer);
+                } finally {
+                    DBUtils.closeQuietly(null, recipeStatement, linkStatement);
+                }
+            });
+            writer.flush();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } catch (SQLException ex) {
+            String msg = "Error when exporting recipes from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+        return count;
+    }
+
+    /**
+     * Merges recipes with links to categories, both ordered by recipe id
+     */
+    private static long writeRecords(RecipeRowAssembler recipes, ResultSet links, RecipeFormat format,
+                                     Writer writer) throws SQLException {
+        long count = 0;
+        boolean hasLink = links.next();
+        Recipe recipe;
+        while ((recipe = recipes.next()) != null) {
+            Set<String> categories = new LinkedHashSet<>();
+            // links of recipes the recipe cursor did not see, created or deleted meanwhile, are skipped
+            while (hasLink && links.getLong("RECIPE_ID") <= recipe.getId()) {
+                if (links.getLong("RECIPE_ID") == recipe.getId()) {
+                    categories.add(links.getString("NAME"));
+                }
+                hasLink = links.next();
+            }
+            recipe.setIngredients(new TreeSet<>(recipe.getIngredients()));
+            try {
+                format.write(new RecipeRecord(recipe, categories), writer);
+                writer.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,480 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Text formats of recipe files. Every record holds name, procedure, date of
+ * creation (ISO, optional), ingredients and names of categories of one recipe.
+ */
+public enum RecipeFormat {
+
+    /**
+     * RFC 4180 CSV with header {@code name,procedure,date,ingredients,categories}.
+     * Ingredients and categories are separated by {@value #LIST_SEPARATOR}, quoted
+     * fields may contain line breaks.
+     */
+    CSV {
+        @Override
+        String header() {
+            return "name,procedure,date,ingredients,categories";
+        }
+
+        @Override
+        boolean quotesSpanLines() {
+            return true;
+        }
+
+        @Override
+        RecipeRecord parse(String record) {
+            List<String> fields = splitFields(record);
+            if (fields.size() != 5) {
+                throw new IllegalArgumentException("Expected 5 fields, found " + fields.size());
+            }
+            String date = fields.get(2).trim();
+            return toRecord(fields.get(0), fields.get(1), date.isEmpty() ? null : date,
+                    splitList(fields.get(3)), splitList(fields.get(4)));
+        }
+
+        @Override
+        void write(RecipeRecord record, Appendable out) throws IOException {
+            Recipe recipe = record.getRecipe();
+            writeField(recipe.getName(), out);
+            out.append(',');
+            writeField(recipe.getProcedure(), out);
+            out.append(',');
+            if (recipe.getDate() != null) {
+                out.append(recipe.getDate().toString());
+            }
+            out.append(',');
+            writeField(joinList(recipe.getIngredients()), out);
+            out.append(',');
+            writeField(joinList(record.getCategories()), out);
+        }
+    },
+
+    /**
+     * One JSON object per line with string fields {@code name}, {@code procedure},
+     * {@code date} and string arrays {@code ingredients} and {@code categories}
+     */
+    JSON_LINES {
+        @Override
+        String header() {
+            return null;
+        }
+
+        @Override
+        boolean quotesSpanLines() {
+            return false;
+        }
+
+        @Override
+        RecipeRecord parse(String record) {
+            Map<String, Object> object = new JsonParser(record).parseObject();
+            List<String> categories = stringList(object, "categories");
+            return toRecord(string(object, "name"), string(object, "procedure"), string(object, "date"),
+                    stringList(object, "ingredients"), categories == null ? new ArrayList<>() : categories);
+        }
+
+        @Override
+        void write(RecipeRecord record, Appendable out) throws IOException {
+            Recipe recipe = record.getRecipe();
+            out.append("{\"name\":");
+            writeString(recipe.getName(), out);
+            out.append(",\"procedure\":");
+            writeString(recipe.getProcedure(), out);
+            out.append(",\"date\":");
+            writeString(recipe.getDate() == null ? null : recipe.getDate().toString(), out);
+            out.append(",\"ingredients\":");
+            writeArray(recipe.getIngredients(), out);
+            out.append(",\"categories\":");
+            writeArray(record.getCategories(), out);
+            out.append('}');
+        }
+    };
+
+    static final char LIST_SEPARATOR = ';';
+
+    /**
+     * @return first record of a file in this format, null if there is none
+     */
+    abstract String header();
+
+    /**
+     * @return true if a quoted value may contain line breaks, so records are not
+     * split at line breaks inside quotes
+     */
+    abstract boolean quotesSpanLines();
+
+    /**
+     * @param record one record without the line break
+     * @return parsed recipe, not validated
+     * @throws IllegalArgumentException if the record is malformed
+     * @throws java.time.DateTimeException if the date is malformed
+     */
+    abstract RecipeRecord parse(String record);
+
+    /**
+     * Writes the record so that {@link #parse(String)} reads it back. In CSV,
+     * names of ingredients and categories must not contain {@value #LIST_SEPARATOR}
+     * and their surrounding whitespace is lost.
+     *
+     * @param record recipe with names of its categories
+     * @param out where the record is appended, without a line break
+     * @throws IOException when appending fails
+     */
+    abstract void write(RecipeRecord record, Appendable out) throws IOException;
+
+    private static RecipeRecord toRecord(String name, String procedure, String date,
+                                         List<String> ingredients, List<String> categories) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setProcedure(procedure);
+        recipe.setDate(date == null ? null : LocalDate.parse(date));
+        recipe.setIngredients(ingredients == null ? null : new LinkedHashSet<>(ingredients));
+        return new RecipeRecord(recipe, new LinkedHashSet<>(categories));
+    }
+
+    /**
+     * Splits CSV record into fields, removing quotes
+     */
+    private static List<String> splitFields(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            if (i < record.length() && record.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i == record.length()) {
+                        throw new IllegalArgumentException("Unterminated quoted field");
+                    }
+                    char c = record.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < record.length() && record.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < record.length() && record.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected character after quoted field at " + i);
+                }
+            } else {
+                while (i < record.length() && record.charAt(i) != ',') {
+                    field.append(record.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+            field.setLength(0);
+            if (i == record.length()) {
+                return fields;
+            }
+            i++;
+        }
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            if (i == value.length() || value.charAt(i) == LIST_SEPARATOR) {
+                String item = value.substring(from, i).trim();
+                if (!item.isEmpty()) {
+                    items.add(item);
+                }
+                from = i + 1;
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Writes CSV field, quoted if it contains a separator, a quote or a line break
+     */
+    private static void writeField(String value, Appendable out) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.append(value, from, i + 1).append('"');
+                from = i + 1;
+            }
+        }
+        out.append(value, from, value.length()).append('"');
+    }
+
+    private static String joinList(Set<String> items) {
+        if (items == null) {
+            return "";
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String item : items) {
+            if (joined.length() > 0) {
+                joined.append(LIST_SEPARATOR);
+            }
+            joined.append(item);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Writes JSON string, or null. Line breaks are escaped, so the value stays on one line.
+     */
+    private static void writeString(String value, Appendable out) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            out.append(value, from, i);
+            from = i + 1;
+            switch (c) {
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '"':
+                case '\\':
+                    out.append('\\').append(c);
+                    break;
+                default:
+                    out.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        out.append(value, from, value.length()).append('"');
+    }
+
+    private static void writeArray(Set<String> items, Appendable out) throws IOException {
+        out.append('[');
+        if (items != null) {
+            boolean first = true;
+            for (String item : items) {
+                if (!first) {
+                    out.append(',');
+                }
+                writeString(item, out);
+                first = false;
+            }
+        }
+        out.append(']');
+    }
+
+    private static String string(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Field " + key + " is not a string");
+        }
+        return (String) value;
+    }
+
+    private static List<String> stringList(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Field " + key + " is not an array");
+        }
+        List<String> items = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (!(item instanceof String)) {
+                throw new IllegalArgumentException("Field " + key + " contains a value which is not a string");
+            }
+            items.add((String) item);
+        }
+        return items;
+    }
+
+    /**
+     * Parser of one JSON object. Numbers and booleans are kept as their text.
+     */
+    private static final class JsonParser {
+
+        private final String text;
+        private int position;
+
+        private JsonParser(String text) {
+            this.text = text;
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = object();
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected content after object");
+            }
+            return object;
+        }
+
+        private Map<String, Object> object() {
+            expect('{');
+            Map<String, Object> object = new LinkedHashMap<>();
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+            } while (consume(','));
+            expect('}');
+            return object;
+        }
+
+        private List<Object> array() {
+            expect('[');
+            List<Object> array = new ArrayList<>();
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            do {
+                array.add(value());
+                skipWhitespace();
+            } while (consume(','));
+            expect(']');
+            return array;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            char c = peek();
+            if (c == '{') {
+                return object();
+            }
+            if (c == '[') {
+                return array();
+            }
+            if (c == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && "{}[],: \t\r\n\"".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) {
+                throw error("Value expected");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position == text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position == text.length()) {
+                    throw error("Unterminated escape");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Invalid unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            if (position == text.length()) {
+                throw error("Unexpected end of record");
+            }
+            return text.charAt(position);
+        }
+
+        private boolean consume(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + position);
+        }
+    }
+}
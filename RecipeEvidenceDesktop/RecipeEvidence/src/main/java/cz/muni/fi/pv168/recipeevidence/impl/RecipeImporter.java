@@ -0,0 +1,506 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.TransactionContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports recipes with their categories from a {@link RecipeFormat} file.
+ *
+ * The file flows through a pipeline of three stages. A reader thread splits it
+ * into chunks of records, parser threads parse and validate chunks in parallel
+ * and the calling thread writes them, each chunk in one transaction. Parsed
+ * chunks are handed to the writer in file order through a bounded queue, which
+ * stops the reader when the writer falls behind, so memory stays bounded.
+ *
+ * The offset of the next record is saved as a named checkpoint in the database,
+ * in the transaction of every chunk, so the checkpoint always matches the
+ * committed recipes. An import interrupted by a failure continues from there when
+ * it is started again with the same checkpoint and unchanged file, no record is
+ * imported twice or skipped. Invalid records are logged and skipped. Recipes are
+ * created by the given recipe manager and missing categories are created.
+ */
+public class RecipeImporter {
+
+    private static final Logger logger = Logger.getLogger(
+            RecipeImporter.class.getName());
+
+    private final RecipeManagerImpl recipeManager;
+    private DataSource dataSource;
+    private CategoryManagerImpl categoryManager;
+    private RCDependencyManagerImpl dependencyManager;
+    private int parserThreads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 500;
+    private int queueCapacity = 2 * parserThreads;
+    private Consumer<ImportProgress> progressListener = progress -> { };
+
+    /**
+     * @param recipeManager manager creating the recipes, it has to use the same data source
+     */
+    public RecipeImporter(RecipeManagerImpl recipeManager) {
+        if (recipeManager == null) {
+            throw new IllegalArgumentException("Recipe manager is null");
+        }
+        this.recipeManager = recipeManager;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.categoryManager = new CategoryManagerImpl();
+        this.categoryManager.setDataSource(dataSource);
+        this.dependencyManager = new RCDependencyManagerImpl();
+        this.dependencyManager.setDataSource(dataSource);
+    }
+
+    /**
+     * @param parserThreads number of threads parsing records, number of processors by default
+     */
+    public void setParserThreads(int parserThreads) {
+        if (parserThreads <= 0) {
+            throw new IllegalArgumentException("Number of parser threads must be positive");
+        }
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * @param chunkSize number of records written in one transaction, 500 by default
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param queueCapacity number of chunks read ahead of the writer, twice
+     * the number of processors by default
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param progressListener called by the writing thread after every committed chunk
+     */
+    public void setProgressListener(Consumer<ImportProgress> progressListener) {
+        if (progressListener == null) {
+            throw new IllegalArgumentException("Progress listener is null");
+        }
+        this.progressListener = progressListener;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Imports the file, resuming from the checkpoint if it exists
+     *
+     * @param file imported file in UTF-8
+     * @param format format of the file
+     * @param checkpoint name of the checkpoint where the progress is saved, null if
+     * the import should not be resumable
+     * @return progress of the finished import
+     * @throws IOException when the file cannot be read
+     * @throws ServiceFailureException when writing into the database fails, chunks
+     * committed before are kept
+     */
+    public ImportProgress importFile(Path file, RecipeFormat format, String checkpoint)
+            throws IOException, ServiceFailureException {
+        checkDataSource();
+        if (file == null) {
+            throw new IllegalArgumentException("File is null");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Format is null");
+        }
+        Run run = new Run(file, format, checkpoint);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(run.saved.offset);
+            RecordReader reader = new RecordReader(Channels.newInputStream(channel), run.saved.offset,
+                    format.quotesSpanLines());
+            AtomicInteger parserCount = new AtomicInteger();
+            ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, task -> {
+                Thread thread = new Thread(task, "recipe-import-parser-" + parserCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            Thread readerThread = new Thread(() -> run.read(reader, parsers), "recipe-import-reader");
+            readerThread.setDaemon(true);
+            try {
+                readerThread.start();
+                ImportProgress progress = run.write();
+                logger.log(Level.INFO, "Imported " + file + ": " + progress);
+                return progress;
+            } finally {
+                readerThread.interrupt();
+                parsers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * State of one import
+     */
+    private final class Run {
+
+        private final Path file;
+        private final RecipeFormat format;
+        private final String checkpointName;
+        private final Checkpoint saved;
+        private final long totalBytes;
+        private final long started = System.nanoTime();
+        private final BlockingQueue<Future<ParsedChunk>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Map<String, Category> categories = new HashMap<>();
+
+        private final AtomicLong recordsRead = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong recordsParsed = new AtomicLong();
+        private final AtomicLong readNanos = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private long recordsWritten;
+        private long writeNanos;
+
+        private Run(Path file, RecipeFormat format, String checkpointName) throws IOException {
+            this.file = file;
+            this.format = format;
+            this.checkpointName = checkpointName;
+            this.saved = checkpointName == null ? new Checkpoint() : readCheckpoint();
+            this.totalBytes = Files.size(file);
+            bytesRead.set(saved.offset);
+            for (Category category : categoryManager.findAllCategories()) {
+                categories.putIfAbsent(category.getCategoryName(), category);
+            }
+        }
+
+        /**
+         * Reader stage, submits chunks to parsers and queues their results in file order.
+         * Queue always ends with exactly one terminal element, the end marker or the
+         * failure of the reader, unless the writer has already finished.
+         */
+        private void read(RecordReader reader, ExecutorService parsers) {
+            CompletableFuture<ParsedChunk> terminal = new CompletableFuture<>();
+            boolean writerFinished = false;
+            try {
+                long firstRecord = saved.records + 1;
+                boolean atStart = saved.offset == 0;
+                while (true) {
+                    long start = System.nanoTime();
+                    List<byte[]> records = new ArrayList<>(chunkSize);
+                    byte[] record;
+                    while (records.size() < chunkSize && (record = reader.next()) != null) {
+                        if (atStart && isHeader(record)) {
+                            atStart = false;
+                            continue;
+                        }
+                        atStart = false;
+                        records.add(record);
+                    }
+                    readNanos.addAndGet(System.nanoTime() - start);
+                    if (records.isEmpty()) {
+                        break;
+                    }
+                    recordsRead.addAndGet(records.size());
+                    bytesRead.set(reader.getOffset());
+                    Chunk chunk = new Chunk(firstRecord, records, reader.getOffset());
+                    firstRecord += records.size();
+                    queue.put(parsers.submit(() -> parse(chunk)));
+                }
+                terminal.complete(null);
+            } catch (InterruptedException ex) {
+                // the writer has finished, nobody waits for the terminal element
+                writerFinished = true;
+            } catch (IOException | RuntimeException | Error ex) {
+                terminal.completeExceptionally(ex);
+            } finally {
+                if (!writerFinished) {
+                    if (!terminal.isDone()) {
+                        terminal.completeExceptionally(new IllegalStateException("Reader of " + file + " stopped"));
+                    }
+                    try {
+                        queue.put(terminal);
+                    } catch (InterruptedException ex) {
+                        // the writer has finished
+                    }
+                }
+            }
+        }
+
+        private boolean isHeader(byte[] record) {
+            String header = format.header();
+            return header != null && new String(record, StandardCharsets.UTF_8).trim().equalsIgnoreCase(header);
+        }
+
+        /**
+         * Parser stage, rejected records are logged and left out
+         */
+        private ParsedChunk parse(Chunk chunk) {
+            long start = System.nanoTime();
+            List<RecipeRecord> parsed = new ArrayList<>(chunk.records.size());
+            int rejected = 0;
+            long number = chunk.firstRecord;
+            for (byte[] record : chunk.records) {
+                try {
+                    RecipeRecord recipeRecord = format.parse(new String(record, StandardCharsets.UTF_8));
+                    recipeManager.validate(recipeRecord.getRecipe());
+                    parsed.add(recipeRecord);
+                } catch (IllegalArgumentException | DateTimeException ex) {
+                    logger.log(Level.WARNING, "Record " + number + " of " + file + " rejected: " + ex.getMessage());
+                    rejected++;
+                }
+                number++;
+            }
+            recordsParsed.addAndGet(chunk.records.size());
+            parseNanos.addAndGet(System.nanoTime() - start);
+            return new ParsedChunk(parsed, rejected, chunk.endOffset);
+        }
+
+        /**
+         * Writer stage, writes chunks in file order and saves checkpoint after each of them
+         */
+        private ImportProgress write() throws IOException {
+            Checkpoint checkpoint = saved;
+            while (true) {
+                ParsedChunk chunk;
+                try {
+                    chunk = queue.take().get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Import of " + file + " interrupted");
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw (IOException) ex.getCause();
+                    }
+                    throw new ServiceFailureException("Parsing of " + file + " failed", ex.getCause());
+                }
+                if (chunk == null) {
+                    return progress(checkpoint);
+                }
+                long start = System.nanoTime();
+                checkpoint = checkpoint.next(chunk);
+                writeChunk(chunk.records, checkpoint);
+                writeNanos += System.nanoTime() - start;
+                recordsWritten += chunk.records.size() + chunk.rejected;
+                progressListener.accept(progress(checkpoint));
+            }
+        }
+
+        /**
+         * Creates recipes of the chunk, links them to their categories and saves
+         * the checkpoint in one transaction
+         */
+        private void writeChunk(List<RecipeRecord> records, Checkpoint checkpoint) {
+            if (records.isEmpty() && checkpointName == null) {
+                return;
+            }
+            List<Recipe> recipes = new ArrayList<>(records.size());
+            Map<String, List<Recipe>> recipesByCategory = new LinkedHashMap<>();
+            for (RecipeRecord record : records) {
+                recipes.add(record.getRecipe());
+                for (String category : record.getCategories()) {
+                    recipesByCategory.computeIfAbsent(category, name -> new ArrayList<>()).add(record.getRecipe());
+                }
+            }
+            Map<String, Category> created = new HashMap<>();
+            try {
+                TransactionContext.execute(dataSource, connection -> {
+                    if (!recipes.isEmpty()) {
+                        recipeManager.createRecipes(recipes);
+                    }
+                    for (Map.Entry<String, List<Recipe>> entry : recipesByCategory.entrySet()) {
+                        Category category = categories.get(entry.getKey());
+                        if (category == null) {
+                            category = new Category(null, entry.getKey());
+                            categoryManager.createCategory(category);
+                            created.put(entry.getKey(), category);
+                        }
+                        dependencyManager.assignRecipesToCategory(category, entry.getValue());
+                    }
+                    if (checkpointName != null) {
+                        checkpoint.save(connection, checkpointName, file);
+                    }
+                    return null;
+                });
+            } catch (SQLException ex) {
+                String msg = "Error when importing recipes from " + file;
+                logger.log(Level.SEVERE, msg, ex);
+                throw new ServiceFailureException(msg, ex);
+            }
+            // categories created by a rolled back chunk do not exist
+            categories.putAll(created);
+        }
+
+        private Checkpoint readCheckpoint() {
+            Connection connection = null;
+            try {
+                connection = dataSource.getConnection();
+                return Checkpoint.read(connection, checkpointName, file);
+            } catch (SQLException ex) {
+                String msg = "Error when reading import checkpoint " + checkpointName;
+                logger.log(Level.SEVERE, msg, ex);
+                throw new ServiceFailureException(msg, ex);
+            } finally {
+                DBUtils.closeQuietly(connection);
+            }
+        }
+
+        private ImportProgress progress(Checkpoint checkpoint) {
+            return new ImportProgress(saved.records + recordsRead.get(), saved.records + recordsParsed.get(),
+                    checkpoint.imported, checkpoint.rejected, bytesRead.get(), totalBytes, queue.size(),
+                    Duration.ofNanos(System.nanoTime() - started),
+                    throughput(recordsRead.get(), readNanos.get()),
+                    throughput(recordsParsed.get(), parseNanos.get()),
+                    throughput(recordsWritten, writeNanos));
+        }
+
+        private double throughput(long records, long nanos) {
+            return nanos == 0 ? 0 : records * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * Records read from the file, numbered from 1
+     */
+    private static final class Chunk {
+
+        private final long firstRecord;
+        private final List<byte[]> records;
+        private final long endOffset;
+
+        private Chunk(long firstRecord, List<byte[]> records, long endOffset) {
+            this.firstRecord = firstRecord;
+            this.records = records;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private static final class ParsedChunk {
+
+        private final List<RecipeRecord> records;
+        private final int rejected;
+        private final long endOffset;
+
+        private ParsedChunk(List<RecipeRecord> records, int rejected, long endOffset) {
+            this.records = records;
+            this.rejected = rejected;
+            this.endOffset = endOffset;
+        }
+    }
+
+    /**
+     * Progress of an import committed into the database
+     */
+    private static final class Checkpoint {
+
+        private final long offset;
+        private final long records;
+        private final long imported;
+        private final long rejected;
+
+        private Checkpoint() {
+            this(0, 0, 0, 0);
+        }
+
+        private Checkpoint(long offset, long records, long imported, long rejected) {
+            this.offset = offset;
+            this.records = records;
+            this.imported = imported;
+            this.rejected = rejected;
+        }
+
+        private Checkpoint next(ParsedChunk chunk) {
+            return new Checkpoint(chunk.endOffset, records + chunk.records.size() + chunk.rejected,
+                    imported + chunk.records.size(), rejected + chunk.rejected);
+        }
+
+        private static Checkpoint read(Connection connection, String name, Path file) throws SQLException {
+            PreparedStatement statement = null;
+            try {
+                statement = connection.prepareStatement("SELECT FILE, FILE_OFFSET, RECORDS, IMPORTED, REJECTED "
+                        + "FROM Import_checkpoint WHERE NAME = ?");
+                statement.setString(1, name);
+                ResultSet rs = statement.executeQuery();
+                if (!rs.next()) {
+                    return new Checkpoint();
+                }
+                if (!file.toAbsolutePath().toString().equals(rs.getString("FILE"))) {
+                    throw new IllegalArgumentException("Checkpoint " + name + " belongs to another file");
+                }
+                return new Checkpoint(rs.getLong("FILE_OFFSET"), rs.getLong("RECORDS"),
+                        rs.getLong("IMPORTED"), rs.getLong("REJECTED"));
+            } finally {
+                DBUtils.closeQuietly(null, statement);
+            }
+        }
+
+        /**
+         * Saves the checkpoint in the transaction of the connection, so it is
+         * committed or rolled back together with the chunk
+         */
+        private void save(Connection connection, String name, Path file) throws SQLException {
+            PreparedStatement update = null;
+            PreparedStatement insert = null;
+            try {
+                update = connection.prepareStatement("UPDATE Import_checkpoint SET FILE = ?, FILE_OFFSET = ?, "
+                        + "RECORDS = ?, IMPORTED = ?, REJECTED = ? WHERE NAME = ?");
+                setValues(update, file);
+                update.setString(6, name);
+                if (update.executeUpdate() == 0) {
+                    insert = connection.prepareStatement("INSERT INTO Import_checkpoint "
+                            + "(FILE, FILE_OFFSET, RECORDS, IMPORTED, REJECTED, NAME) VALUES (?, ?, ?, ?, ?, ?)");
+                    setValues(insert, file);
+                    insert.setString(6, name);
+                    insert.executeUpdate();
+                }
+            } finally {
+                DBUtils.closeQuietly(null, update, insert);
+            }
+        }
+
+        private void setValues(PreparedStatement statement, Path file) throws SQLException {
+            statement.setString(1, file.toAbsolutePath().toString());
+            statement.setLong(2, offset);
+            statement.setLong(3, records);
+            statement.setLong(4, imported);
+            statement.setLong(5, rejected);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory indexes of recipes and the dictionary of ingredient ids. They are
+ * shared by all recipe managers of the data source, like {@link RecipeCache}, so
+ * that a change done through one manager is seen by searches of the others.
+ * Each index is loaded once, on its first use.
+ */
+class RecipeIndexes {
+
+    private static final DataSourceRegistry<RecipeIndexes> indexes
+            = new DataSourceRegistry<>(RecipeIndexes::new);
+
+    final IngredientDictionary ingredientDictionary = new IngredientDictionary();
+    final LazyIndex<IngredientIndex> ingredients = new LazyIndex<>();
+    final LazyIndex<TextIndex> text = new LazyIndex<>();
+
+    /**
+     * @param dataSource dataSource
+     * @return indexes of recipes stored in the data source, not loaded yet when created
+     */
+    static RecipeIndexes forDataSource(DataSource dataSource) {
+        return indexes.get(dataSource);
+    }
+
+    /**
+     * Index loaded on demand. Changes wait for loading to finish and are dropped
+     * while the index is not loaded, index operations have to be idempotent.
+     *
+     * @param <T> type of the index
+     */
+    static final class LazyIndex<T> {
+
+        private final Object lock = new Object();
+        private volatile T index;
+
+        /**
+         * @return the index or null if it is not loaded
+         */
+        T getLoaded() {
+            return index;
+        }
+
+        /**
+         * @param loader reads the index from the database
+         * @return the index, loaded by the loader if it was not loaded yet
+         */
+        T get(Supplier<T> loader) {
+            T result = index;
+            if (result == null) {
+                synchronized (lock) {
+                    if (index == null) {
+                        index = loader.get();
+                    }
+                    result = index;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param loader reads the index from the database, it replaces the current one
+         */
+        void reload(Supplier<T> loader) {
+            synchronized (lock) {
+                index = loader.get();
+            }
+        }
+
+        /**
+         * @param update change applied to the index, if it is loaded
+         */
+        void update(Consumer<T> update) {
+            synchronized (lock) {
+                if (index != null) {
+                    update.accept(index);
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package cz.muni.fi.pv168.recipeevidence.impl;
 
 import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import cz.muni.fi.pv168.recipeevidence.common.CacheStats;
 import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.TransactionContext;
 
 import javax.sql.DataSource;
 import java.sql.*;
@@ -9,6 +11,9 @@ import java.sql.Date;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,15 +22,72 @@ public class RecipeManagerImpl implements RecipeManager {
 
     private static final Logger logger = Logger.getLogger(RecipeManagerImpl.class.getName());
 
+    /**
+     * Number of ingredient rows sent to the database in one JDBC batch
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Maximal number of recipe ids bound into one IN list
+     */
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
+    /**
+     * Number of rows fetched at once by streaming reads
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Joins recipes aliased r with names of their ingredients aliased i
+     */
+    private static final String JOIN_INGREDIENTS = "LEFT JOIN RECIPE_INGREDIENT ri ON ri.RECIPE_ID = r.ID "
+            + "LEFT JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID ";
+
+    /**
+     * Selects ids and names of ingredients of one recipe
+     */
+    private static final String SELECT_RECIPE_INGREDIENTS = "SELECT i.ID, i.NAME FROM RECIPE_INGREDIENT ri "
+            + "JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID WHERE ri.RECIPE_ID = ?";
+
+    /**
+     * Columns of table RECIPE written by updateRecipeChanges
+     */
+    private static final Map<Recipe.Field, String> COLUMNS = new EnumMap<>(Recipe.Field.class);
+
+    static {
+        COLUMNS.put(Recipe.Field.NAME, "NAME");
+        COLUMNS.put(Recipe.Field.PROCEDURE, "RECIPE_PROCEDURE");
+        COLUMNS.put(Recipe.Field.DATE, "DATE");
+    }
+
+    private static final String INSERT_RECIPE_INGREDIENT
+            = "INSERT INTO RECIPE_INGREDIENT (RECIPE_ID, INGREDIENT_ID) VALUES (?,?)";
+
     private DataSource dataSource;
     private final Clock clock;
 
+    private volatile RecipeIndexes indexes;
+    private volatile RecipeCache recipeCache;
+    private volatile CategoryIndex categoryIndex;
+
     public RecipeManagerImpl(Clock clock) {
         this.clock = clock;
     }
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
+        this.indexes = dataSource == null ? null : RecipeIndexes.forDataSource(dataSource);
+        this.recipeCache = dataSource == null ? null : RecipeCache.forDataSource(dataSource);
+        this.categoryIndex = dataSource == null ? null : CategoryIndex.forDataSource(dataSource);
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the cache of recipes read by id,
+     * which is shared by managers of the data source
+     */
+    public CacheStats getRecipeCacheStats() {
+        checkDataSource();
+        return recipeCache.getStats();
     }
 
     private void checkDataSource() {
@@ -34,7 +96,13 @@ public class RecipeManagerImpl implements RecipeManager {
         }
     }
 
-    private void validate(Recipe recipe) {
+    /**
+     * Checks rules every stored recipe has to satisfy, used also by {@link RecipeImporter}
+     *
+     * @param recipe recipe
+     * @throws IllegalArgumentException if the recipe breaks a rule
+     */
+    void validate(Recipe recipe) {
         if (recipe == null) {
             throw new IllegalArgumentException("Recipe is null");
         }
@@ -69,30 +137,27 @@ public class RecipeManagerImpl implements RecipeManager {
         PreparedStatement statement1 = null;
         PreparedStatement statement2 = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             connection.setAutoCommit(false);
             //TABLE RECIPE
             statement1 = connection.prepareStatement(
                     "INSERT INTO Recipe (NAME,RECIPE_PROCEDURE,DATE) VALUES (?,?,?)",
                     Statement.RETURN_GENERATED_KEYS);
-            statement1.setString(1, recipe.getName());
-            statement1.setString(2, recipe.getProcedure());
-            statement1.setDate(3, toSqlDate(recipe.getDate()));
-
-            int count1 = statement1.executeUpdate();
-            DBUtils.checkUpdatesCount(count1, recipe, true);
-
-            Long id = DBUtils.getId(statement1.getGeneratedKeys());
+            Long id = insertRecipeRow(statement1, recipe);
+            //TABLE RECIPE_INGREDIENT
+            Map<String, Long> ingredientIds = indexes.ingredientDictionary.resolve(connection, recipe.getIngredients());
+            statement2 = connection.prepareStatement(INSERT_RECIPE_INGREDIENT);
+            addIngredientsToBatch(statement2, id, recipe.getIngredients(), ingredientIds);
+            executeIngredientsBatch(statement2, recipe);
+            connection.commit();
+            cacheIngredientIds(ingredientIds);
             recipe.setId(id);
-            //TABLE INGREDIENTS
-            for (String element : recipe.getIngredients()) {
-                statement2 = connection.prepareStatement("INSERT INTO Ingredients (RECIPE_ID, name) VALUES (?,?)");
-                statement2.setLong(1, recipe.getId());
-                statement2.setString(2, element);
-                int count2 = statement2.executeUpdate();
-                DBUtils.checkUpdatesCount(count2, recipe, true);
-                connection.commit();
-            }
+            recipe.setVersion(0L);
+            recipe.markStored();
+            updateIngredientIndex(index -> index.add(id, recipe.getIngredients()));
+            String name = recipe.getName();
+            String procedure = recipe.getProcedure();
+            updateTextIndex(index -> index.add(id, name, procedure));
         } catch (SQLException ex) {
             String msg = "Error when inserting recipe into db";
             logger.log(Level.SEVERE, msg, ex);
@@ -105,6 +170,87 @@ public class RecipeManagerImpl implements RecipeManager {
     }
 
 
+    public void createRecipes(Collection<Recipe> recipes) throws ServiceFailureException {
+        checkDataSource();
+        if (recipes == null) {
+            throw new IllegalArgumentException("recipes is null");
+        }
+        for (Recipe recipe : recipes) {
+            validate(recipe);
+            if (recipe.getId() != null) {
+                throw new IllegalEntityException("recipe id is already set");
+            }
+        }
+        if (recipes.isEmpty()) {
+            return;
+        }
+        Connection connection = null;
+        PreparedStatement statement1 = null;
+        PreparedStatement statement2 = null;
+        List<Long> ids = new ArrayList<>(recipes.size());
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            connection.setAutoCommit(false);
+            statement1 = connection.prepareStatement(
+                    "INSERT INTO Recipe (NAME,RECIPE_PROCEDURE,DATE) VALUES (?,?,?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            Set<String> names = new HashSet<>();
+            for (Recipe recipe : recipes) {
+                names.addAll(recipe.getIngredients());
+            }
+            Map<String, Long> ingredientIds = indexes.ingredientDictionary.resolve(connection, names);
+            statement2 = connection.prepareStatement(INSERT_RECIPE_INGREDIENT);
+            int batched = 0;
+            for (Recipe recipe : recipes) {
+                // Derby does not return generated keys for batched inserts,
+                // so recipe rows go one by one, ingredient rows are batched
+                Long id = insertRecipeRow(statement1, recipe);
+                ids.add(id);
+                batched += addIngredientsToBatch(statement2, id, recipe.getIngredients(), ingredientIds);
+                if (batched >= BATCH_SIZE) {
+                    executeIngredientsBatch(statement2, recipe);
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                executeIngredientsBatch(statement2, recipes);
+            }
+            connection.commit();
+            cacheIngredientIds(ingredientIds);
+            Iterator<Long> id = ids.iterator();
+            for (Recipe recipe : recipes) {
+                recipe.setId(id.next());
+                recipe.setVersion(0L);
+                recipe.markStored();
+            }
+            updateIngredientIndex(index -> {
+                for (Recipe recipe : recipes) {
+                    index.add(recipe.getId(), recipe.getIngredients());
+                }
+            });
+            String[] recipeNames = new String[recipes.size()];
+            String[] procedures = new String[recipes.size()];
+            int r = 0;
+            for (Recipe recipe : recipes) {
+                recipeNames[r] = recipe.getName();
+                procedures[r++] = recipe.getProcedure();
+            }
+            updateTextIndex(index -> {
+                for (int t = 0; t < ids.size(); t++) {
+                    index.add(ids.get(t), recipeNames[t], procedures[t]);
+                }
+            });
+        } catch (SQLException ex) {
+            String msg = "Error when inserting recipes into db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection, statement1, statement2);
+        }
+    }
+
+
     public void updateRecipe(Recipe recipe) throws ServiceFailureException {
         checkDataSource();
         validate(recipe);
@@ -115,60 +261,137 @@ public class RecipeManagerImpl implements RecipeManager {
         Connection connection = null;
         PreparedStatement statement1 = null;
         PreparedStatement statement2 = null;
-        PreparedStatement statement3 = null;
-        PreparedStatement statement4 = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             connection.setAutoCommit(false);
+            // version is checked only when it is known
             statement1 = connection.prepareStatement(
-                    "UPDATE Recipe SET name = ?, RECIPE_PROCEDURE = ?, date  = ? WHERE id = ?");
+                    "UPDATE Recipe SET name = ?, RECIPE_PROCEDURE = ?, date  = ?, VERSION = VERSION + 1 WHERE id = ?"
+                            + (recipe.getVersion() == null ? "" : " AND VERSION = ?"));
             statement1.setString(1, recipe.getName());
             statement1.setString(2, recipe.getProcedure());
             statement1.setDate(3, toSqlDate(recipe.getDate()));
             statement1.setLong(4, recipe.getId());
-            int count1 = statement1.executeUpdate();
-            DBUtils.checkUpdatesCount(count1, recipe, false);
+            if (recipe.getVersion() != null) {
+                statement1.setLong(5, recipe.getVersion());
+            }
+            checkRecipeUpdated(connection, statement1.executeUpdate(), recipe);
+            statement2 = connection.prepareStatement(SELECT_RECIPE_INGREDIENTS);
+            statement2.setLong(1, recipe.getId());
+            Map<String, Long> existingIngredients = executeQueryForIngredientIds(statement2);
+
+            Set<String> addedIngredients = new HashSet<>(recipe.getIngredients());
+            addedIngredients.removeAll(existingIngredients.keySet());
+            Set<String> removedIngredients = new HashSet<>(existingIngredients.keySet());
+            removedIngredients.removeAll(recipe.getIngredients());
+
+            Map<String, Long> ingredientIds = insertIngredients(connection, recipe, addedIngredients);
+            existingIngredients.keySet().retainAll(removedIngredients);
+            deleteIngredients(connection, recipe, existingIngredients.values());
+            Long version = recipe.getVersion() == null ? readVersion(connection, recipe) : recipe.getVersion() + 1;
             connection.commit();
-            statement3 = connection.prepareStatement("SELECT name FROM INGREDIENTS WHERE RECIPE_ID= ? ");
-            statement3.setLong(1, recipe.getId());
-            Set<String> existingIngredients = executeQueryForIngredients(statement3);
+            invalidateRecipes(Collections.singleton(recipe.getId()));
+            cacheIngredientIds(ingredientIds);
+            recipe.setVersion(version);
+            recipe.markStored();
+            updateIngredientIndex(index -> {
+                index.add(recipe.getId(), addedIngredients);
+                index.remove(recipe.getId(), removedIngredients);
+            });
+            long id = recipe.getId();
+            String name = recipe.getName();
+            String procedure = recipe.getProcedure();
+            updateTextIndex(index -> index.add(id, name, procedure));
 
-            statement2 = connection.prepareStatement("INSERT INTO Ingredients (RECIPE_ID, name) VALUES (?,?)");
-            statement2.setLong(1, recipe.getId());
-            for (String element : recipe.getIngredients()) {
-                if (!existingIngredients.contains(element)) {
-                    statement2.setString(2, element);
-                    int count2 = statement2.executeUpdate();
-                    DBUtils.checkUpdatesCount(count2, recipe, true);
-                    connection.commit();
+        } catch (SQLException ex) {
+            String msg = "Error when updating recipe in the DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection, statement1, statement2);
+        }
+    }
+
+
+    public void updateRecipeChanges(Recipe recipe) throws ServiceFailureException {
+        checkDataSource();
+        validate(recipe);
+
+        if (recipe.getId() == null) {
+            throw new IllegalEntityException("recipe id is null");
+        }
+        if (recipe.getVersion() == null || recipe.getStoredIngredients() == null) {
+            throw new IllegalEntityException("recipe was not read from the db");
+        }
+        if (!recipe.isDirty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("UPDATE Recipe SET ");
+        for (Recipe.Field field : recipe.getDirtyFields()) {
+            sql.append(COLUMNS.get(field)).append(" = ?, ");
+        }
+        sql.append("VERSION = VERSION + 1 WHERE ID = ? AND VERSION = ?");
+
+        boolean textChanged = recipe.getDirtyFields().contains(Recipe.Field.NAME)
+                || recipe.getDirtyFields().contains(Recipe.Field.PROCEDURE);
+        Set<String> addedIngredients = new HashSet<>(recipe.getIngredients());
+        addedIngredients.removeAll(recipe.getStoredIngredients());
+        Set<String> removedIngredients = new HashSet<>(recipe.getStoredIngredients());
+        removedIngredients.removeAll(recipe.getIngredients());
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(sql.toString());
+            int index = 1;
+            for (Recipe.Field field : recipe.getDirtyFields()) {
+                switch (field) {
+                    case NAME:
+                        statement.setString(index++, recipe.getName());
+                        break;
+                    case PROCEDURE:
+                        statement.setString(index++, recipe.getProcedure());
+                        break;
+                    case DATE:
+                        statement.setDate(index++, toSqlDate(recipe.getDate()));
+                        break;
                 }
             }
-            statement4 = connection.prepareStatement("DELETE FROM INGREDIENTS where RECIPE_ID =? and name=?");
-            statement4.setLong(1, recipe.getId());
-            for (String element : existingIngredients) {
-                if (!recipe.getIngredients().contains(element)) {
-                    statement4.setString(2, element);
-                    int count4 = statement4.executeUpdate();
-                    DBUtils.checkUpdatesCount(count4, recipe, false);
-                    connection.commit();
-                }
+            statement.setLong(index++, recipe.getId());
+            statement.setLong(index, recipe.getVersion());
+            checkRecipeUpdated(connection, statement.executeUpdate(), recipe);
+            // stored ingredients are current, because version of the recipe matched
+            Map<String, Long> ingredientIds = insertIngredients(connection, recipe, addedIngredients);
+            if (!removedIngredients.isEmpty()) {
+                Map<String, Long> removedIds = indexes.ingredientDictionary.resolve(connection, removedIngredients);
+                ingredientIds.putAll(removedIds);
+                deleteIngredients(connection, recipe, removedIds.values());
+            }
+            connection.commit();
+            invalidateRecipes(Collections.singleton(recipe.getId()));
+            cacheIngredientIds(ingredientIds);
+            recipe.setVersion(recipe.getVersion() + 1);
+            recipe.markStored();
+            updateIngredientIndex(ingredientIndex -> {
+                ingredientIndex.add(recipe.getId(), addedIngredients);
+                ingredientIndex.remove(recipe.getId(), removedIngredients);
+            });
+            if (textChanged) {
+                long id = recipe.getId();
+                String name = recipe.getName();
+                String procedure = recipe.getProcedure();
+                updateTextIndex(textIndex -> textIndex.add(id, name, procedure));
             }
-
         } catch (SQLException ex) {
-            String msg = "Error when updating recipe in the DB";
+            String msg = "Error when updating changes of recipe in the DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
             DBUtils.doRollbackQuietly(connection);
-            if (statement3 != null && statement4 != null) {
-                DBUtils.closeQuietly(connection, statement1, statement2, statement3, statement4);
-            } else if (statement3 != null) {
-                DBUtils.closeQuietly(connection, statement1, statement2, statement3);
-            } else if (statement4 != null) {
-                DBUtils.closeQuietly(connection, statement1, statement2, statement4);
-            } else {
-                DBUtils.closeQuietly(connection, statement1, statement2);
-            }
+            DBUtils.closeQuietly(connection, statement);
         }
     }
 
@@ -182,42 +405,29 @@ public class RecipeManagerImpl implements RecipeManager {
             throw new IllegalEntityException("recipe id is null");
         }
         Connection connection = null;
-        PreparedStatement statement2 = null;
-        PreparedStatement existingID = null;
-
-        RCDependencyManagerImpl dependencyManager = new RCDependencyManagerImpl();
-        dependencyManager.setDataSource(dataSource);
+        PreparedStatement statement = null;
+        PreparedStatement ingredientsStatement = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             connection.setAutoCommit(false);
-            existingID = connection.prepareStatement(
-                    "SELECT NAME,RECIPE_PROCEDURE,DATE FROM Recipe WHERE id = ?");
-            existingID.setLong(1, recipe.getId());
-
-            if (executeQueryForSingleRecipe(existingID) == null) {
+            ingredientsStatement = connection.prepareStatement(SELECT_RECIPE_INGREDIENTS);
+            ingredientsStatement.setLong(1, recipe.getId());
+            Set<String> ingredients = executeQueryForIngredients(ingredientsStatement);
+            // ingredients and links to categories are deleted by cascade
+            statement = connection.prepareStatement(
+                    "DELETE FROM Recipe WHERE ID = ?");
+            statement.setLong(1, recipe.getId());
+            int count = statement.executeUpdate();
+            if (count == 0) {
                 throw new IllegalArgumentException("recipe id does not exist");
             }
-            List<Category> categories = dependencyManager.findCategoriesForRecipe(recipe);
-            for (Category element : categories) {
-                RCDependency dependency = new RCDependency();
-                dependency.setRecipe(recipe);
-                dependency.setCategory(element);
-                dependencyManager.deleteDependency(dependency);
-            }
-
-            /** statement1 = connection.prepareStatement(
-             "DELETE FROM Ingredients WHERE RECIPE_ID = ?");
-             statement1.setLong(1, recipe.getId());
-             //int count1 = statement1.executeUpdate();
-             //DBUtils.checkUpdatesCount(count1, recipe, false);
-             **/
-            statement2 = connection.prepareStatement(
-                    "DELETE FROM Recipe WHERE ID = ?");
-            statement2.setLong(1, recipe.getId());
-            int count2 = statement2.executeUpdate();
-            DBUtils.checkUpdatesCount(count2, recipe, false);
-
+            DBUtils.checkUpdatesCount(count, recipe, false);
             connection.commit();
+            invalidateRecipes(Collections.singleton(recipe.getId()));
+            removeCategoryLinks(Collections.singleton(recipe.getId()));
+            updateIngredientIndex(index -> index.remove(recipe.getId(), ingredients));
+            long id = recipe.getId();
+            updateTextIndex(index -> index.remove(id));
 
         } catch (SQLException ex) {
             String msg = "Error when deleting Recipe from the DB";
@@ -228,11 +438,66 @@ public class RecipeManagerImpl implements RecipeManager {
             throw new IllegalArgumentException(ex);
         } finally {
             DBUtils.doRollbackQuietly(connection);
-            if (statement2 != null) {
-                DBUtils.closeQuietly(connection, statement2, existingID);
-            } else {
-                DBUtils.closeQuietly(connection, existingID);
+            DBUtils.closeQuietly(connection, statement, ingredientsStatement);
+        }
+    }
+
+
+    public int deleteRecipes(Collection<Long> ids) throws ServiceFailureException {
+        checkDataSource();
+        if (ids == null) {
+            throw new IllegalArgumentException("ids is null");
+        }
+        if (ids.contains(null)) {
+            throw new IllegalArgumentException("ids contain null");
+        }
+        long[] sortedIds = ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        if (sortedIds.length == 0) {
+            return 0;
+        }
+        Connection connection = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            connection.setAutoCommit(false);
+            Map<Long, List<String>> ingredients = new HashMap<>();
+            int count = 0;
+            for (int from = 0; from < sortedIds.length; from += MAX_IN_LIST_SIZE) {
+                int to = Math.min(from + MAX_IN_LIST_SIZE, sortedIds.length);
+                String inList = "(" + DBUtils.placeholders(to - from) + ")";
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT ri.RECIPE_ID, i.NAME FROM RECIPE_INGREDIENT ri "
+                                + "JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID WHERE ri.RECIPE_ID IN " + inList)) {
+                    setIds(statement, sortedIds, from, to);
+                    ResultSet rs = statement.executeQuery();
+                    while (rs.next()) {
+                        ingredients.computeIfAbsent(rs.getLong("RECIPE_ID"), id -> new ArrayList<>())
+                                .add(rs.getString("NAME"));
+                    }
+                }
+                // ingredients and links to categories are deleted by cascade
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM Recipe WHERE ID IN " + inList)) {
+                    setIds(statement, sortedIds, from, to);
+                    count += statement.executeUpdate();
+                }
             }
+            connection.commit();
+            invalidateRecipes(new ArrayList<>(ids));
+            removeCategoryLinks(new ArrayList<>(ids));
+            updateIngredientIndex(index -> ingredients.forEach(index::remove));
+            updateTextIndex(index -> {
+                for (long id : sortedIds) {
+                    index.remove(id);
+                }
+            });
+            return count;
+        } catch (SQLException ex) {
+            String msg = "Error when deleting recipes from the DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection);
         }
     }
 
@@ -240,28 +505,125 @@ public class RecipeManagerImpl implements RecipeManager {
     public List<Recipe> findAllRecipes() {
         checkDataSource();
         Connection connection = null;
-        PreparedStatement statement1 = null;
-        PreparedStatement statement2 = null;
+        PreparedStatement statement = null;
         try {
-            connection = dataSource.getConnection();
-            statement1 = connection.prepareStatement(
-                    "SELECT ID, NAME, date, RECIPE_PROCEDURE  FROM Recipe");
-            List<Recipe> recipes = executeQueryForMultipleRecipes(statement1);
+            connection = TransactionContext.getConnection(dataSource);
+            statement = connection.prepareStatement(
+                    "SELECT r.ID, r.VERSION, r.NAME, r.DATE, r.RECIPE_PROCEDURE, i.NAME AS INGREDIENT FROM Recipe r "
+                            + JOIN_INGREDIENTS + "ORDER BY r.ID");
+            return executeQueryForRecipesWithIngredients(statement);
 
-            statement2 = connection.prepareStatement(
-                    "SELECT name FROM Ingredients WHERE RECIPE_ID = ?");
-            for (Recipe element : recipes) {
-                statement2.setLong(1, element.getId());
-                element.setIngredients(findIngredients(statement2));
+        } catch (SQLException ex) {
+            String msg = "Error when getting all recipes from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, statement);
+        }
+    }
+
+
+    public Stream<Recipe> streamAllRecipes() throws ServiceFailureException {
+        checkDataSource();
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            statement = connection.prepareStatement(
+                    "SELECT r.ID, r.VERSION, r.NAME, r.DATE, r.RECIPE_PROCEDURE, i.NAME AS INGREDIENT FROM Recipe r "
+                            + JOIN_INGREDIENTS + "ORDER BY r.ID",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            RecipeRowAssembler assembler = new RecipeRowAssembler(statement.executeQuery());
+            Connection streamConnection = connection;
+            PreparedStatement streamStatement = statement;
+            Stream<Recipe> stream = StreamSupport.stream(new RecipeSpliterator(assembler), false)
+                    .onClose(() -> DBUtils.closeQuietly(streamConnection, streamStatement));
+            // connection is closed together with the stream
+            connection = null;
+            statement = null;
+            return stream;
+        } catch (SQLException ex) {
+            String msg = "Error when streaming all recipes from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, statement);
+        }
+    }
+
+
+    public List<Recipe> findRecipes(Recipe after, int limit, RecipeSortKey sortKey) throws ServiceFailureException {
+        checkDataSource();
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit is not positive");
+        }
+        if (sortKey == null) {
+            throw new IllegalArgumentException("sortKey is null");
+        }
+        if (after != null && after.getId() == null) {
+            throw new IllegalEntityException("after id is null");
+        }
+        if (after != null && sortKey == RecipeSortKey.NAME && after.getName() == null) {
+            throw new IllegalEntityException("after name is null");
+        }
+        String seek;
+        if (after == null) {
+            seek = "";
+        } else if (sortKey == RecipeSortKey.ID) {
+            seek = "WHERE r.ID > ? ";
+        } else {
+            // seek past (NAME, ID) of the last recipe of the previous page, the first
+            // condition bounds the range scan of RECIPE_NAME_IDX
+            seek = "WHERE r.NAME >= ? AND (r.NAME > ? OR r.ID > ?) ";
+        }
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            statement = connection.prepareStatement(
+                    "SELECT r.ID, r.VERSION, r.NAME, r.DATE, r.RECIPE_PROCEDURE, i.NAME AS INGREDIENT FROM ("
+                            + "SELECT r.ID FROM Recipe r " + seek
+                            + "ORDER BY " + sortKey.getOrderBy() + " FETCH FIRST ? ROWS ONLY) p "
+                            + "JOIN Recipe r ON r.ID = p.ID " + JOIN_INGREDIENTS
+                            + "ORDER BY " + sortKey.getOrderBy());
+            int index = 1;
+            if (after != null && sortKey == RecipeSortKey.NAME) {
+                statement.setString(index++, after.getName());
+                statement.setString(index++, after.getName());
             }
-            return recipes;
+            if (after != null) {
+                statement.setLong(index++, after.getId());
+            }
+            statement.setInt(index, limit);
+            return executeQueryForRecipesWithIngredients(statement);
+        } catch (SQLException ex) {
+            String msg = "Error when getting page of recipes after id = "
+                    + (after == null ? null : after.getId()) + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, statement);
+        }
+    }
+
 
+    public long countRecipes() throws ServiceFailureException {
+        checkDataSource();
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            statement = connection.prepareStatement("SELECT COUNT(*) FROM Recipe");
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return rs.getLong(1);
         } catch (SQLException ex) {
-            String msg = "Error when getting all recipes from DB";
+            String msg = "Error when counting recipes in DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
-            DBUtils.closeQuietly(connection, statement1, statement2);
+            DBUtils.closeQuietly(connection, statement);
         }
     }
 
@@ -274,15 +636,25 @@ public class RecipeManagerImpl implements RecipeManager {
             throw new IllegalArgumentException("id is null");
         }
 
+        // within a transaction the cache is bypassed, the transaction may have changed the recipe
+        boolean cacheable = !TransactionContext.isActive(dataSource);
+        long token = 0;
+        if (cacheable) {
+            Recipe cached = recipeCache.get(id);
+            if (cached != null) {
+                return cached;
+            }
+            token = recipeCache.startLoad();
+        }
         Connection connection = null;
         PreparedStatement statement1 = null;
         PreparedStatement statement2 = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             statement1 = connection.prepareStatement(
-                    "SELECT NAME,RECIPE_PROCEDURE,DATE FROM Recipe WHERE ID = ?");
+                    "SELECT VERSION,NAME,RECIPE_PROCEDURE,DATE FROM Recipe WHERE ID = ?");
             statement1.setLong(1, id);
-            statement2 = connection.prepareStatement("SELECT name FROM Ingredients WHERE RECIPE_ID = ?");
+            statement2 = connection.prepareStatement(SELECT_RECIPE_INGREDIENTS);
             statement2.setLong(1, id);
             Recipe recipe = executeQueryForSingleRecipe(statement1);
             if (recipe == null) {
@@ -291,6 +663,10 @@ public class RecipeManagerImpl implements RecipeManager {
             }
             recipe.setIngredients(findIngredients(statement2));
             recipe.setId(id);
+            recipe.markStored();
+            if (cacheable) {
+                recipeCache.put(token, recipe);
+            }
             return recipe;
         } catch (SQLException | NullPointerException ex) {
             String msg = "Error when getting recipe with id = " + id + " from DB";
@@ -313,20 +689,20 @@ public class RecipeManagerImpl implements RecipeManager {
         PreparedStatement statement1 = null;
         PreparedStatement statement2 = null;
         try {
-            connection = dataSource.getConnection();
+            connection = TransactionContext.getConnection(dataSource);
             statement1 = connection.prepareStatement(
-                    "SELECT id, name, RECIPE_PROCEDURE, date FROM Recipe WHERE name = ?"); // do not know how to transfer it for substring %substr%
+                    "SELECT id, version, name, RECIPE_PROCEDURE, date FROM Recipe WHERE name = ?"); // do not know how to transfer it for substring %substr%
             statement1.setString(1, nameToFind);
             List<Recipe> recipes = executeQueryForMultipleRecipes(statement1);
             if (recipes.size() == 0) {
                 return recipes;
             }
 
-            statement2 = connection.prepareStatement(
-                    "SELECT name FROM Ingredients WHERE id = ?");
+            statement2 = connection.prepareStatement(SELECT_RECIPE_INGREDIENTS);
             for (Recipe element : recipes) {
                 statement2.setLong(1, element.getId());
                 element.setIngredients(findIngredients(statement2));
+                element.markStored();
             }
             return recipes;
 
@@ -345,46 +721,188 @@ public class RecipeManagerImpl implements RecipeManager {
 
 
     public List<Recipe> findRecipeByIngredients(Set<String> ingredients) throws ServiceFailureException {
+        return findRecipeByIngredients(ingredients, IngredientMatch.EXACT);
+    }
+
+
+    public List<Recipe> findRecipeByIngredients(Set<String> ingredients, IngredientMatch match)
+            throws ServiceFailureException {
         checkDataSource();
 
         if (ingredients == null || ingredients.isEmpty()) {
             throw new IllegalArgumentException("No ingredients");
         }
+        if (match == null) {
+            throw new IllegalArgumentException("match is null");
+        }
+
+        IngredientIndex index = getIngredientIndex();
+        long[] ids = match == IngredientMatch.EXACT
+                ? index.findContainingAll(ingredients)
+                : index.findContainingAllSimilar(ingredients);
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Connection connection = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            return findRecipesByIds(connection, ids);
+        } catch (SQLException ex) {
+            String msg = "Error when getting recipes with ingredients from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection);
+        }
+    }
+
+    public List<String> suggestIngredients(String prefix, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix is null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return getIngredientIndex().suggest(prefix, limit);
+    }
 
+    /**
+     * Loads ingredient index from the database, replacing the current one shared by
+     * managers of the data source. Index is otherwise loaded on the first search by
+     * ingredients.
+     *
+     * @throws ServiceFailureException when loading fails
+     */
+    public void loadIngredientIndex() throws ServiceFailureException {
+        checkDataSource();
+        indexes.ingredients.reload(this::readIngredientIndex);
+    }
+
+    private IngredientIndex readIngredientIndex() throws ServiceFailureException {
         Connection connection = null;
         PreparedStatement statement = null;
         try {
-            connection = dataSource.getConnection();
-            Set<Long> containingAllIngredients = new TreeSet<>();
-            String[] arrayOfIngredients = ingredients.toArray(new String[ingredients.size()]);
+            connection = TransactionContext.getConnection(dataSource);
             statement = connection.prepareStatement(
-                    "SELECT RECIPE_ID FROM Ingredients WHERE NAME = ?");
-            statement.setString(1, arrayOfIngredients[0]);
-            ResultSet rs1 = statement.executeQuery();
-            while (rs1.next()) {
-                containingAllIngredients.add(rs1.getLong("RECIPE_ID"));
-            }
-
-            for (int i = 1; i < arrayOfIngredients.length; i++) {
-                Set<Long> set = new TreeSet<>();
-                statement.setString(1, arrayOfIngredients[i]);
-                ResultSet rs = statement.executeQuery();
-                while (rs.next()) {
-                    set.add(rs.getLong("RECIPE_ID"));
+                    "SELECT ri.RECIPE_ID, i.NAME FROM RECIPE_INGREDIENT ri "
+                            + "JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID ORDER BY ri.RECIPE_ID");
+            ResultSet rs = statement.executeQuery();
+            IngredientIndex index = new IngredientIndex();
+            List<String> names = new ArrayList<>();
+            long recipeId = 0;
+            while (rs.next()) {
+                long id = rs.getLong("RECIPE_ID");
+                if (id != recipeId && !names.isEmpty()) {
+                    index.add(recipeId, names);
+                    names.clear();
                 }
-                containingAllIngredients.retainAll(set);
-                if (containingAllIngredients.isEmpty()) {
-                    List<Recipe> empty = new ArrayList<>();
-                    return empty;
+                recipeId = id;
+                names.add(rs.getString("NAME"));
+            }
+            index.add(recipeId, names);
+            return index;
+        } catch (SQLException ex) {
+            String msg = "Error when loading ingredient index from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, statement);
+        }
+    }
+
+    private IngredientIndex getIngredientIndex() {
+        IngredientIndex index = indexes.ingredients.getLoaded();
+        if (index == null) {
+            if (TransactionContext.isActive(dataSource)) {
+                // index read within a transaction may contain its uncommitted changes,
+                // so it is used only for this search
+                return readIngredientIndex();
+            }
+            index = indexes.ingredients.get(this::readIngredientIndex);
+        }
+        return index;
+    }
+
+    /**
+     * Applies change of ingredients to the index, if it is already loaded, once the
+     * change is committed. Changes wait for index loading to finish, index operations
+     * are idempotent.
+     *
+     * @param update change of the index
+     */
+    private void updateIngredientIndex(Consumer<IngredientIndex> update) {
+        RecipeIndexes.LazyIndex<IngredientIndex> index = indexes.ingredients;
+        TransactionContext.afterCommit(dataSource, () -> index.update(update));
+    }
+
+    public List<Recipe> searchRecipes(String query, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (query == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+
+        long[] ranked = getTextIndex().search(query, limit);
+        if (ranked.length == 0) {
+            return new ArrayList<>();
+        }
+        long[] ids = ranked.clone();
+        Arrays.sort(ids);
+        Connection connection = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            Map<Long, Recipe> recipes = new HashMap<>();
+            for (Recipe recipe : findRecipesByIds(connection, ids)) {
+                recipes.put(recipe.getId(), recipe);
+            }
+            List<Recipe> result = new ArrayList<>(ranked.length);
+            for (long id : ranked) {
+                Recipe recipe = recipes.get(id);
+                // recipe deleted after the index was searched
+                if (recipe != null) {
+                    result.add(recipe);
                 }
             }
-            List<Recipe> recipes = new ArrayList<>();
-            for (Long id : containingAllIngredients) {
-                recipes.add(findRecipeById(id));
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when searching recipes for " + query;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Loads full-text index of names and procedures from the database, replacing
+     * the current one shared by managers of the data source. Index is otherwise
+     * loaded on the first full-text search.
+     *
+     * @throws ServiceFailureException when loading fails
+     */
+    public void loadTextIndex() throws ServiceFailureException {
+        checkDataSource();
+        indexes.text.reload(this::readTextIndex);
+    }
+
+    private TextIndex readTextIndex() throws ServiceFailureException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = TransactionContext.getConnection(dataSource);
+            statement = connection.prepareStatement("SELECT ID, NAME, RECIPE_PROCEDURE FROM Recipe");
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            ResultSet rs = statement.executeQuery();
+            TextIndex index = new TextIndex();
+            while (rs.next()) {
+                index.add(rs.getLong("ID"), rs.getString("NAME"), rs.getString("RECIPE_PROCEDURE"));
             }
-            return recipes;
+            return index;
         } catch (SQLException ex) {
-            String msg = "Error when getting ingredients from DB";
+            String msg = "Error when loading full-text index from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
@@ -392,6 +910,45 @@ public class RecipeManagerImpl implements RecipeManager {
         }
     }
 
+    private TextIndex getTextIndex() {
+        TextIndex index = indexes.text.getLoaded();
+        if (index == null) {
+            if (TransactionContext.isActive(dataSource)) {
+                // index read within a transaction may contain its uncommitted changes,
+                // so it is used only for this search
+                return readTextIndex();
+            }
+            index = indexes.text.get(this::readTextIndex);
+        }
+        return index;
+    }
+
+    /**
+     * Applies change of names or procedures to the full-text index, if it is already
+     * loaded, once the change is committed
+     *
+     * @param update change of the index
+     */
+    private void updateTextIndex(Consumer<TextIndex> update) {
+        RecipeIndexes.LazyIndex<TextIndex> index = indexes.text;
+        TransactionContext.afterCommit(dataSource, () -> index.update(update));
+    }
+
+    private void invalidateRecipes(Collection<Long> ids) {
+        RecipeCache cache = recipeCache;
+        TransactionContext.afterCommit(dataSource, () -> cache.invalidate(ids));
+    }
+
+    private void removeCategoryLinks(Collection<Long> ids) {
+        CategoryIndex index = categoryIndex;
+        TransactionContext.afterCommit(dataSource, () -> index.removeRecipes(ids));
+    }
+
+    private void cacheIngredientIds(Map<String, Long> ingredientIds) {
+        IngredientDictionary dictionary = indexes.ingredientDictionary;
+        TransactionContext.afterCommit(dataSource, () -> dictionary.cacheAll(ingredientIds));
+    }
+
     //--------------------------------------------------------------------------
     // Other helpful functions
     //--------------------------------------------------------------------------
@@ -406,6 +963,260 @@ public class RecipeManagerImpl implements RecipeManager {
         return localDate == null ? null : Date.valueOf(localDate);
     }
 
+    /**
+     * Spliterator reading recipes from assembler, used in streamAllRecipes
+     */
+    private static class RecipeSpliterator extends Spliterators.AbstractSpliterator<Recipe> {
+
+        private final RecipeRowAssembler assembler;
+
+        RecipeSpliterator(RecipeRowAssembler assembler) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL);
+            this.assembler = assembler;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Recipe> action) {
+            Recipe recipe;
+            try {
+                recipe = assembler.next();
+            } catch (SQLException ex) {
+                String msg = "Error when reading next recipe from DB";
+                logger.log(Level.SEVERE, msg, ex);
+                throw new ServiceFailureException(msg, ex);
+            }
+            if (recipe == null) {
+                return false;
+            }
+            action.accept(recipe);
+            return true;
+        }
+    }
+
+    /**
+     * Used in createRecipe and createRecipes to insert single row into table RECIPE
+     *
+     * @param statement insert statement prepared with generated keys
+     * @param recipe recipe to be inserted
+     * @return generated id of the recipe
+     * @throws SQLException
+     */
+    private static Long insertRecipeRow(PreparedStatement statement, Recipe recipe) throws SQLException {
+        statement.setString(1, recipe.getName());
+        statement.setString(2, recipe.getProcedure());
+        statement.setDate(3, toSqlDate(recipe.getDate()));
+        int count = statement.executeUpdate();
+        DBUtils.checkUpdatesCount(count, recipe, true);
+        return DBUtils.getId(statement.getGeneratedKeys());
+    }
+
+    /**
+     * Adds insert of each ingredient into batch of given statement
+     *
+     * @param statement insert statement for table RECIPE_INGREDIENT
+     * @param recipeId id of the recipe owning ingredients
+     * @param ingredients ingredients to be inserted
+     * @param ingredientIds ids of the ingredients from the dictionary
+     * @return number of rows added to the batch
+     * @throws SQLException
+     */
+    private static int addIngredientsToBatch(PreparedStatement statement, Long recipeId,
+                                             Collection<String> ingredients,
+                                             Map<String, Long> ingredientIds) throws SQLException {
+        for (String element : ingredients) {
+            statement.setLong(1, recipeId);
+            statement.setLong(2, ingredientIds.get(element));
+            statement.addBatch();
+        }
+        return ingredients.size();
+    }
+
+    /**
+     * Executes batch of inserts and checks that each of them inserted one row
+     *
+     * @param statement statement with batch
+     * @param entity inserted entity (for including to error message)
+     * @throws SQLException
+     */
+    private static void executeIngredientsBatch(PreparedStatement statement, Object entity) throws SQLException {
+        for (int count : statement.executeBatch()) {
+            if (count != Statement.SUCCESS_NO_INFO) {
+                DBUtils.checkUpdatesCount(count, entity, true);
+            }
+        }
+    }
+
+    /**
+     * Used in updateRecipe and updateRecipeChanges to insert new ingredients of the recipe in one batch
+     *
+     * @param connection connection with running transaction
+     * @param recipe updated recipe
+     * @param ingredients ingredients to be inserted
+     * @return ids of the inserted ingredients, to be cached after commit
+     * @throws SQLException
+     */
+    private Map<String, Long> insertIngredients(Connection connection, Recipe recipe,
+                                                Set<String> ingredients) throws SQLException {
+        if (ingredients.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<String, Long> ingredientIds = indexes.ingredientDictionary.resolve(connection, ingredients);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_RECIPE_INGREDIENT)) {
+            addIngredientsToBatch(statement, recipe.getId(), ingredients, ingredientIds);
+            executeIngredientsBatch(statement, recipe);
+        }
+        return ingredientIds;
+    }
+
+    /**
+     * Used in updateRecipe and updateRecipeChanges to delete removed ingredients of the recipe in one batch
+     *
+     * @param connection connection with running transaction
+     * @param recipe updated recipe
+     * @param ingredientIds ids of ingredients to be deleted
+     * @throws SQLException
+     */
+    private static void deleteIngredients(Connection connection, Recipe recipe,
+                                          Collection<Long> ingredientIds) throws SQLException {
+        if (ingredientIds.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM RECIPE_INGREDIENT WHERE RECIPE_ID = ? AND INGREDIENT_ID = ?")) {
+            for (Long ingredientId : ingredientIds) {
+                statement.setLong(1, recipe.getId());
+                statement.setLong(2, ingredientId);
+                statement.addBatch();
+            }
+            for (int count : statement.executeBatch()) {
+                if (count != Statement.SUCCESS_NO_INFO) {
+                    DBUtils.checkUpdatesCount(count, recipe, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks result of version guarded update of a recipe row. When no row was updated,
+     * it distinguishes missing recipe from concurrent modification.
+     *
+     * @param connection connection with running transaction
+     * @param count updates count
+     * @param recipe updated recipe
+     * @throws SQLException
+     * @throws OptimisticLockException when the recipe was modified since it has been read
+     */
+    private static void checkRecipeUpdated(Connection connection, int count, Recipe recipe)
+            throws SQLException, OptimisticLockException {
+        if (count == 0 && recipe.getVersion() != null) {
+            Long version = readVersion(connection, recipe);
+            if (version != null) {
+                throw new OptimisticLockException("Recipe " + recipe.getId() + " was modified, version "
+                        + recipe.getVersion() + " is stale, current version is " + version);
+            }
+        }
+        DBUtils.checkUpdatesCount(count, recipe, false);
+    }
+
+    /**
+     * @return current version of the recipe in the database, null if it does not exist
+     */
+    private static Long readVersion(Connection connection, Recipe recipe) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT VERSION FROM Recipe WHERE ID = ?")) {
+            statement.setLong(1, recipe.getId());
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    /**
+     * Binds ids from the given range of the array as parameters of the statement
+     */
+    private static void setIds(PreparedStatement statement, long[] ids, int from, int to) throws SQLException {
+        for (int i = from; i < to; i++) {
+            statement.setLong(i - from + 1, ids[i]);
+        }
+    }
+
+    /**
+     * Loads recipes whose ids are selected by the given query together with their
+     * ingredients. Recipes and ingredients are read by two statements, joining them
+     * multiplies rows and Derby executes such joins several times slower.
+     *
+     * @param connection connection to be used
+     * @param idQuery query selecting one column with recipe ids
+     * @param parameters parameters of the query
+     * @return found recipes ordered by id
+     * @throws SQLException
+     */
+    static List<Recipe> findRecipesByQuery(Connection connection, String idQuery, long... parameters)
+            throws SQLException {
+        Map<Long, Recipe> recipes = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT ID, VERSION, NAME, DATE, RECIPE_PROCEDURE FROM Recipe WHERE ID IN ("
+                        + idQuery + ") ORDER BY ID")) {
+            setIds(statement, parameters, 0, parameters.length);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                Recipe recipe = rowToRecipe(rs);
+                recipe.setId(rs.getLong("ID"));
+                recipe.setIngredients(new HashSet<>());
+                recipes.put(recipe.getId(), recipe);
+            }
+        }
+        if (recipes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT ri.RECIPE_ID, i.NAME FROM RECIPE_INGREDIENT ri JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID "
+                        + "WHERE ri.RECIPE_ID IN (" + idQuery + ")")) {
+            setIds(statement, parameters, 0, parameters.length);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                Recipe recipe = recipes.get(rs.getLong("RECIPE_ID"));
+                // recipe selected after the first statement was executed
+                if (recipe != null) {
+                    recipe.getIngredients().add(rs.getString("NAME"));
+                }
+            }
+        }
+        for (Recipe recipe : recipes.values()) {
+            recipe.markStored();
+        }
+        return new ArrayList<>(recipes.values());
+    }
+
+    /**
+     * Loads recipes with given ids together with their ingredients, ids are bound
+     * into IN lists of at most MAX_IN_LIST_SIZE elements
+     *
+     * @param connection connection to be used
+     * @param ids ids of recipes
+     * @return found recipes ordered by id within each IN list
+     * @throws SQLException
+     */
+    private static List<Recipe> findRecipesByIds(Connection connection, long[] ids) throws SQLException {
+        List<Recipe> recipes = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += MAX_IN_LIST_SIZE) {
+            int to = Math.min(from + MAX_IN_LIST_SIZE, ids.length);
+            PreparedStatement statement = null;
+            try {
+                statement = connection.prepareStatement(
+                        "SELECT r.ID, r.VERSION, r.NAME, r.DATE, r.RECIPE_PROCEDURE, i.NAME AS INGREDIENT FROM Recipe r "
+                                + JOIN_INGREDIENTS + "WHERE r.ID IN ("
+                                + DBUtils.placeholders(to - from) + ") ORDER BY r.ID");
+                setIds(statement, ids, from, to);
+                recipes.addAll(executeQueryForRecipesWithIngredients(statement));
+            } finally {
+                if (statement != null) {
+                    statement.close();
+                }
+            }
+        }
+        return recipes;
+    }
+
     static Recipe executeQueryForSingleRecipe(PreparedStatement st) throws SQLException, ServiceFailureException {
         ResultSet rs = st.executeQuery();
         if (rs.next()) {
@@ -436,6 +1247,33 @@ public class RecipeManagerImpl implements RecipeManager {
         return result;
     }
 
+    /**
+     * Used in findAllRecipes, findRecipes and findRecipesByIds, statement has to join recipes with their ingredients
+     * ordered by recipe id (see {@link RecipeRowAssembler})
+     *
+     * @param statement SQL statement
+     * @return Recipes with ingredients from DB which satisfy condition in SQL statement
+     * @throws SQLException
+     */
+    static List<Recipe> executeQueryForRecipesWithIngredients(PreparedStatement statement) throws SQLException {
+        RecipeRowAssembler assembler = new RecipeRowAssembler(statement.executeQuery());
+        List<Recipe> result = new ArrayList<>();
+        Recipe recipe;
+        while ((recipe = assembler.next()) != null) {
+            result.add(recipe);
+        }
+        return result;
+    }
+
+    static Map<String, Long> executeQueryForIngredientIds(PreparedStatement statement) throws SQLException {
+        ResultSet rs = statement.executeQuery();
+        Map<String, Long> result = new HashMap<>();
+        while (rs.next()) {
+            result.put(rs.getString("NAME"), rs.getLong("ID"));
+        }
+        return result;
+    }
+
     static Set<String> executeQueryForIngredients(PreparedStatement statement) throws SQLException {
         ResultSet rs = statement.executeQuery();
         Set<String> result = new HashSet<>();
@@ -452,8 +1290,9 @@ public class RecipeManagerImpl implements RecipeManager {
      * @return object recipe with set parameters
      * @throws SQLException
      */
-    static private Recipe rowToRecipe(ResultSet rs) throws SQLException {
+    static Recipe rowToRecipe(ResultSet rs) throws SQLException {
         Recipe result = new Recipe();
+        result.setVersion(rs.getLong("VERSION"));
         result.setName(rs.getString("NAME"));
         result.setProcedure(rs.getString("RECIPE_PROCEDURE"));
         result.setDate(toLocalDate(rs.getDate("DATE")));
@@ -463,6 +1302,7 @@ public class RecipeManagerImpl implements RecipeManager {
     static private Recipe rowToMultipleRecipes(ResultSet rs) throws SQLException {
         Recipe result = new Recipe();
         result.setId(rs.getLong("ID"));
+        result.setVersion(rs.getLong("VERSION"));
         result.setName(rs.getString("NAME"));
         result.setProcedure(rs.getString("RECIPE_PROCEDURE"));
         result.setDate(toLocalDate(rs.getDate("DATE")));
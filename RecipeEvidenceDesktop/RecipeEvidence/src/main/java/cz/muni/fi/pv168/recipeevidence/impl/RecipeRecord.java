@@ -0,0 +1,25 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.util.Set;
+
+/**
+ * Recipe with names of its categories, as stored in import and export files
+ */
+public class RecipeRecord {
+
+    private final Recipe recipe;
+    private final Set<String> categories;
+
+    public RecipeRecord(Recipe recipe, Set<String> categories) {
+        this.recipe = recipe;
+        this.categories = categories;
+    }
+
+    public Recipe getRecipe() {
+        return recipe;
+    }
+
+    public Set<String> getCategories() {
+        return categories;
+    }
+}
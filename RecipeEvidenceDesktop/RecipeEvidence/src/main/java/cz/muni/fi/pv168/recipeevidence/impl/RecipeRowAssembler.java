@@ -0,0 +1,55 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Assembles recipes from a result set joining table RECIPE with names of their ingredients.
+ * Rows have to be ordered by recipe id, every row carries recipe columns ID, VERSION,
+ * NAME, RECIPE_PROCEDURE, DATE and one ingredient in column INGREDIENT (null when the recipe
+ * has no ingredients). Only rows of the recipe being assembled are read at a time.
+ */
+class RecipeRowAssembler {
+
+    private final ResultSet rs;
+    private boolean hasRow;
+
+    RecipeRowAssembler(ResultSet rs) throws SQLException {
+        this.rs = rs;
+        this.hasRow = rs.next();
+    }
+
+    /**
+     * Reads all rows of the next recipe
+     *
+     * @return next recipe or null if there are no more rows
+     * @throws SQLException
+     */
+    Recipe next() throws SQLException {
+        if (!hasRow) {
+            return null;
+        }
+        Recipe recipe = new Recipe();
+        long id = rs.getLong("ID");
+        recipe.setId(id);
+        recipe.setVersion(rs.getLong("VERSION"));
+        recipe.setName(rs.getString("NAME"));
+        recipe.setProcedure(rs.getString("RECIPE_PROCEDURE"));
+        Date date = rs.getDate("DATE");
+        recipe.setDate(date == null ? null : date.toLocalDate());
+        Set<String> ingredients = new HashSet<>();
+        do {
+            String ingredient = rs.getString("INGREDIENT");
+            if (ingredient != null) {
+                ingredients.add(ingredient);
+            }
+            hasRow = rs.next();
+        } while (hasRow && rs.getLong("ID") == id);
+        recipe.setIngredients(ingredients);
+        recipe.markStored();
+        return recipe;
+    }
+}
@@ -0,0 +1,340 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Read-only view of all recipes saved in a snapshot file by
+ * {@link RecipeSnapshotManager#writeSnapshot(Path)}. The file is mapped into
+ * memory and values are decoded only when they are read. Opening a snapshot only
+ * checks that all offsets and indexes stored in the file point inside it.
+ *
+ * A mapped file cannot be replaced on some systems, so each snapshot is written
+ * to a new file named after the snapshot file with a generation number appended,
+ * {@code recipes.snapshot.1}, {@code recipes.snapshot.2} and so on. Readers open
+ * the newest generation.
+ *
+ * The file starts with a header followed by a table of strings and arrays of
+ * fixed-width entries, numbers are big-endian:
+ * <pre>
+ * header            magic, format version, creation time, number of entries
+ *                   of the five arrays, size of the string table
+ * strings           length in bytes and UTF-8 bytes of every string
+ * recipes           id, version, offset of name, offset of procedure, epoch day
+ *                   of date, index of first ingredient link, index of first category link
+ * ingredients       offset of name
+ * categories        id, offset of name
+ * ingredient links  index of ingredient
+ * category links    index of category
+ * </pre>
+ * Recipes are ordered by id, categories by id and category links of a recipe
+ * by index. Links of a recipe end where links of the next recipe start.
+ */
+public class RecipeSnapshot {
+
+    static final int MAGIC = 0x52455350;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int RECIPE_SIZE = 36;
+    static final int INGREDIENT_SIZE = 4;
+    static final int CATEGORY_SIZE = 12;
+    static final int LINK_SIZE = 4;
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final ByteBuffer buffer;
+    private final Instant created;
+    private final int recipeCount;
+    private final int ingredientCount;
+    private final int categoryCount;
+    private final int ingredientLinkCount;
+    private final int categoryLinkCount;
+    private final int recipesStart;
+    private final int ingredientsStart;
+    private final int categoriesStart;
+    private final int ingredientLinksStart;
+    private final int categoryLinksStart;
+    private final int stringsSize;
+
+    private RecipeSnapshot(ByteBuffer buffer, int recipeCount, int ingredientCount, int categoryCount,
+                           int ingredientLinkCount, int categoryLinkCount, int stringsSize) {
+        this.buffer = buffer;
+        this.created = Instant.ofEpochMilli(buffer.getLong(8));
+        this.recipeCount = recipeCount;
+        this.ingredientCount = ingredientCount;
+        this.categoryCount = categoryCount;
+        this.ingredientLinkCount = ingredientLinkCount;
+        this.categoryLinkCount = categoryLinkCount;
+        this.recipesStart = HEADER_SIZE + stringsSize;
+        this.ingredientsStart = recipesStart + recipeCount * RECIPE_SIZE;
+        this.categoriesStart = ingredientsStart + ingredientCount * INGREDIENT_SIZE;
+        this.ingredientLinksStart = categoriesStart + categoryCount * CATEGORY_SIZE;
+        this.categoryLinksStart = ingredientLinksStart + ingredientLinkCount * LINK_SIZE;
+        this.stringsSize = stringsSize;
+    }
+
+    /**
+     * Maps the newest generation of the snapshot file into memory
+     *
+     * @param file snapshot file
+     * @return snapshot
+     * @throws NoSuchFileException when no snapshot has been written to the file
+     * @throws IOException when the file cannot be read or is not a valid snapshot
+     */
+    public static RecipeSnapshot open(Path file) throws IOException {
+        Path current = currentFile(file);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(current, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid size of recipe snapshot " + current);
+            }
+            // mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("File " + current + " is not a recipe snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported version " + buffer.getInt(4) + " of recipe snapshot " + current);
+        }
+        int recipeCount = buffer.getInt(16);
+        int ingredientCount = buffer.getInt(20);
+        int categoryCount = buffer.getInt(24);
+        int ingredientLinkCount = buffer.getInt(28);
+        int categoryLinkCount = buffer.getInt(32);
+        int stringsSize = buffer.getInt(36);
+        long expectedSize = (long) HEADER_SIZE + stringsSize + (long) recipeCount * RECIPE_SIZE
+                + (long) ingredientCount * INGREDIENT_SIZE + (long) categoryCount * CATEGORY_SIZE
+                + ((long) ingredientLinkCount + categoryLinkCount) * LINK_SIZE;
+        if (Math.min(Math.min(Math.min(recipeCount, ingredientCount), Math.min(categoryCount, stringsSize)),
+                Math.min(ingredientLinkCount, categoryLinkCount)) < 0 || expectedSize != buffer.capacity()) {
+            throw new IOException("Recipe snapshot " + current + " is corrupted");
+        }
+        RecipeSnapshot snapshot = new RecipeSnapshot(buffer, recipeCount, ingredientCount, categoryCount,
+                ingredientLinkCount, categoryLinkCount, stringsSize);
+        if (!snapshot.isConsistent()) {
+            throw new IOException("Recipe snapshot " + current + " is corrupted");
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param file snapshot file
+     * @return the newest generation of the file
+     * @throws NoSuchFileException when there is no generation
+     */
+    static Path currentFile(Path file) throws IOException {
+        TreeMap<Long, Path> generations = generations(file);
+        if (generations.isEmpty()) {
+            throw new NoSuchFileException(file.toString());
+        }
+        return generations.lastEntry().getValue();
+    }
+
+    /**
+     * @param file snapshot file
+     * @return existing generations of the file by their numbers
+     */
+    static TreeMap<Long, Path> generations(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        TreeMap<Long, Path> generations = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return generations;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                path -> path.getFileName().toString().startsWith(prefix))) {
+            for (Path path : files) {
+                String suffix = path.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.length() < 19 && suffix.chars().allMatch(Character::isDigit)) {
+                    generations.put(Long.parseLong(suffix), path);
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Checks every offset and index stored in the arrays, so that no read of
+     * a damaged file goes out of the buffer
+     */
+    private boolean isConsistent() {
+        int previousIngredientLink = 0;
+        int previousCategoryLink = 0;
+        for (int index = 0; index < recipeCount; index++) {
+            int position = recipesStart + index * RECIPE_SIZE;
+            int ingredientLink = buffer.getInt(position + 28);
+            int categoryLink = buffer.getInt(position + 32);
+            if (!isString(buffer.getInt(position + 16)) || !isString(buffer.getInt(position + 20))
+                    || ingredientLink < previousIngredientLink || ingredientLink > ingredientLinkCount
+                    || categoryLink < previousCategoryLink || categoryLink > categoryLinkCount) {
+                return false;
+            }
+            previousIngredientLink = ingredientLink;
+            previousCategoryLink = categoryLink;
+        }
+        for (int index = 0; index < ingredientCount; index++) {
+            if (!isString(buffer.getInt(ingredientsStart + index * INGREDIENT_SIZE))) {
+                return false;
+            }
+        }
+        for (int index = 0; index < categoryCount; index++) {
+            if (!isString(buffer.getInt(categoriesStart + index * CATEGORY_SIZE + 8))) {
+                return false;
+            }
+        }
+        for (int link = 0; link < ingredientLinkCount; link++) {
+            int ingredient = buffer.getInt(ingredientLinksStart + link * LINK_SIZE);
+            if (ingredient < 0 || ingredient >= ingredientCount) {
+                return false;
+            }
+        }
+        for (int link = 0; link < categoryLinkCount; link++) {
+            int category = buffer.getInt(categoryLinksStart + link * LINK_SIZE);
+            if (category < 0 || category >= categoryCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isString(int offset) {
+        if (offset < 0 || offset > stringsSize - 4) {
+            return false;
+        }
+        int length = buffer.getInt(HEADER_SIZE + offset);
+        return length >= 0 && (long) offset + 4 + length <= stringsSize;
+    }
+
+    /**
+     * @return time when the snapshot was written
+     */
+    public Instant getCreated() {
+        return created;
+    }
+
+    /**
+     * @return number of recipes
+     */
+    public int size() {
+        return recipeCount;
+    }
+
+    public long getId(int index) {
+        return buffer.getLong(recipe(index));
+    }
+
+    public long getVersion(int index) {
+        return buffer.getLong(recipe(index) + 8);
+    }
+
+    public String getName(int index) {
+        return string(buffer.getInt(recipe(index) + 16));
+    }
+
+    public String getProcedure(int index) {
+        return string(buffer.getInt(recipe(index) + 20));
+    }
+
+    public LocalDate getDate(int index) {
+        int epochDay = buffer.getInt(recipe(index) + 24);
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * @param index index of the recipe
+     * @return names of ingredients ordered by name
+     */
+    public Set<String> getIngredients(int index) {
+        int position = recipe(index);
+        int from = buffer.getInt(position + 28);
+        int to = index + 1 < recipeCount ? buffer.getInt(position + RECIPE_SIZE + 28) : ingredientLinkCount;
+        Set<String> ingredients = new LinkedHashSet<>();
+        for (int link = from; link < to; link++) {
+            int ingredient = buffer.getInt(ingredientLinksStart + link * LINK_SIZE);
+            ingredients.add(string(buffer.getInt(ingredientsStart + ingredient * INGREDIENT_SIZE)));
+        }
+        return ingredients;
+    }
+
+    /**
+     * @param index index of the recipe
+     * @return categories of the recipe ordered by id
+     */
+    public List<Category> getCategories(int index) {
+        int position = recipe(index);
+        int from = buffer.getInt(position + 32);
+        int to = index + 1 < recipeCount ? buffer.getInt(position + RECIPE_SIZE + 32) : categoryLinkCount;
+        List<Category> categories = new ArrayList<>(to - from);
+        for (int link = from; link < to; link++) {
+            categories.add(getCategory(buffer.getInt(categoryLinksStart + link * LINK_SIZE)));
+        }
+        return categories;
+    }
+
+    /**
+     * @param index index of the recipe
+     * @return recipe as if it was read from the database when the snapshot was written
+     */
+    public Recipe getRecipe(int index) {
+        Recipe recipe = new Recipe();
+        recipe.setId(getId(index));
+        recipe.setVersion(getVersion(index));
+        recipe.setName(getName(index));
+        recipe.setProcedure(getProcedure(index));
+        recipe.setDate(getDate(index));
+        recipe.setIngredients(getIngredients(index));
+        recipe.markStored();
+        return recipe;
+    }
+
+    /**
+     * @return number of all categories, including those without recipes
+     */
+    public int getCategoryCount() {
+        return categoryCount;
+    }
+
+    /**
+     * @param index index of the category, categories are ordered by id
+     * @return category
+     */
+    public Category getCategory(int index) {
+        if (index < 0 || index >= categoryCount) {
+            throw new IndexOutOfBoundsException("Category index " + index + ", count " + categoryCount);
+        }
+        int position = categoriesStart + index * CATEGORY_SIZE;
+        return new Category(buffer.getLong(position), string(buffer.getInt(position + 8)));
+    }
+
+    private int recipe(int index) {
+        if (index < 0 || index >= recipeCount) {
+            throw new IndexOutOfBoundsException("Recipe index " + index + ", count " + recipeCount);
+        }
+        return recipesStart + index * RECIPE_SIZE;
+    }
+
+    private String string(int offset) {
+        int position = HEADER_SIZE + offset;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        // absolute bulk get is missing, duplicate keeps reads from other threads independent
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,458 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.TransactionContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes {@link RecipeSnapshot} files and checks them against the database.
+ *
+ * A snapshot is meant to be written when a session ends or by a maintenance job
+ * and opened at the next start, before the database is ready. Recipes are read by
+ * forward-only cursors; strings are streamed to the file and only the fixed-width
+ * arrays are collected in memory. Every snapshot is moved into place as a new
+ * generation of the file once it is complete, so an open snapshot is never
+ * overwritten and readers always find a complete one.
+ */
+public class RecipeSnapshotManager {
+
+    private static final Logger logger = Logger.getLogger(
+            RecipeSnapshotManager.class.getName());
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SELECT_CATEGORIES = "SELECT ID, NAME FROM Category ORDER BY ID";
+
+    private static final String SELECT_RECIPES = "SELECT r.ID, r.VERSION, r.NAME, r.DATE, r.RECIPE_PROCEDURE, "
+            + "i.NAME AS INGREDIENT FROM Recipe r LEFT JOIN RECIPE_INGREDIENT ri ON ri.RECIPE_ID = r.ID "
+            + "LEFT JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID ORDER BY r.ID";
+
+    private static final String SELECT_LINKS
+            = "SELECT RECIPE_ID, CATEGORY_ID FROM Rc_dependency ORDER BY RECIPE_ID, CATEGORY_ID";
+
+    private final Clock clock;
+    private DataSource dataSource;
+
+    public RecipeSnapshotManager() {
+        this(Clock.systemUTC());
+    }
+
+    /**
+     * @param clock clock giving the creation time of snapshots
+     */
+    public RecipeSnapshotManager(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Writes snapshot of all recipes and categories as a new generation of the
+     * file. Older generations are deleted, unless they are still open on systems
+     * that do not allow deleting a mapped file; they are deleted by a later write.
+     *
+     * @param file snapshot file
+     * @throws IOException when writing fails, the previous snapshot is kept
+     * @throws ServiceFailureException when reading from the database fails
+     */
+    public void writeSnapshot(Path file) throws IOException, ServiceFailureException {
+        if (file == null) {
+            throw new IllegalArgumentException("File is null");
+        }
+        checkDataSource();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        TreeMap<Long, Path> previous = RecipeSnapshot.generations(file);
+        long generation = previous.isEmpty() ? 1 : previous.lastKey() + 1;
+        Path target = file.resolveSibling(file.getFileName() + "." + generation);
+        int recipeCount;
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                SnapshotBuilder builder = new SnapshotBuilder(channel);
+                readCatalogue(builder);
+                builder.finish();
+                recipeCount = builder.recipeCount;
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, target);
+            }
+            moved = true;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } catch (SQLException ex) {
+            String msg = "Error when reading recipes for snapshot from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        logger.log(Level.INFO, "Written snapshot of {0} recipes to {1}", new Object[]{recipeCount, target});
+        for (Path old : previous.values()) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException ex) {
+                logger.log(Level.FINE, "Cannot delete old recipe snapshot " + old, ex);
+            }
+        }
+    }
+
+    /**
+     * Compares the snapshot with the database, field by field
+     *
+     * @param snapshot snapshot
+     * @return true if the snapshot holds exactly the recipes and categories in the database
+     * @throws ServiceFailureException when reading from the database fails
+     */
+    public boolean isSnapshotCurrent(RecipeSnapshot snapshot) throws ServiceFailureException {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot is null");
+        }
+        checkDataSource();
+        SnapshotComparator comparator = new SnapshotComparator(snapshot);
+        try {
+            readCatalogue(comparator);
+        } catch (SQLException ex) {
+            String msg = "Error when comparing recipe snapshot with DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+        boolean current = comparator.difference == null && comparator.finish();
+        if (!current) {
+            logger.log(Level.INFO, "Recipe snapshot from {0} differs from DB: {1}",
+                    new Object[]{snapshot.getCreated(), comparator.difference});
+        }
+        return current;
+    }
+
+    /**
+     * Receives categories ordered by id and then recipes ordered by id, reading
+     * stops when a method returns false
+     */
+    private interface CatalogueVisitor {
+
+        boolean visitCategory(long id, String name);
+
+        boolean visitRecipe(Recipe recipe, List<Long> categoryIds);
+    }
+
+    private void readCatalogue(CatalogueVisitor visitor) throws SQLException {
+        TransactionContext.execute(dataSource, connection -> {
+            PreparedStatement categoryStatement = null;
+            PreparedStatement recipeStatement = null;
+            PreparedStatement linkStatement = null;
+            try {
+                categoryStatement = connection.prepareStatement(SELECT_CATEGORIES);
+                ResultSet categories = categoryStatement.executeQuery();
+                while (categories.next()) {
+                    if (!visitor.visitCategory(categories.getLong("ID"), categories.getString("NAME"))) {
+                        return null;
+                    }
+                }
+                recipeStatement = connection.prepareStatement(SELECT_RECIPES,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                recipeStatement.setFetchSize(FETCH_SIZE);
+                linkStatement = connection.prepareStatement(SELECT_LINKS,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                linkStatement.setFetchSize(FETCH_SIZE);
+                RecipeRowAssembler recipes = new RecipeRowAssembler(recipeStatement.executeQuery());
+                ResultSet links = linkStatement.executeQuery();
+                boolean hasLink = links.next();
+                Recipe recipe;
+                while ((recipe = recipes.next()) != null) {
+                    List<Long> categoryIds = new ArrayList<>();
+                    while (hasLink && links.getLong("RECIPE_ID") <= recipe.getId()) {
+                        if (links.getLong("RECIPE_ID") == recipe.getId()) {
+                            categoryIds.add(links.getLong("CATEGORY_ID"));
+                        }
+                        hasLink = links.next();
+                    }
+                    if (!visitor.visitRecipe(recipe, categoryIds)) {
+                        return null;
+                    }
+                }
+                return null;
+            } finally {
+                DBUtils.closeQuietly(null, categoryStatement, recipeStatement, linkStatement);
+            }
+        });
+    }
+
+    /**
+     * Streams strings to the file after the space left for the header and collects
+     * the arrays, which are appended by {@link #finish()}
+     */
+    private class SnapshotBuilder implements CatalogueVisitor {
+
+        private final FileChannel channel;
+        private final ByteBuffer strings = ByteBuffer.allocate(BUFFER_SIZE);
+        private long stringsSize;
+        private ByteBuffer recipes = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer ingredients = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer categories = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer ingredientLinks = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer categoryLinks = ByteBuffer.allocate(BUFFER_SIZE);
+        private final Map<String, Integer> ingredientIndexes = new HashMap<>();
+        private final Map<Long, Integer> categoryIndexes = new HashMap<>();
+        private int recipeCount;
+        private int ingredientLinkCount;
+        private int categoryLinkCount;
+
+        private SnapshotBuilder(FileChannel channel) {
+            this.channel = channel;
+            strings.position(RecipeSnapshot.HEADER_SIZE);
+        }
+
+        @Override
+        public boolean visitCategory(long id, String name) {
+            int offset = writeString(name);
+            categories = ensureCapacity(categories, RecipeSnapshot.CATEGORY_SIZE);
+            categories.putLong(id).putInt(offset);
+            categoryIndexes.put(id, categoryIndexes.size());
+            return true;
+        }
+
+        @Override
+        public boolean visitRecipe(Recipe recipe, List<Long> categoryIds) {
+            int name = writeString(recipe.getName());
+            int procedure = writeString(recipe.getProcedure());
+            recipes = ensureCapacity(recipes, RecipeSnapshot.RECIPE_SIZE);
+            recipes.putLong(recipe.getId())
+                    .putLong(recipe.getVersion())
+                    .putInt(name)
+                    .putInt(procedure)
+                    .putInt(recipe.getDate() == null ? RecipeSnapshot.NO_DATE : (int) recipe.getDate().toEpochDay())
+                    .putInt(ingredientLinkCount)
+                    .putInt(categoryLinkCount);
+            for (String ingredient : new TreeSet<>(recipe.getIngredients())) {
+                Integer index = ingredientIndexes.get(ingredient);
+                if (index == null) {
+                    index = ingredientIndexes.size();
+                    ingredients = ensureCapacity(ingredients, RecipeSnapshot.INGREDIENT_SIZE);
+                    ingredients.putInt(writeString(ingredient));
+                    ingredientIndexes.put(ingredient, index);
+                }
+                ingredientLinks = ensureCapacity(ingredientLinks, RecipeSnapshot.LINK_SIZE);
+                ingredientLinks.putInt(index);
+                ingredientLinkCount++;
+            }
+            for (Long categoryId : categoryIds) {
+                Integer index = categoryIndexes.get(categoryId);
+                // category created after the categories were read
+                if (index != null) {
+                    categoryLinks = ensureCapacity(categoryLinks, RecipeSnapshot.LINK_SIZE);
+                    categoryLinks.putInt(index);
+                    categoryLinkCount++;
+                }
+            }
+            recipeCount++;
+            return true;
+        }
+
+        /**
+         * @return offset of the string in the string table
+         */
+        private int writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            long offset = stringsSize;
+            stringsSize += 4 + bytes.length;
+            if (stringsSize > Integer.MAX_VALUE) {
+                throw new UncheckedIOException(new IOException("Recipes are too large for a snapshot"));
+            }
+            try {
+                if (strings.remaining() < 4) {
+                    flushStrings();
+                }
+                strings.putInt(bytes.length);
+                for (int from = 0; from < bytes.length; ) {
+                    if (!strings.hasRemaining()) {
+                        flushStrings();
+                    }
+                    int length = Math.min(strings.remaining(), bytes.length - from);
+                    strings.put(bytes, from, length);
+                    from += length;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return (int) offset;
+        }
+
+        private void flushStrings() throws IOException {
+            strings.flip();
+            while (strings.hasRemaining()) {
+                channel.write(strings);
+            }
+            strings.clear();
+        }
+
+        private void finish() throws IOException {
+            flushStrings();
+            // the whole file is mapped at once, so it must fit in the int range
+            long size = RecipeSnapshot.HEADER_SIZE + stringsSize + recipes.position() + ingredients.position()
+                    + categories.position() + ingredientLinks.position() + categoryLinks.position();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recipes are too large for a snapshot");
+            }
+            for (ByteBuffer section : new ByteBuffer[]{recipes, ingredients, categories, ingredientLinks,
+                    categoryLinks}) {
+                section.flip();
+                while (section.hasRemaining()) {
+                    channel.write(section);
+                }
+            }
+            ByteBuffer header = ByteBuffer.allocate(RecipeSnapshot.HEADER_SIZE);
+            header.putInt(RecipeSnapshot.MAGIC)
+                    .putInt(RecipeSnapshot.FORMAT_VERSION)
+                    .putLong(clock.millis())
+                    .putInt(recipeCount)
+                    .putInt(ingredientIndexes.size())
+                    .putInt(categoryIndexes.size())
+                    .putInt(ingredientLinkCount)
+                    .putInt(categoryLinkCount)
+                    .putInt((int) stringsSize);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        if (buffer.capacity() > Integer.MAX_VALUE / 2) {
+            throw new UncheckedIOException(new IOException("Recipes are too large for a snapshot"));
+        }
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    /**
+     * Compares recipes read from the database with the snapshot, remembering the first difference
+     */
+    private static class SnapshotComparator implements CatalogueVisitor {
+
+        private final RecipeSnapshot snapshot;
+        private int categoryIndex;
+        private int recipeIndex;
+        private String difference;
+
+        private SnapshotComparator(RecipeSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean visitCategory(long id, String name) {
+            if (categoryIndex == snapshot.getCategoryCount()) {
+                difference = "category " + id + " is missing";
+                return false;
+            }
+            Category category = snapshot.getCategory(categoryIndex++);
+            if (category.getId() != id || !category.getCategoryName().equals(name)) {
+                difference = "category " + id + " differs";
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean visitRecipe(Recipe recipe, List<Long> categoryIds) {
+            if (categoryIndex != snapshot.getCategoryCount()) {
+                difference = "category " + snapshot.getCategory(categoryIndex).getId() + " was deleted";
+                return false;
+            }
+            if (recipeIndex == snapshot.size()) {
+                difference = "recipe " + recipe.getId() + " is missing";
+                return false;
+            }
+            int index = recipeIndex++;
+            if (snapshot.getId(index) != recipe.getId()) {
+                difference = "recipe " + (snapshot.getId(index) < recipe.getId() ? snapshot.getId(index)
+                        + " was deleted" : recipe.getId() + " is missing");
+                return false;
+            }
+            if (snapshot.getVersion(index) != recipe.getVersion()
+                    || !snapshot.getName(index).equals(recipe.getName())
+                    || !snapshot.getProcedure(index).equals(recipe.getProcedure())
+                    || !equal(snapshot.getDate(index), recipe.getDate())
+                    || !snapshot.getIngredients(index).equals(recipe.getIngredients())
+                    || !equalIds(snapshot.getCategories(index), categoryIds)) {
+                difference = "recipe " + recipe.getId() + " differs";
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return false if the snapshot holds more recipes or categories than the database
+         */
+        private boolean finish() {
+            if (categoryIndex != snapshot.getCategoryCount()) {
+                difference = "category " + snapshot.getCategory(categoryIndex).getId() + " was deleted";
+                return false;
+            }
+            if (recipeIndex != snapshot.size()) {
+                difference = "recipe " + snapshot.getId(recipeIndex) + " was deleted";
+                return false;
+            }
+            return true;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        private static boolean equalIds(List<Category> categories, List<Long> ids) {
+            if (categories.size() != ids.size()) {
+                return false;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (!categories.get(i).getId().equals(ids.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
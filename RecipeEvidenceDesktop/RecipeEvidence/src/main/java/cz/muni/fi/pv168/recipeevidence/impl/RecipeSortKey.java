@@ -0,0 +1,32 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+/**
+ * Order of recipes in paged listings. Ties of non-unique keys are broken by recipe id,
+ * so every order is total and pages can be addressed by the last recipe id.
+
+ */
+public enum RecipeSortKey {
+
+    /**
+     * Recipes ordered by their id, i.e. in order of creation
+     */
+    ID("r.ID"),
+
+    /**
+     * Recipes ordered by their name
+     */
+    NAME("r.NAME, r.ID");
+
+    private final String orderBy;
+
+    RecipeSortKey(String orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * @return ORDER BY column list for table RECIPE aliased as r
+     */
+    String getOrderBy() {
+        return orderBy;
+    }
+}
@@ -0,0 +1,90 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream into records ended by line breaks and keeps the byte offset
+ * following the last returned record, so that reading can be resumed there.
+ * Records are returned as undecoded bytes to leave decoding to parser threads.
+ * Line breaks inside double quotes may be part of a record, empty lines are
+ * skipped.
+ */
+class RecordReader implements Closeable {
+
+    private final InputStream input;
+    private final boolean quotesSpanLines;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    private long offset;
+    private byte[] record = new byte[256];
+
+    /**
+     * @param input stream positioned at the given offset
+     * @param offset offset of the stream in the file
+     * @param quotesSpanLines true if line breaks inside quotes do not end records
+     */
+    RecordReader(InputStream input, long offset, boolean quotesSpanLines) {
+        this.input = input;
+        this.offset = offset;
+        this.quotesSpanLines = quotesSpanLines;
+    }
+
+    /**
+     * @return next record without its line break, null at the end of the stream
+     * @throws IOException when reading fails
+     */
+    byte[] next() throws IOException {
+        while (true) {
+            int length = 0;
+            boolean quoted = false;
+            boolean ended = false;
+            while (!ended) {
+                if (position == limit) {
+                    limit = input.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (length == 0) {
+                            return null;
+                        }
+                        break;
+                    }
+                }
+                byte b = buffer[position++];
+                offset++;
+                if (b == '"' && quotesSpanLines) {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    ended = true;
+                    continue;
+                }
+                if (length == record.length) {
+                    record = Arrays.copyOf(record, length * 2);
+                }
+                record[length++] = b;
+            }
+            if (length > 0 && record[length - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                return Arrays.copyOf(record, length);
+            }
+        }
+    }
+
+    /**
+     * @return offset of the stream following the last returned record
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,368 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Completes prefixes of names ranked by their usage count, e.g. number of recipes
+ * containing an ingredient. Prefixes are matched ignoring case and diacritics.
+ *
+ * Names are sorted by their folded keys, which are stored in one char array, so
+ * the names starting with a prefix form one range found by binary search. A
+ * segment tree over the counts holds the position of the most used name of every
+ * subrange, so the k most used names of a range are found in O(k log n).
+ *
+ * Changes of counts of known names update the tree in place. Names added since
+ * the arrays were built are kept aside and searched linearly, removed names get
+ * count -1. The arrays are rebuilt by the change which adds or removes too many
+ * names, so completion never pays for the rebuild. The index is thread safe.
+ */
+class SuggestionIndex {
+
+    private static final int MAX_PENDING = 64;
+
+    private String[] names = new String[0];
+    private char[] keyChars = new char[0];
+    private int[] keyOffsets = {0};
+    private int[] counts = new int[0];
+    private int[] tree = new int[0];
+    private int removed;
+
+    /**
+     * Names added since the arrays were built with their counts and keys
+     */
+    private Map<String, Integer> added = new HashMap<>();
+    private Map<String, String> addedKeys = new HashMap<>();
+
+    /**
+     * Changes usage count of the name, unknown name is added
+     *
+     * @param name name
+     * @param delta change of the count
+     */
+    synchronized void adjust(String name, int delta) {
+        Integer count = added.get(name);
+        if (count != null) {
+            added.put(name, Math.max(0, count + delta));
+            return;
+        }
+        int position = positionOf(name);
+        if (position >= 0) {
+            update(position, Math.max(0, counts[position] + delta));
+        } else {
+            added.put(name, Math.max(0, delta));
+            addedKeys.put(name, TextAnalyzer.fold(name));
+            rebuildIfNeeded();
+        }
+    }
+
+    /**
+     * Removes the name
+     *
+     * @param name name
+     */
+    synchronized void remove(String name) {
+        int position = positionOf(name);
+        if (position >= 0) {
+            update(position, -1);
+            removed++;
+        }
+        added.remove(name);
+        addedKeys.remove(name);
+        rebuildIfNeeded();
+    }
+
+    /**
+     * @param name name
+     * @return usage count of the name, -1 for unknown name
+     */
+    synchronized int getCount(String name) {
+        int position = positionOf(name);
+        return position >= 0 ? counts[position] : added.getOrDefault(name, -1);
+    }
+
+    /**
+     * Finds the most used names starting with the prefix, names used equally
+     * are ordered alphabetically
+     *
+     * @param prefix prefix of names
+     * @param limit maximal number of names
+     * @return names, the most used first
+     */
+    synchronized List<String> complete(String prefix, int limit) {
+        String key = TextAnalyzer.fold(prefix);
+        List<String> pending = new ArrayList<>();
+        for (Map.Entry<String, String> entry : addedKeys.entrySet()) {
+            if (entry.getValue().startsWith(key)) {
+                pending.add(entry.getKey());
+            }
+        }
+        pending.sort(Comparator.comparing((String name) -> -added.get(name))
+                .thenComparing(addedKeys::get).thenComparing(name -> name));
+
+        // ranges of positions ordered by count of their most used name
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> compare(a[2], b[2]));
+        int from = lowerBound(key);
+        int to = upperBound(from, key);
+        if (from < to) {
+            ranges.add(new int[]{from, to, argMax(from, to)});
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, 64));
+        int next = 0;
+        while (result.size() < limit) {
+            int[] range = ranges.peek();
+            int best = range == null || counts[range[2]] < 0 ? -1 : range[2];
+            if (next < pending.size() && (best < 0 || precedes(pending.get(next), best))) {
+                result.add(pending.get(next++));
+                continue;
+            }
+            if (best < 0) {
+                break;
+            }
+            ranges.poll();
+            result.add(names[best]);
+            if (range[0] < best) {
+                ranges.add(new int[]{range[0], best, argMax(range[0], best)});
+            }
+            if (best + 1 < range[1]) {
+                ranges.add(new int[]{best + 1, range[1], argMax(best + 1, range[1])});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the pending name goes before the name at given position
+     */
+    private boolean precedes(String name, int position) {
+        int count = added.get(name);
+        if (count != counts[position]) {
+            return count > counts[position];
+        }
+        int byKey = compareKey(position, addedKeys.get(name));
+        return byKey != 0 ? byKey > 0 : name.compareTo(names[position]) < 0;
+    }
+
+    /**
+     * Pending names are searched linearly by every completion, so only a few of them
+     * are allowed. Their number grows slowly with the index, so that loading a large
+     * index one name at a time does not rebuild it after every few dozen names.
+     */
+    private void rebuildIfNeeded() {
+        if (added.size() > Math.max(MAX_PENDING, names.length / 256)
+                || removed > Math.max(MAX_PENDING, names.length / 8)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Merges names added since the last rebuild into the sorted arrays and drops
+     * removed names. Only the added names are sorted, the arrays are copied once.
+     */
+    private void rebuild() {
+        List<Entry> pending = new ArrayList<>(added.size());
+        for (Map.Entry<String, Integer> entry : added.entrySet()) {
+            pending.add(new Entry(addedKeys.get(entry.getKey()), entry.getKey(), entry.getValue()));
+        }
+        pending.sort(null);
+
+        int size = names.length - removed + pending.size();
+        String[] mergedNames = new String[size];
+        int[] mergedCounts = new int[size];
+        int[] mergedOffsets = new int[size + 1];
+        int length = 0;
+        for (int i = 0; i < names.length; i++) {
+            length += counts[i] >= 0 ? keyOffsets[i + 1] - keyOffsets[i] : 0;
+        }
+        for (Entry entry : pending) {
+            length += entry.key.length();
+        }
+        char[] mergedChars = new char[length];
+        int merged = 0;
+        int next = 0;
+        for (int i = 0; i <= names.length; i++) {
+            while (next < pending.size() && (i == names.length || pending.get(next).precedes(this, i))) {
+                Entry entry = pending.get(next++);
+                int offset = mergedOffsets[merged];
+                entry.key.getChars(0, entry.key.length(), mergedChars, offset);
+                mergedNames[merged] = entry.name;
+                mergedCounts[merged] = entry.count;
+                mergedOffsets[++merged] = offset + entry.key.length();
+            }
+            if (i < names.length && counts[i] >= 0) {
+                int keyLength = keyOffsets[i + 1] - keyOffsets[i];
+                int offset = mergedOffsets[merged];
+                System.arraycopy(keyChars, keyOffsets[i], mergedChars, offset, keyLength);
+                mergedNames[merged] = names[i];
+                mergedCounts[merged] = counts[i];
+                mergedOffsets[++merged] = offset + keyLength;
+            }
+        }
+        names = mergedNames;
+        counts = mergedCounts;
+        keyOffsets = mergedOffsets;
+        keyChars = mergedChars;
+        tree = new int[2 * size];
+        for (int i = 0; i < size; i++) {
+            tree[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+        }
+        // cleared maps would keep their capacity, which slows down iteration
+        added = new HashMap<>();
+        addedKeys = new HashMap<>();
+        removed = 0;
+    }
+
+    /**
+     * @return position of the name in the arrays, -1 if it is not there or was removed
+     */
+    private int positionOf(String name) {
+        String key = TextAnalyzer.fold(name);
+        for (int i = lowerBound(key); i < names.length && compareKey(i, key) == 0; i++) {
+            if (names[i].equals(name)) {
+                return counts[i] >= 0 ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void update(int position, int count) {
+        counts[position] = count;
+        int size = names.length;
+        for (int node = (position + size) >>> 1; node > 0; node >>>= 1) {
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * @return position of the most used name between from (inclusive) and to (exclusive)
+     */
+    private int argMax(int from, int to) {
+        int size = names.length;
+        int best = from;
+        for (int left = from + size, right = to + size; left < right; left >>>= 1, right >>>= 1) {
+            if ((left & 1) == 1) {
+                best = better(best, tree[left++]);
+            }
+            if ((right & 1) == 1) {
+                best = better(best, tree[--right]);
+            }
+        }
+        return best;
+    }
+
+    private int better(int a, int b) {
+        return compare(a, b) <= 0 ? a : b;
+    }
+
+    /**
+     * Orders positions by count descending, then by position
+     */
+    private int compare(int a, int b) {
+        int byCount = Integer.compare(counts[b], counts[a]);
+        return byCount != 0 ? byCount : Integer.compare(a, b);
+    }
+
+    /**
+     * @return first position whose key is not less than the given one
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(middle, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the end of the range of keys starting with the prefix. The range is
+     * probed exponentially first, because ranges of longer prefixes are short.
+     *
+     * @return first position after {@code from} whose key does not start with the prefix
+     */
+    private int upperBound(int from, String prefix) {
+        int low = from;
+        int step = 1;
+        while (from + step <= names.length && startsWith(from + step - 1, prefix)) {
+            low = from + step;
+            step <<= 1;
+        }
+        int high = Math.min(from + step - 1, names.length);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (startsWith(middle, prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compareKey(int position, String key) {
+        int offset = keyOffsets[position];
+        int length = keyOffsets[position + 1] - offset;
+        for (int i = 0; i < Math.min(length, key.length()); i++) {
+            int difference = keyChars[offset + i] - key.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length();
+    }
+
+    private boolean startsWith(int position, String prefix) {
+        int offset = keyOffsets[position];
+        if (keyOffsets[position + 1] - offset < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (keyChars[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Name with its key and count, ordered by key and name
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        private final String key;
+        private final String name;
+        private final int count;
+
+        private Entry(String key, String name, int count) {
+            this.key = key;
+            this.name = name;
+            this.count = count;
+        }
+
+        /**
+         * @return whether this entry goes before the name at given position of the index
+         */
+        private boolean precedes(SuggestionIndex index, int position) {
+            int byKey = index.compareKey(position, key);
+            return byKey != 0 ? byKey > 0 : name.compareTo(index.names[position]) < 0;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : name.compareTo(other.name);
+        }
+    }
+}
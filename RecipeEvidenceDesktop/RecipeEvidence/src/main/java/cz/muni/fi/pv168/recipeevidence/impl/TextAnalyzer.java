@@ -0,0 +1,130 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits Czech text into terms of the full-text index. Text is lower-cased,
+ * diacritics are removed ("Svíčková" and "svickova" are the same term), short
+ * and very common words are dropped and case endings are stripped by a light
+ * stemmer, so that e.g. "cibule", "cibuli" and "cibulí" end up as one term.
+ * Documents and queries are analyzed the same way.
+ */
+final class TextAnalyzer {
+
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "aby", "ale", "asi", "az", "by", "do", "i", "jak", "je", "jeho", "jen", "k", "ke",
+            "na", "nebo", "o", "od", "po", "pod", "pro", "s", "se", "si", "ta", "tak", "to", "u",
+            "v", "ve", "z", "za", "ze"));
+
+    /**
+     * Case endings ordered from the longest, applicable when at least three
+     * letters of the word remain
+     */
+    private static final String[] SUFFIXES = {
+            "atech",
+            "etem", "atum",
+            "ech", "ich", "eho", "emi", "emu", "ete", "eti", "iho", "imi", "imu", "ach", "ata", "aty",
+            "ych", "ama", "ami", "ove", "ovi", "ymi",
+            "em", "es", "im", "um", "at", "am", "os", "us", "ym", "mi", "ou",
+            "e", "i", "u", "y", "a", "o"};
+
+    private static final String[] POSSESSIVE_SUFFIXES = {"ov", "in", "uv"};
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * @param text text to be analyzed, may be null
+     * @return terms of the text in their order, including repeated ones
+     */
+    static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String word = folded.substring(start, i);
+                if (word.length() >= MIN_TERM_LENGTH && !STOP_WORDS.contains(word)) {
+                    terms.add(stem(word));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Lower-cased characters without diacritics for Latin-1 and Latin Extended-A,
+     * which cover Czech, computed once instead of normalizing every text
+     */
+    private static final char[] FOLDED = new char[0x180];
+
+    static {
+        for (char c = 0; c < FOLDED.length; c++) {
+            String folded = foldByNormalizer(String.valueOf(c));
+            FOLDED[c] = folded.length() == 1 ? folded.charAt(0) : c;
+        }
+    }
+
+    /**
+     * Lower-cases text and removes diacritics
+     */
+    static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < FOLDED.length) {
+                folded.append(FOLDED[c]);
+            } else {
+                folded.append(foldByNormalizer(String.valueOf(c)));
+            }
+        }
+        return folded.toString();
+    }
+
+    private static String foldByNormalizer(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Strips one case ending and one possessive suffix of a folded word
+     */
+    static String stem(String word) {
+        if (!Character.isLetter(word.charAt(word.length() - 1))) {
+            return word;
+        }
+        String stem = removeSuffix(word, SUFFIXES);
+        return removeSuffix(stem, POSSESSIVE_SUFFIXES);
+    }
+
+    private static String removeSuffix(String word, String[] suffixes) {
+        for (String suffix : suffixes) {
+            if (word.length() - suffix.length() >= 3 && word.endsWith(suffix)) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+}
@@ -0,0 +1,242 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory full-text index of recipe names and procedures. Maps every term
+ * produced by {@link TextAnalyzer} to a posting list of recipe ids with term
+ * frequencies, sorted by id. Results are ranked by BM25, a term of the name
+ * counts as {@link #NAME_WEIGHT} terms of the procedure.
+ * Adding a recipe replaces its previous text, so all operations are idempotent.
+ * Index is safe for concurrent readers, writers are serialized.
+ */
+class TextIndex {
+
+    /**
+     * BM25 saturation of term frequency
+     */
+    private static final double K1 = 1.2;
+
+    /**
+     * BM25 normalization by document length
+     */
+    private static final double B = 0.75;
+
+    static final int NAME_WEIGHT = 2;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes text of the recipe, replacing the previous one
+     *
+     * @param recipeId id of the recipe
+     * @param name name of the recipe
+     * @param procedure procedure of the recipe
+     */
+    void add(long recipeId, String name, String procedure) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        for (String term : TextAnalyzer.analyze(name)) {
+            frequencies.merge(term, NAME_WEIGHT, Integer::sum);
+            length += NAME_WEIGHT;
+        }
+        for (String term : TextAnalyzer.analyze(procedure)) {
+            frequencies.merge(term, 1, Integer::sum);
+            length++;
+        }
+        lock.writeLock().lock();
+        try {
+            removeDocument(recipeId);
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new PostingList())
+                        .add(recipeId, entry.getValue());
+            }
+            documents.put(recipeId, new Document(frequencies.keySet().toArray(new String[0]), length));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the recipe from the index
+     *
+     * @param recipeId id of the recipe
+     */
+    void remove(long recipeId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(recipeId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeDocument(long recipeId) {
+        Document document = documents.remove(recipeId);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            PostingList list = postings.get(term);
+            if (list != null && list.remove(recipeId) && list.size == 0) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * Finds recipes containing any term of the query ranked by BM25. Posting lists
+     * of the query terms are merged by recipe id, so every recipe is scored once
+     * and only the best ones are kept in a heap.
+     *
+     * @param query searched text
+     * @param limit maximal number of results
+     * @return ids of the best matching recipes, the best first
+     */
+    long[] search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.analyze(query));
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[terms.size()];
+            double[] idfs = new double[terms.size()];
+            int count = 0;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list != null) {
+                    idfs[count] = Math.log(1 + (documents.size() - list.size + 0.5) / (list.size + 0.5));
+                    lists[count++] = list;
+                }
+            }
+            if (count == 0) {
+                return new long[0];
+            }
+            double averageLength = (double) totalLength / documents.size();
+            int[] positions = new int[count];
+            PriorityQueue<Result> best = new PriorityQueue<>(Math.min(limit, 1024) + 1);
+            while (true) {
+                long recipeId = Long.MAX_VALUE;
+                for (int l = 0; l < count; l++) {
+                    if (positions[l] < lists[l].size) {
+                        recipeId = Math.min(recipeId, lists[l].ids[positions[l]]);
+                    }
+                }
+                if (recipeId == Long.MAX_VALUE) {
+                    break;
+                }
+                double norm = K1 * (1 - B + B * documents.get(recipeId).length / averageLength);
+                double score = 0;
+                for (int l = 0; l < count; l++) {
+                    int position = positions[l];
+                    if (position < lists[l].size && lists[l].ids[position] == recipeId) {
+                        int frequency = lists[l].frequencies[position];
+                        score += idfs[l] * frequency * (K1 + 1) / (frequency + norm);
+                        positions[l]++;
+                    }
+                }
+                if (best.size() < limit) {
+                    best.add(new Result(recipeId, score));
+                } else if (score > best.peek().score) {
+                    best.poll();
+                    best.add(new Result(recipeId, score));
+                }
+            }
+            long[] result = new long[best.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = best.poll().recipeId;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scored recipe, ordered from the worst so that the heap drops it first.
+     * Of equally scored recipes the older one is better.
+     */
+    private static final class Result implements Comparable<Result> {
+
+        private final long recipeId;
+        private final double score;
+
+        private Result(long recipeId, double score) {
+            this.recipeId = recipeId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Result other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(other.recipeId, recipeId);
+        }
+    }
+
+    /**
+     * Distinct terms and weighted length of an indexed recipe
+     */
+    private static final class Document {
+
+        private final String[] terms;
+        private final int length;
+
+        private Document(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Recipe ids sorted ascending with frequencies of the term in them
+     */
+    private static final class PostingList {
+
+        private long[] ids = new long[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(long id, int frequency) {
+            int position = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                position = Arrays.binarySearch(ids, 0, size, id);
+                if (position >= 0) {
+                    frequencies[position] = frequency;
+                    return;
+                }
+                position = -position - 1;
+            }
+            if (size == ids.length) {
+                int capacity = size + (size >> 1) + 1;
+                ids = Arrays.copyOf(ids, capacity);
+                frequencies = Arrays.copyOf(frequencies, capacity);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+            ids[position] = id;
+            frequencies[position] = frequency;
+            size++;
+        }
+
+        private boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+            size--;
+            return true;
+        }
+    }
+}
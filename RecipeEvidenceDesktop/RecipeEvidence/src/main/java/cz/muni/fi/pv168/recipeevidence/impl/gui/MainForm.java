@@ -1,20 +1,72 @@
 package cz.muni.fi.pv168.recipeevidence.impl.gui;
 
+import cz.muni.fi.pv168.recipeevidence.common.DataSourceFactory;
+import cz.muni.fi.pv168.recipeevidence.common.PooledDataSource;
+import cz.muni.fi.pv168.recipeevidence.common.SchemaMigrator;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSnapshot;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSnapshotManager;
+
+import javax.sql.DataSource;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by tom on 18.5.17.
  */
 public class MainForm {
 
+    private static final Logger logger = Logger.getLogger(
+            MainForm.class.getName());
+
     private JPanel topPanel;
     private JTable table1;
     private JButton button1;
 
-    public MainForm() {
+    /**
+     * Embedded database stored in the working directory
+     */
+    private static final String DATABASE_URL = "jdbc:derby:recipeevidence;create=true";
+
+    /**
+     * Snapshot of recipes written when the application ends, shown at the next start
+     */
+    private static final Path SNAPSHOT_FILE = Paths.get("recipeevidence.snapshot");
+
+    public MainForm(DataSource dataSource) {
+        RecipesTableModel model = new RecipesTableModel(table1, dataSource, openSnapshot());
+        table1.setModel(model);
+        // the table shows the snapshot while the database boots and migrates
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                SchemaMigrator.migrate(dataSource);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.log(Level.SEVERE, "Cannot migrate DB schema", e);
+                    JOptionPane.showMessageDialog(topPanel,
+                            "Databázi se nepodařilo připravit, aplikace bude ukončena.",
+                            "Chyba", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                }
+                model.startLoading();
+            }
+        }.execute();
         button1.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -24,6 +76,21 @@ public class MainForm {
     }
 
     public static void main(String[] args) {
+        PooledDataSource dataSource = DataSourceFactory.createPooledDataSource(DATABASE_URL);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            RecipeSnapshotManager snapshotManager = new RecipeSnapshotManager();
+            snapshotManager.setDataSource(dataSource);
+            try {
+                snapshotManager.writeSnapshot(SNAPSHOT_FILE);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Cannot write recipe snapshot", e);
+            }
+            try {
+                dataSource.close();
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Cannot close DB connection pool", e);
+            }
+        }));
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -40,7 +107,7 @@ public class MainForm {
                 }
                 JFrame frame = new JFrame("Titulek okna");
                 frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-                frame.setContentPane(new MainForm().topPanel);
+                frame.setContentPane(new MainForm(dataSource).topPanel);
                 frame.setJMenuBar(createMenu());
                 frame.setPreferredSize(new Dimension(800,600));
                 frame.pack();
@@ -49,6 +116,21 @@ public class MainForm {
         });
     }
 
+    /**
+     * @return snapshot of the last session, null if there is none or it cannot be read,
+     * recipes are then loaded from the database
+     */
+    private static RecipeSnapshot openSnapshot() {
+        try {
+            return RecipeSnapshot.open(SNAPSHOT_FILE);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Cannot open recipe snapshot, recipes are loaded from DB", e);
+            return null;
+        }
+    }
+
     private static JMenuBar createMenu() {
         //hlavní úroveň menu
         JMenuBar menubar = new JMenuBar();
@@ -1,28 +1,46 @@
 package cz.muni.fi.pv168.recipeevidence.impl.gui;
 
-import com.sun.org.apache.regexp.internal.RE;
-import com.sun.xml.internal.ws.policy.privateutil.LocalizationMessages;
 import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import cz.muni.fi.pv168.recipeevidence.impl.OptimisticLockException;
 import cz.muni.fi.pv168.recipeevidence.impl.Recipe;
 import cz.muni.fi.pv168.recipeevidence.impl.RecipeManagerImpl;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSnapshot;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSnapshotManager;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSortKey;
 
-import javax.activation.DataSource;
+import javax.sql.DataSource;
 import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
 import java.time.*;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by tom on 18.5.17.
  */
 public class RecipesTableModel extends AbstractTableModel {
 
-    private final List<Recipe> recipes;
+    /**
+     * Number of recipes loaded from database at once
+     */
+    private static final int PAGE_SIZE = 100;
+
+    private static final Logger logger = Logger.getLogger(
+            RecipesTableModel.class.getName());
+
+    private List<Recipe> recipes = new ArrayList<>();
     private final DataSource dataSource;
     private final RecipeManager recipeManager;
     private final JTable table;
+    private final RecipeSnapshot snapshot;
+    private boolean loadingPage;
+    private boolean allRecipesLoaded;
 
     private final static ZonedDateTime NOW
             = LocalDateTime.now().atZone(ZoneId.of("UTC"));
@@ -31,11 +49,41 @@ public class RecipesTableModel extends AbstractTableModel {
         return Clock.fixed(now.toInstant(), now.getZone());
     }
 
-    public RecipesTableModel(JTable table) {
-        this.dataSource = dataSource; //TODO
-        this.recipeManager = new RecipeManagerImpl(prepareClockMock(NOW));
-        this.recipes = recipeManager.findAllRecipes();
+    public RecipesTableModel(JTable table, DataSource dataSource) {
+        this(table, dataSource, null);
+        startLoading();
+    }
+
+    /**
+     * Creates model showing recipes of the snapshot without touching the database,
+     * which is used after {@link #startLoading()}
+     *
+     * @param snapshot snapshot of recipes saved by the last session, null if there is none
+     */
+    public RecipesTableModel(JTable table, DataSource dataSource, RecipeSnapshot snapshot) {
+        this.dataSource = dataSource;
+        RecipeManagerImpl recipeManager = new RecipeManagerImpl(prepareClockMock(NOW));
+        recipeManager.setDataSource(dataSource);
+        this.recipeManager = recipeManager;
         this.table = table;
+        this.snapshot = snapshot;
+        if (snapshot != null) {
+            recipes = new SnapshotRecipeList(snapshot);
+            allRecipesLoaded = true;
+        }
+    }
+
+    /**
+     * Starts working with the database. Recipes of the snapshot are compared with
+     * the database in background and replaced by recipes loaded from the database
+     * if they differ, without a snapshot the first page is loaded.
+     */
+    public void startLoading() {
+        if (snapshot == null) {
+            loadNextPage();
+        } else {
+            new CheckSnapshotWorker().execute();
+        }
     }
 
     public List<Recipe> getRecipes() {
@@ -56,7 +104,7 @@ public class RecipesTableModel extends AbstractTableModel {
     }
 
     public void clearRecipeTable() {
-        this.recipes.clear();
+        this.recipes = new ArrayList<>();
         this.fireTableDataChanged();
     }
 
@@ -72,6 +120,10 @@ public class RecipesTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
+        if (rowIndex >= recipes.size() - PAGE_SIZE / 2) {
+            // user scrolled near the end of loaded recipes
+            loadNextPage();
+        }
         Recipe recipe = recipes.get(rowIndex);
         switch (columnIndex) {
             case 0:
@@ -157,15 +209,127 @@ public class RecipesTableModel extends AbstractTableModel {
                 recipe.setName((String) aValue);
                 break;
             case 3:
-                recipe.setIngredients((Set<String>) aValue);
+                recipe.setIngredients(toIngredients((Set<?>) aValue));
+                break;
             case 4:
                 recipe.setProcedure((String) aValue);
+                break;
             default:
                 throw new IllegalArgumentException("columnIndex");
         }
         updateRecipe(recipe, rowIndex, columnIndex);
     }
 
+    private static Set<String> toIngredients(Set<?> value) {
+        Set<String> ingredients = new LinkedHashSet<>();
+        for (Object ingredient : value) {
+            ingredients.add((String) ingredient);
+        }
+        return ingredients;
+    }
+
+    /**
+     * Loads next page of recipes in background, unless it is already being loaded
+     */
+    public void loadNextPage() {
+        if (loadingPage || allRecipesLoaded) {
+            return;
+        }
+        loadingPage = true;
+        Recipe after = recipes.isEmpty() ? null : recipes.get(recipes.size() - 1);
+        new LoadPageWorker(after).execute();
+    }
+
+    private class LoadPageWorker extends SwingWorker<List<Recipe>, Void> {
+        private final Recipe after;
+
+        public LoadPageWorker(Recipe after) {
+            this.after = after;
+        }
+
+        @Override
+        protected List<Recipe> doInBackground() throws Exception {
+            return recipeManager.findRecipes(after, PAGE_SIZE, RecipeSortKey.ID);
+        }
+
+        @Override
+        protected void done() {
+            loadingPage = false;
+            try {
+                List<Recipe> page = get();
+                allRecipesLoaded = page.size() < PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    int firstRow = recipes.size();
+                    recipes.addAll(page);
+                    fireTableRowsInserted(firstRow, recipes.size() - 1);
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                logger.log(Level.SEVERE, "Cannot load page of recipes", e);
+            }
+        }
+    }
+
+    /**
+     * Recipes of a snapshot, each is decoded when its row is shown for the first time
+     */
+    private static class SnapshotRecipeList extends AbstractList<Recipe> {
+        private final RecipeSnapshot snapshot;
+        private final Recipe[] rows;
+
+        public SnapshotRecipeList(RecipeSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.rows = new Recipe[snapshot.size()];
+        }
+
+        @Override
+        public Recipe get(int index) {
+            Recipe recipe = rows[index];
+            if (recipe == null) {
+                recipe = snapshot.getRecipe(index);
+                rows[index] = recipe;
+            }
+            return recipe;
+        }
+
+        @Override
+        public Recipe set(int index, Recipe recipe) {
+            Recipe previous = get(index);
+            rows[index] = recipe;
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+    }
+
+    private class CheckSnapshotWorker extends SwingWorker<Boolean, Void> {
+
+        @Override
+        protected Boolean doInBackground() throws Exception {
+            RecipeSnapshotManager snapshotManager = new RecipeSnapshotManager();
+            snapshotManager.setDataSource(dataSource);
+            return snapshotManager.isSnapshotCurrent(snapshot);
+        }
+
+        @Override
+        protected void done() {
+            try {
+                if (get()) {
+                    return;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                logger.log(Level.SEVERE, "Cannot check recipe snapshot", e);
+            }
+            // recipes changed since the snapshot was written, show the current ones
+            recipes = new ArrayList<>();
+            allRecipesLoaded = false;
+            fireTableDataChanged();
+            loadNextPage();
+        }
+    }
+
     public void updateRecipe(Recipe recipe, int rowIndex, int columnIndex) {
         UpdateRecipeWorker updateRecipeWorker = new UpdateRecipeWorker(recipe, rowIndex, columnIndex, RecipesTableModel.this);
         updateRecipeWorker.execute();
@@ -175,6 +339,7 @@ public class RecipesTableModel extends AbstractTableModel {
         private final Recipe recipe;
         private int rowIndex;
         private int columnIndex;
+        private boolean rejected;
 
         public UpdateRecipeWorker(Recipe recipe, int rowIndex, int columnIndex, RecipesTableModel tableModel) {
             this.recipe = recipe;
@@ -184,24 +349,36 @@ public class RecipesTableModel extends AbstractTableModel {
 
         @Override
         protected Recipe doInBackground() throws Exception {
-            Recipe oldRecipe = recipeManager.findRecipeById(recipe.getId());
-            RecipesTableModel.this.recipeManager.updateRecipe(recipe);
-            //TODO logger
-            return recipe;
+            try {
+                // only the edited cell is written, recipe is not read again
+                recipeManager.updateRecipeChanges(recipe);
+                return recipe;
+            } catch (OptimisticLockException e) {
+                // somebody else changed the recipe, show the current one instead
+                rejected = true;
+                return recipeManager.findRecipeById(recipe.getId());
+            }
         }
 
+        @Override
         protected void done() {
             try {
-                get();
-            } catch (InterruptedException e) {
-                //TODO logger
-                e.printStackTrace();
-            } catch (ExecutionException e) {
-                e.printStackTrace();
+                Recipe current = get();
+                if (rejected) {
+                    JOptionPane.showMessageDialog(table,
+                            "Recept mezitím změnil někdo jiný, vaše úprava nebyla uložena.",
+                            "Úprava zamítnuta", JOptionPane.WARNING_MESSAGE);
+                }
+                if (current != null && current != recipe && rowIndex < recipes.size()
+                        && recipes.get(rowIndex) == recipe) {
+                    recipes.set(rowIndex, current);
+                    fireTableRowsUpdated(rowIndex, rowIndex);
+                    return;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                logger.log(Level.SEVERE, "Cannot update recipe", e);
             }
             fireTableCellUpdated(rowIndex, columnIndex);
         }
     }
-
-    public void createRecipe(String name, )
 }
@@ -3,19 +3,53 @@ CREATE TABLE "CATEGORY"(
   "NAME" VARCHAR(255) NOT NULL
 );
 
+CREATE INDEX "CATEGORY_NAME_IDX" ON "CATEGORY" ("NAME");
+
 CREATE TABLE "RECIPE"(
   "ID" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+  "VERSION" BIGINT DEFAULT 0 NOT NULL,
   "NAME" VARCHAR(255) NOT NULL,
   "RECIPE_PROCEDURE" VARCHAR(1000) NOT NULL,
   "DATE" DATE
 );
 
+CREATE INDEX "RECIPE_NAME_IDX" ON "RECIPE" ("NAME", "ID");
+
 CREATE TABLE "RC_DEPENDENCY"(
-  "RECIPE_ID" BIGINT REFERENCES RECIPE (ID),
-  "CATEGORY_ID" BIGINT REFERENCES CATEGORY (ID)
+  "RECIPE_ID" BIGINT NOT NULL REFERENCES RECIPE (ID) ON DELETE CASCADE,
+  "CATEGORY_ID" BIGINT NOT NULL REFERENCES CATEGORY (ID) ON DELETE CASCADE,
+  CONSTRAINT "RC_DEPENDENCY_PK" PRIMARY KEY ("RECIPE_ID", "CATEGORY_ID")
 );
 
-CREATE TABLE "INGREDIENTS"(
-  "RECIPE_ID" BIGINT REFERENCES RECIPE (ID) ON DELETE CASCADE,
-  "NAME" VARCHAR(255) NOT NULL
+CREATE INDEX "RC_DEPENDENCY_CATEGORY_IDX" ON "RC_DEPENDENCY" ("CATEGORY_ID", "RECIPE_ID");
+
+CREATE TABLE "INGREDIENT"(
+  "ID" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+  "NAME" VARCHAR(255) NOT NULL,
+  CONSTRAINT "INGREDIENT_NAME_UQ" UNIQUE ("NAME")
+);
+
+CREATE TABLE "RECIPE_INGREDIENT"(
+  "RECIPE_ID" BIGINT NOT NULL REFERENCES RECIPE (ID) ON DELETE CASCADE,
+  "INGREDIENT_ID" BIGINT NOT NULL REFERENCES INGREDIENT (ID),
+  CONSTRAINT "RECIPE_INGREDIENT_PK" PRIMARY KEY ("RECIPE_ID", "INGREDIENT_ID")
+);
+
+CREATE INDEX "RECIPE_INGREDIENT_INGREDIENT_IDX" ON "RECIPE_INGREDIENT" ("INGREDIENT_ID", "RECIPE_ID");
+
+CREATE TABLE "IMPORT_CHECKPOINT"(
+  "NAME" VARCHAR(255) NOT NULL PRIMARY KEY,
+  "FILE" VARCHAR(1000) NOT NULL,
+  "FILE_OFFSET" BIGINT NOT NULL,
+  "RECORDS" BIGINT NOT NULL,
+  "IMPORTED" BIGINT NOT NULL,
+  "REJECTED" BIGINT NOT NULL
 );
+
+CREATE TABLE "SCHEMA_VERSION"(
+  "VERSION" INT NOT NULL PRIMARY KEY,
+  "DESCRIPTION" VARCHAR(255) NOT NULL,
+  "APPLIED" TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO "SCHEMA_VERSION" ("VERSION", "DESCRIPTION") VALUES (6, 'import checkpoint');
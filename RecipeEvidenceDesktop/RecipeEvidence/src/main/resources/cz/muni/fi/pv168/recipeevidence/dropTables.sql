@@ -1,4 +1,7 @@
+DROP TABLE "SCHEMA_VERSION";
+DROP TABLE "IMPORT_CHECKPOINT";
 DROP TABLE "RC_DEPENDENCY";
-DROP TABLE "INGREDIENTS";
+DROP TABLE "RECIPE_INGREDIENT";
+DROP TABLE "INGREDIENT";
 DROP TABLE "RECIPE";
 DROP TABLE "CATEGORY";
\ No newline at end of file
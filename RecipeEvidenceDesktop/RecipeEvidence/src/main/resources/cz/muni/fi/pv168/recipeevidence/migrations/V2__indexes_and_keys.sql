@@ -0,0 +1,41 @@
+-- Link tables get composite primary keys. Derby cannot add primary key to
+-- columns declared as nullable, so the tables are rebuilt, dropping rows
+-- with missing references and duplicate rows.
+
+CREATE TABLE "RC_DEPENDENCY_NEW"(
+  "RECIPE_ID" BIGINT NOT NULL REFERENCES RECIPE (ID),
+  "CATEGORY_ID" BIGINT NOT NULL REFERENCES CATEGORY (ID),
+  CONSTRAINT "RC_DEPENDENCY_PK" PRIMARY KEY ("RECIPE_ID", "CATEGORY_ID")
+);
+
+INSERT INTO "RC_DEPENDENCY_NEW" ("RECIPE_ID", "CATEGORY_ID")
+  SELECT DISTINCT "RECIPE_ID", "CATEGORY_ID" FROM "RC_DEPENDENCY"
+  WHERE "RECIPE_ID" IS NOT NULL AND "CATEGORY_ID" IS NOT NULL;
+
+DROP TABLE "RC_DEPENDENCY";
+
+RENAME TABLE "RC_DEPENDENCY_NEW" TO "RC_DEPENDENCY";
+
+CREATE TABLE "INGREDIENTS_NEW"(
+  "RECIPE_ID" BIGINT NOT NULL REFERENCES RECIPE (ID) ON DELETE CASCADE,
+  "NAME" VARCHAR(255) NOT NULL,
+  CONSTRAINT "INGREDIENTS_PK" PRIMARY KEY ("RECIPE_ID", "NAME")
+);
+
+INSERT INTO "INGREDIENTS_NEW" ("RECIPE_ID", "NAME")
+  SELECT DISTINCT "RECIPE_ID", "NAME" FROM "INGREDIENTS"
+  WHERE "RECIPE_ID" IS NOT NULL;
+
+DROP TABLE "INGREDIENTS";
+
+RENAME TABLE "INGREDIENTS_NEW" TO "INGREDIENTS";
+
+-- Indexes for lookups by the second key column and by name
+
+CREATE INDEX "RC_DEPENDENCY_CATEGORY_IDX" ON "RC_DEPENDENCY" ("CATEGORY_ID", "RECIPE_ID");
+
+CREATE INDEX "INGREDIENTS_NAME_IDX" ON "INGREDIENTS" ("NAME", "RECIPE_ID");
+
+CREATE INDEX "CATEGORY_NAME_IDX" ON "CATEGORY" ("NAME");
+
+CREATE INDEX "RECIPE_NAME_IDX" ON "RECIPE" ("NAME", "ID");
@@ -0,0 +1,24 @@
+-- Ingredient names are stored once in dictionary INGREDIENT, recipes refer
+-- to them by id through RECIPE_INGREDIENT.
+
+CREATE TABLE "INGREDIENT"(
+  "ID" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+  "NAME" VARCHAR(255) NOT NULL,
+  CONSTRAINT "INGREDIENT_NAME_UQ" UNIQUE ("NAME")
+);
+
+CREATE TABLE "RECIPE_INGREDIENT"(
+  "RECIPE_ID" BIGINT NOT NULL REFERENCES RECIPE (ID) ON DELETE CASCADE,
+  "INGREDIENT_ID" BIGINT NOT NULL REFERENCES INGREDIENT (ID),
+  CONSTRAINT "RECIPE_INGREDIENT_PK" PRIMARY KEY ("RECIPE_ID", "INGREDIENT_ID")
+);
+
+INSERT INTO "INGREDIENT" ("NAME")
+  SELECT DISTINCT "NAME" FROM "INGREDIENTS";
+
+INSERT INTO "RECIPE_INGREDIENT" ("RECIPE_ID", "INGREDIENT_ID")
+  SELECT i."RECIPE_ID", d."ID" FROM "INGREDIENTS" i JOIN "INGREDIENT" d ON d."NAME" = i."NAME";
+
+CREATE INDEX "RECIPE_INGREDIENT_INGREDIENT_IDX" ON "RECIPE_INGREDIENT" ("INGREDIENT_ID", "RECIPE_ID");
+
+DROP TABLE "INGREDIENTS";
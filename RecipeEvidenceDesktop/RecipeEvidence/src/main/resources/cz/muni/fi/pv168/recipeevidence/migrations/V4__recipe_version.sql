@@ -0,0 +1,3 @@
+-- Version of a recipe is increased by every update, updates are guarded by it.
+
+ALTER TABLE "RECIPE" ADD COLUMN "VERSION" BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,23 @@
+-- Links of a recipe or a category are deleted together with it. Foreign keys
+-- of the table have generated names, so the table is rebuilt instead of altered.
+
+CREATE TABLE "RC_DEPENDENCY_OLD"("RECIPE_ID", "CATEGORY_ID") AS
+  SELECT "RECIPE_ID", "CATEGORY_ID" FROM "RC_DEPENDENCY" WITH NO DATA;
+
+INSERT INTO "RC_DEPENDENCY_OLD" ("RECIPE_ID", "CATEGORY_ID")
+  SELECT "RECIPE_ID", "CATEGORY_ID" FROM "RC_DEPENDENCY";
+
+DROP TABLE "RC_DEPENDENCY";
+
+CREATE TABLE "RC_DEPENDENCY"(
+  "RECIPE_ID" BIGINT NOT NULL REFERENCES RECIPE (ID) ON DELETE CASCADE,
+  "CATEGORY_ID" BIGINT NOT NULL REFERENCES CATEGORY (ID) ON DELETE CASCADE,
+  CONSTRAINT "RC_DEPENDENCY_PK" PRIMARY KEY ("RECIPE_ID", "CATEGORY_ID")
+);
+
+INSERT INTO "RC_DEPENDENCY" ("RECIPE_ID", "CATEGORY_ID")
+  SELECT "RECIPE_ID", "CATEGORY_ID" FROM "RC_DEPENDENCY_OLD";
+
+DROP TABLE "RC_DEPENDENCY_OLD";
+
+CREATE INDEX "RC_DEPENDENCY_CATEGORY_IDX" ON "RC_DEPENDENCY" ("CATEGORY_ID", "RECIPE_ID");
@@ -0,0 +1,10 @@
+-- Progress of resumable imports, saved in the transaction of every imported chunk.
+
+CREATE TABLE "IMPORT_CHECKPOINT"(
+  "NAME" VARCHAR(255) NOT NULL PRIMARY KEY,
+  "FILE" VARCHAR(1000) NOT NULL,
+  "FILE_OFFSET" BIGINT NOT NULL,
+  "RECORDS" BIGINT NOT NULL,
+  "IMPORTED" BIGINT NOT NULL,
+  "REJECTED" BIGINT NOT NULL
+);
@@ -0,0 +1,78 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class DataSourceFactoryTest {
+
+    private PooledDataSource ds;
+
+    @Before
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("url", "jdbc:derby:memory:pool-test;create=true");
+        properties.setProperty("maxTotal", "2");
+        properties.setProperty("maxWaitMillis", "100");
+        ds = DataSourceFactory.createPooledDataSource(properties);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        ds.close();
+    }
+
+    @Test
+    public void connectionsAreReused() throws SQLException {
+        for (int i = 0; i < 10; i++) {
+            try (Connection connection = ds.getConnection()) {
+                connection.prepareStatement("VALUES 1").executeQuery().close();
+            }
+        }
+
+        PoolMetrics metrics = ds.getMetrics();
+        assertThat(metrics.getBorrowed()).isEqualTo(10);
+        assertThat(metrics.getCreated()).isEqualTo(1);
+        assertThat(metrics.getActive()).isZero();
+        assertThat(metrics.getIdle()).isEqualTo(1);
+    }
+
+    @Test
+    public void exhaustedPool() throws SQLException {
+        try (Connection connection1 = ds.getConnection(); Connection connection2 = ds.getConnection()) {
+            assertThat(connection1.isValid(1)).isTrue();
+            assertThat(connection2.isValid(1)).isTrue();
+            assertThat(connection1).isNotSameAs(connection2);
+            assertThat(ds.getMetrics().getActive()).isEqualTo(2);
+
+            assertThat(catchThrowable(() -> ds.getConnection())).isInstanceOf(SQLException.class);
+        }
+        assertThat(ds.getMetrics().getMaxWaitMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(ds.getMetrics().getIdle()).isEqualTo(2);
+    }
+
+    @Test
+    public void metricsBeforeFirstConnection() {
+        assertThat(ds.getMetrics().getBorrowed()).isZero();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingUrl() {
+        DataSourceFactory.createPooledDataSource(new Properties());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumber() {
+        Properties properties = new Properties();
+        properties.setProperty("url", "jdbc:derby:memory:pool-test;create=true");
+        properties.setProperty("maxTotal", "many");
+        DataSourceFactory.createPooledDataSource(properties);
+    }
+}
@@ -0,0 +1,125 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class SchemaMigratorTest {
+
+    private DataSource ds;
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:migrator-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        ds = prepareDataSource();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(ds, RecipeManager.class.getResource("dropTables.sql"));
+    }
+
+    private void execute(String... sqlStatements) throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement()) {
+            for (String sql : sqlStatements) {
+                st.executeUpdate(sql);
+            }
+        }
+    }
+
+    private List<String> query(String sql) throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                result.add(rs.getString(1) + "," + rs.getString(2));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Schema as it was created before versioning
+     */
+    private void createLegacySchema() throws SQLException {
+        execute("CREATE TABLE CATEGORY(ID BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
+                        + "NAME VARCHAR(255) NOT NULL)",
+                "CREATE TABLE RECIPE(ID BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
+                        + "NAME VARCHAR(255) NOT NULL, RECIPE_PROCEDURE VARCHAR(1000) NOT NULL, DATE DATE)",
+                "CREATE TABLE RC_DEPENDENCY(RECIPE_ID BIGINT REFERENCES RECIPE (ID), "
+                        + "CATEGORY_ID BIGINT REFERENCES CATEGORY (ID))",
+                "CREATE TABLE INGREDIENTS(RECIPE_ID BIGINT REFERENCES RECIPE (ID) ON DELETE CASCADE, "
+                        + "NAME VARCHAR(255) NOT NULL)");
+    }
+
+    @Test
+    public void migrateEmptyDatabase() throws SQLException {
+        SchemaMigrator.migrate(ds);
+
+        assertThat(SchemaMigrator.getCurrentVersion(ds)).isEqualTo(SchemaMigrator.getLatestVersion());
+        assertThat(query("SELECT VERSION, DESCRIPTION FROM SCHEMA_VERSION"))
+                .containsExactly(SchemaMigrator.getLatestVersion() + ",import checkpoint");
+    }
+
+    @Test
+    public void migrateLegacyDatabaseKeepsData() throws SQLException {
+        createLegacySchema();
+        execute("INSERT INTO CATEGORY (NAME) VALUES ('Polévky')",
+                "INSERT INTO RECIPE (NAME, RECIPE_PROCEDURE) VALUES ('Vývar', 'Vařit')",
+                "INSERT INTO RC_DEPENDENCY VALUES (1, 1)",
+                "INSERT INTO RC_DEPENDENCY VALUES (1, 1)",
+                "INSERT INTO RC_DEPENDENCY VALUES (1, NULL)",
+                "INSERT INTO INGREDIENTS VALUES (1, 'voda')",
+                "INSERT INTO INGREDIENTS VALUES (1, 'voda')",
+                "INSERT INTO INGREDIENTS VALUES (1, 'maso')");
+
+        SchemaMigrator.migrate(ds);
+
+        assertThat(query("SELECT VERSION, DESCRIPTION FROM SCHEMA_VERSION ORDER BY VERSION"))
+                .containsExactly("1,schema before versioning", "2,indexes and keys", "3,ingredient dictionary",
+                        "4,recipe version", "5,cascade category links", "6,import checkpoint");
+        assertThat(query("SELECT NAME, VERSION FROM RECIPE")).containsExactly("Vývar,0");
+        assertThat(query("SELECT RECIPE_ID, CATEGORY_ID FROM RC_DEPENDENCY")).containsExactly("1,1");
+        assertThat(query("SELECT ri.RECIPE_ID, i.NAME FROM RECIPE_INGREDIENT ri "
+                + "JOIN INGREDIENT i ON i.ID = ri.INGREDIENT_ID ORDER BY i.NAME"))
+                .containsExactly("1,maso", "1,voda");
+
+        // link tables now have primary keys
+        Throwable thrown = catchThrowable(() -> execute("INSERT INTO RC_DEPENDENCY VALUES (1, 1)"));
+        assertThat(thrown).isInstanceOf(SQLException.class);
+        assertThat(((SQLException) thrown).getSQLState()).isEqualTo("23505");
+        // identity columns keep generating new ids
+        execute("INSERT INTO RECIPE (NAME, RECIPE_PROCEDURE) VALUES ('Guláš', 'Vařit')");
+        assertThat(query("SELECT ID, NAME FROM RECIPE ORDER BY ID")).containsExactly("1,Vývar", "2,Guláš");
+    }
+
+    @Test
+    public void migrateTwiceDoesNothing() throws SQLException {
+        createLegacySchema();
+        SchemaMigrator.migrate(ds);
+        SchemaMigrator.migrate(ds);
+
+        assertThat(query("SELECT VERSION, DESCRIPTION FROM SCHEMA_VERSION ORDER BY VERSION"))
+                .containsExactly("1,schema before versioning", "2,indexes and keys", "3,ingredient dictionary",
+                        "4,recipe version", "5,cascade category links", "6,import checkpoint");
+    }
+}
@@ -0,0 +1,144 @@
+package cz.muni.fi.pv168.recipeevidence.common;
+
+import cz.muni.fi.pv168.recipeevidence.impl.CountingDataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class TransactionContextTest {
+
+    private CountingDataSource ds;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource derby = new EmbeddedDataSource();
+        derby.setDatabaseName("memory:transaction-test");
+        derby.setCreateDatabase("create");
+        ds = new CountingDataSource(derby);
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE ITEM(NAME VARCHAR(255) NOT NULL)");
+        }
+        ds.reset();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("DROP TABLE ITEM");
+        }
+    }
+
+    /**
+     * Inserts item the way managers do, committing its own work
+     */
+    private void insert(String name) throws SQLException {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = TransactionContext.getConnection(ds);
+            conn.setAutoCommit(false);
+            st = conn.prepareStatement("INSERT INTO ITEM (NAME) VALUES (?)");
+            st.setString(1, name);
+            st.executeUpdate();
+            conn.commit();
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    private List<String> items() throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT NAME FROM ITEM ORDER BY NAME")) {
+            while (rs.next()) {
+                result.add(rs.getString(1));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void nestedWorkSharesConnectionAndCommitsOnce() throws SQLException {
+        List<String> committed = new ArrayList<>();
+        TransactionContext.execute(ds, connection -> {
+            insert("a");
+            TransactionContext.execute(ds, nested -> {
+                insert("b");
+                return null;
+            });
+            TransactionContext.afterCommit(ds, () -> committed.add("a,b"));
+            assertThat(committed).isEmpty();
+            return null;
+        });
+
+        assertThat(ds.getConnections()).isEqualTo(1);
+        assertThat(ds.getCommits()).isEqualTo(1);
+        assertThat(committed).containsExactly("a,b");
+        assertThat(TransactionContext.isActive(ds)).isFalse();
+        assertThat(items()).containsExactly("a", "b");
+    }
+
+    @Test
+    public void failureRollsBackNestedWork() throws SQLException {
+        List<String> committed = new ArrayList<>();
+        Throwable thrown = catchThrowable(() -> TransactionContext.execute(ds, connection -> {
+            insert("a");
+            TransactionContext.afterCommit(ds, () -> committed.add("a"));
+            throw new IllegalStateException("failure");
+        }));
+
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        assertThat(committed).isEmpty();
+        assertThat(TransactionContext.isActive(ds)).isFalse();
+        assertThat(items()).isEmpty();
+    }
+
+    @Test
+    public void rollbackOfParticipantRollsBackTransaction() throws SQLException {
+        List<String> committed = new ArrayList<>();
+        Throwable thrown = catchThrowable(() -> TransactionContext.execute(ds, connection -> {
+            insert("a");
+            Connection conn = TransactionContext.getConnection(ds);
+            try {
+                conn.setAutoCommit(false);
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("INSERT INTO ITEM (NAME) VALUES ('b')");
+                }
+                conn.rollback();
+            } finally {
+                conn.close();
+            }
+            TransactionContext.afterCommit(ds, () -> committed.add("a"));
+            return null;
+        }));
+
+        assertThat(thrown).isInstanceOf(SQLException.class);
+        assertThat(ds.getCommits()).isZero();
+        assertThat(committed).isEmpty();
+        assertThat(TransactionContext.isActive(ds)).isFalse();
+        assertThat(items()).isEmpty();
+    }
+
+    @Test
+    public void workOutsideTransaction() throws SQLException {
+        List<String> committed = new ArrayList<>();
+        insert("a");
+        TransactionContext.afterCommit(ds, () -> committed.add("a"));
+
+        assertThat(committed).containsExactly("a");
+        assertThat(items()).containsExactly("a");
+    }
+}
@@ -0,0 +1,61 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class CategoryIndexTest {
+
+    @Test
+    public void countRecipesInCategories() {
+        CategoryIndex index = new CategoryIndex();
+        index.add(1, 10);
+        index.add(2, 10);
+        index.add(200, 10);
+        index.add(2, 20);
+        index.add(3, 30);
+
+        assertThat(index.countRecipes(Arrays.asList(2L, 200L, 200L, 3L, 5000L, -1L)))
+                .containsExactly(entry(10L, 2), entry(20L, 1), entry(30L, 1));
+        assertThat(index.countRecipes(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void removeRecipesAndCategories() {
+        CategoryIndex index = new CategoryIndex();
+        index.add(1, 10);
+        index.add(1, 10);
+        index.add(2, 10);
+        index.add(2, 20);
+
+        index.remove(1, 10);
+        index.remove(1, 20);
+        assertThat(index.countRecipes(Arrays.asList(1L, 2L))).containsExactly(entry(10L, 1), entry(20L, 1));
+        index.removeRecipes(Collections.singleton(2L));
+        assertThat(index.countRecipes(Arrays.asList(1L, 2L))).isEmpty();
+        index.add(3, 20);
+        index.removeCategories(Collections.singleton(20L));
+        assertThat(index.countRecipes(Collections.singleton(3L))).isEmpty();
+    }
+
+    @Test
+    public void indexLoadedDuringChangeIsNotPublished() {
+        CategoryIndex index = CategoryIndex.forDataSource(new EmbeddedDataSource());
+        assertThat(index.isLoaded()).isFalse();
+
+        long token = index.startLoad();
+        index.add(1, 10);
+        assertThat(index.publish(token, new CategoryIndex())).isFalse();
+        assertThat(index.isLoaded()).isFalse();
+
+        CategoryIndex loaded = new CategoryIndex();
+        loaded.add(1, 10);
+        assertThat(index.publish(index.startLoad(), loaded)).isTrue();
+        assertThat(index.countRecipes(Collections.singleton(1L))).containsExactly(entry(10L, 1));
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.rules.ExpectedException;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -139,6 +140,77 @@ public class CategoryManagerImplTest {
         manager.deleteCategory(category);
     }
 
+    @Test
+    public void deleteCategories() {
+        Category category1 = sampleCategory1();
+        Category category2 = sampleCategory2();
+        manager.createCategory(category1);
+        manager.createCategory(category2);
+
+        assertThat(manager.deleteCategories(Arrays.asList(category1.getId(), category1.getId() + 100)))
+                .isEqualTo(1);
+
+        assertThat(manager.findAllCategories())
+                .usingFieldByFieldElementComparator()
+                .containsExactly(category2);
+    }
+
+    @Test
+    public void cachedLookupsDoNotTouchDatabase() {
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+        Category category1 = sampleCategory1();
+        Category category2 = sampleCategory2();
+        manager.createCategory(category1);
+        manager.createCategory(category2);
+        countingDataSource.reset();
+
+        assertThat(manager.findCategoryById(category1.getId())).isEqualToComparingFieldByField(category1);
+        assertThat(manager.findCategoryById(category2.getId())).isEqualToComparingFieldByField(category2);
+        assertThat(manager.findCategoryById(category2.getId() + 100)).isNull();
+        assertThat(manager.findCategoryByName(category2.getCategoryName()))
+                .isEqualToComparingFieldByField(category2);
+        assertThat(manager.findAllCategories()).hasSize(2);
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(manager.getCacheStats().getMisses()).isEqualTo(1);
+        assertThat(manager.getCacheStats().getHits()).isEqualTo(4);
+    }
+
+    @Test
+    public void cacheIsInvalidatedByChanges() {
+        Category category1 = sampleCategory1();
+        manager.createCategory(category1);
+        assertThat(manager.findAllCategories()).hasSize(1);
+
+        category1.setCategoryName("Nové jméno");
+        manager.updateCategory(category1);
+        assertThat(manager.findCategoryById(category1.getId())).isEqualToComparingFieldByField(category1);
+
+        Category category2 = sampleCategory2();
+        manager.createCategory(category2);
+        assertThat(manager.findCategoryByName(category2.getCategoryName())).isEqualToComparingFieldByField(category2);
+
+        manager.deleteCategory(category1);
+        assertThat(manager.findCategoryById(category1.getId())).isNull();
+    }
+
+    @Test
+    public void cachedCategoriesAreCopied() {
+        Category category1 = sampleCategory1();
+        manager.createCategory(category1);
+
+        manager.findCategoryById(category1.getId()).setCategoryName("Změněno");
+        manager.findAllCategories().get(0).setCategoryName("Změněno");
+
+        assertThat(manager.findCategoryById(category1.getId())).isEqualToComparingFieldByField(category1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteNullCategories() {
+        manager.deleteCategories(null);
+    }
+
     //--------------------------------------------------------------------------
     // Tests for RecipeManager.updateRecipe(Recipe) operation
     //--------------------------------------------------------------------------
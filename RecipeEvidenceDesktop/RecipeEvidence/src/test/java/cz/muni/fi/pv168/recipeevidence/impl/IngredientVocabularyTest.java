@@ -0,0 +1,38 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngredientVocabularyTest {
+
+    @Test
+    public void findSimilarIngredients() {
+        IngredientVocabulary vocabulary = new IngredientVocabulary();
+        vocabulary.add("rajčata");
+        vocabulary.add("rajče");
+        vocabulary.add("rajčatový protlak");
+        vocabulary.add("hladká mouka");
+        vocabulary.add("sůl");
+
+        assertThat(vocabulary.findSimilar("rajcata")).containsOnly("rajčata", "rajče");
+        assertThat(vocabulary.findSimilar("Rajčat")).containsOnly("rajčata", "rajče");
+        assertThat(vocabulary.findSimilar("mouka hladka")).isEmpty();
+        assertThat(vocabulary.findSimilar("hladka muka")).containsOnly("hladká mouka");
+        assertThat(vocabulary.findSimilar("sul")).containsOnly("sůl");
+        assertThat(vocabulary.findSimilar("sýr")).isEmpty();
+
+        vocabulary.remove("rajče");
+        assertThat(vocabulary.findSimilar("rajcata")).containsOnly("rajčata");
+    }
+
+    @Test
+    public void boundedEditDistance() {
+        assertThat(IngredientVocabulary.withinDistance("brambory", "brambory", 0)).isTrue();
+        assertThat(IngredientVocabulary.withinDistance("brambory", "bramobry", 2)).isTrue();
+        assertThat(IngredientVocabulary.withinDistance("brambory", "bramobry", 1)).isFalse();
+        assertThat(IngredientVocabulary.withinDistance("mrkev", "mrkve", 2)).isTrue();
+        assertThat(IngredientVocabulary.withinDistance("cibule", "cib", 2)).isFalse();
+        assertThat(IngredientVocabulary.withinDistance("", "ab", 2)).isTrue();
+    }
+}
@@ -13,11 +13,13 @@ import org.junit.rules.ExpectedException;
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.time.*;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 /**
  *
@@ -273,6 +275,53 @@ public class RCDependencyManagerImplTest {
         dependencyManager.createDependency(categoryNotInDB);
     }
 
+    @Test
+    public void createDependencyUsesOneStatement() {
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        dependencyManager.setDataSource(countingDataSource);
+
+        dependencyManager.createDependency(new RCDependencyBuilder().category(maso).recipe(recipe1).build());
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(2);
+        assertThat(countingDataSource.getStatements()).isEqualTo(2);
+        assertThat(dependencyManager.findRecipesInCategory(maso))
+                .usingFieldByFieldElementComparator().containsExactly(recipe1);
+    }
+
+    @Test
+    public void assignRecipesToCategory() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        dependencyManager.setDataSource(countingDataSource);
+
+        assertThat(dependencyManager.assignRecipesToCategory(maso,
+                Arrays.asList(recipe1, recipe2, recipe3, recipe2))).isEqualTo(2);
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(countingDataSource.getStatements()).isEqualTo(2);
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(dependencyManager.findRecipesInCategory(maso))
+                .usingFieldByFieldElementComparator().containsExactly(recipe1, recipe2, recipe3);
+        assertThat(dependencyManager.assignRecipesToCategory(maso, Arrays.asList(recipe1, recipe2))).isZero();
+    }
+
+    @Test
+    public void assignRecipeNotInDBToCategory() {
+        expectedException.expect(IllegalEntityException.class);
+        try {
+            dependencyManager.assignRecipesToCategory(maso, Arrays.asList(recipe1, recipeNotInDatabase));
+        } finally {
+            // verify that failure was atomic and no data was changed
+            assertThat(dependencyManager.findRecipesInCategory(maso)).isEmpty();
+        }
+    }
+
+    @Test(expected = IllegalEntityException.class)
+    public void assignRecipesToCategoryNotInDB() {
+        dependencyManager.assignRecipesToCategory(categoryNotInDatabase, Arrays.asList(recipe1, recipe2));
+    }
+
     //--------------------------------------------------------------------------
     // Tests for delete operation
     //--------------------------------------------------------------------------
@@ -405,4 +454,196 @@ public class RCDependencyManagerImplTest {
         assertThat(ok.get(0)).isEqualToComparingFieldByFieldRecursively(dependency1);
         assertThat(ok.get(1)).isEqualToComparingFieldByFieldRecursively(dependency2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findAllDependenciesMaterializesEntitiesOnce() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe1, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe2, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe3, emptyCategory);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        dependencyManager.setDataSource(countingDataSource);
+
+        List<RCDependency> dependencies = dependencyManager.findAllDependencies();
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(countingDataSource.getStatements()).isEqualTo(2);
+        assertThat(dependencies).hasSize(4);
+        assertThat(dependencies.get(0).getRecipe()).isSameAs(dependencies.get(1).getRecipe())
+                .isEqualToComparingFieldByField(recipe1);
+        assertThat(dependencies.get(0).getCategory()).isSameAs(dependencies.get(2).getCategory())
+                .isEqualToComparingFieldByField(maso);
+        assertThat(dependencies.get(1).getCategory()).isEqualToComparingFieldByField(omacky);
+        assertThat(dependencies.get(2).getRecipe()).isEqualToComparingFieldByField(recipe2);
+        assertThat(dependencies.get(3).getRecipe()).isEqualToComparingFieldByField(recipe3);
+    }
+
+    @Test
+    public void findRecipesInCategoryUsesOneConnection() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe2, maso);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        dependencyManager.setDataSource(countingDataSource);
+
+        assertThat(dependencyManager.findRecipesInCategory(maso))
+                .usingFieldByFieldElementComparator().containsExactly(recipe1, recipe2);
+        assertThat(dependencyManager.findCategoriesForRecipe(recipe1))
+                .usingFieldByFieldElementComparator().containsExactly(maso);
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(2);
+        assertThat(countingDataSource.getStatements()).isEqualTo(3);
+    }
+
+    @Test
+    public void findRecipesInAnyAndAllCategories() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe1, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe2, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe3, omacky);
+        Set<Category> categories = new HashSet<>(Arrays.asList(maso, omacky));
+
+        assertThat(dependencyManager.findRecipesInAnyCategory(categories))
+                .usingFieldByFieldElementComparator().containsExactly(recipe1, recipe2, recipe3);
+        assertThat(dependencyManager.findRecipesInAllCategories(categories))
+                .usingFieldByFieldElementComparator().containsExactly(recipe1);
+        categories.add(emptyCategory);
+        assertThat(dependencyManager.findRecipesInAllCategories(categories)).isEmpty();
+        assertThat(dependencyManager.findRecipesInAnyCategory(new HashSet<>())).isEmpty();
+        assertThat(dependencyManager.findRecipesInAllCategories(new HashSet<>())).isEmpty();
+    }
+
+    @Test
+    public void countRecipesInCategories() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe1, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe2, maso);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        dependencyManager.setDataSource(countingDataSource);
+        dependencyManager.loadCategoryIndex();
+        List<Long> recipeIds = Arrays.asList(recipe1.getId(), recipe2.getId(), recipe3.getId());
+
+        assertThat(dependencyManager.countRecipesInCategories(recipeIds))
+                .containsExactly(entry(maso.getId(), 2), entry(omacky.getId(), 1));
+        assertThat(dependencyManager.countRecipesInCategories(recipeIds)).hasSize(2);
+        // only the index was read
+        assertThat(countingDataSource.getStatements()).isEqualTo(1);
+
+        dependencyManager.setDataSource(ds);
+        dependencyManager.insertRecipeIntoCategory(recipe3, emptyCategory);
+        dependencyManager.deleteDependency(new RCDependencyBuilder().category(maso).recipe(recipe1).build());
+        assertThat(dependencyManager.countRecipesInCategories(recipeIds))
+                .containsExactly(entry(maso.getId(), 1), entry(omacky.getId(), 1), entry(emptyCategory.getId(), 1));
+
+        recipeManager.deleteRecipe(recipe2);
+        categoryManager.deleteCategory(omacky);
+        assertThat(dependencyManager.countRecipesInCategories(recipeIds))
+                .containsExactly(entry(emptyCategory.getId(), 1));
+    }
+
+    @Test
+    public void suggestCategories() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe2, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.loadCategoryIndex();
+
+        assertThat(categoryManager.suggestCategories("", 10)).containsExactly("Omacky", "Maso", "Jsem prazdna");
+        assertThat(categoryManager.suggestCategories("m", 10)).containsExactly("Maso");
+
+        dependencyManager.assignRecipesToCategory(maso, Arrays.asList(recipe2, recipe3));
+        maso.setCategoryName("Masa");
+        categoryManager.updateCategory(maso);
+        Category masove = new Category();
+        masove.setCategoryName("Masové");
+        categoryManager.createCategory(masove);
+        assertThat(categoryManager.suggestCategories("MAS", 10)).containsExactly("Masa", "Masové");
+
+        recipeManager.deleteRecipe(recipe1);
+        categoryManager.deleteCategory(omacky);
+        assertThat(categoryManager.suggestCategories("", 10)).containsExactly("Masa", "Jsem prazdna", "Masové");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countRecipesInCategoriesWithNullIds() {
+        dependencyManager.countRecipesInCategories(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void findRecipesInAnyOfNullCategories() {
+        dependencyManager.findRecipesInAnyCategory(null);
+    }
+
+    @Test(expected = IllegalEntityException.class)
+    public void findRecipesInAllCategoriesWithNullId() {
+        sampleNullIdCategory();
+        dependencyManager.findRecipesInAllCategories(new HashSet<>(Arrays.asList(maso, categoryWithNullId)));
+    }
+
+    @Test
+    public void deleteCategoryWithRecipesCommitsOnce() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe2, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe2, omacky);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        categoryManager.setDataSource(countingDataSource);
+
+        categoryManager.deleteCategory(maso);
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(categoryManager.findCategoryById(maso.getId())).isNull();
+        assertThat(dependencyManager.findCategoriesForRecipe(recipe2))
+                .usingFieldByFieldElementComparator().containsExactly(omacky);
+    }
+
+    @Test
+    public void deleteRecipeWithCategoriesCommitsOnce() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe1, omacky);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        recipeManager.setDataSource(countingDataSource);
+
+        recipeManager.deleteRecipe(recipe1);
+
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(recipeManager.findRecipeById(recipe1.getId())).isNull();
+        assertThat(dependencyManager.findRecipesInCategory(omacky)).isEmpty();
+    }
+
+    @Test
+    public void deleteRecipesWithCategories() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe2, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe2, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe3, omacky);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        recipeManager.setDataSource(countingDataSource);
+
+        assertThat(recipeManager.deleteRecipes(Arrays.asList(recipe1.getId(), recipe2.getId()))).isEqualTo(2);
+
+        assertThat(countingDataSource.getStatements()).isEqualTo(2);
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(dependencyManager.findRecipesInCategory(maso)).isEmpty();
+        assertThat(dependencyManager.findRecipesInCategory(omacky))
+                .usingFieldByFieldElementComparator().containsExactly(recipe3);
+    }
+
+    @Test
+    public void deleteCategoriesWithRecipes() {
+        dependencyManager.insertRecipeIntoCategory(recipe1, maso);
+        dependencyManager.insertRecipeIntoCategory(recipe2, omacky);
+        dependencyManager.insertRecipeIntoCategory(recipe2, emptyCategory);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        categoryManager.setDataSource(countingDataSource);
+
+        assertThat(categoryManager.deleteCategories(Arrays.asList(maso.getId(), omacky.getId()))).isEqualTo(2);
+
+        assertThat(countingDataSource.getStatements()).isEqualTo(1);
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(dependencyManager.findCategoriesForRecipe(recipe1)).isEmpty();
+        assertThat(dependencyManager.findCategoriesForRecipe(recipe2))
+                .usingFieldByFieldElementComparator().containsExactly(emptyCategory);
+        assertThat(recipeManager.findRecipeById(recipe1.getId())).isNotNull();
+    }
+}
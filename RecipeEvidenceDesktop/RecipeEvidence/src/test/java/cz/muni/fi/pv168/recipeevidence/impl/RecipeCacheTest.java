@@ -0,0 +1,111 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecipeCacheTest {
+
+    private static Recipe recipe(long id, String procedure) {
+        Recipe recipe = new Recipe();
+        recipe.setId(id);
+        recipe.setVersion(0L);
+        recipe.setName("Recept " + id);
+        recipe.setProcedure(procedure);
+        recipe.setIngredients(new HashSet<>(Arrays.asList("maso", "mrkev")));
+        recipe.markStored();
+        return recipe;
+    }
+
+    @Test
+    public void cachedRecipesAreCopied() {
+        RecipeCache cache = new RecipeCache(RecipeCache.DEFAULT_MAX_WEIGHT);
+        Recipe recipe = recipe(1, "Vařit");
+        cache.put(cache.startLoad(), recipe);
+        recipe.setName("Změněno");
+
+        Recipe cached = cache.get(1);
+        assertThat(cached.getName()).isEqualTo("Recept 1");
+        assertThat(cached.isDirty()).isFalse();
+        cached.getIngredients().add("sůl");
+        assertThat(cache.get(1).getIngredients()).containsOnly("maso", "mrkev");
+    }
+
+    @Test
+    public void cacheIsBoundedByWeight() {
+        long weight = RecipeCache.weigh(recipe(1, "Vařit"));
+        RecipeCache cache = new RecipeCache(3 * weight);
+        for (long id = 1; id <= 3; id++) {
+            cache.get(id);
+            cache.put(cache.startLoad(), recipe(id, "Vařit"));
+        }
+        // recipe 4 is requested more often than the least recently used recipe 1
+        cache.get(4);
+        cache.get(4);
+        cache.put(cache.startLoad(), recipe(4, "Vařit"));
+
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.get(4)).isNotNull();
+        assertThat(cache.getStats().getEvictions()).isEqualTo(1);
+        assertThat(cache.getStats().getWeight()).isEqualTo(3 * weight);
+
+        cache.put(cache.startLoad(), recipe(5, new String(new char[10000])));
+        assertThat(cache.get(5)).isNull();
+    }
+
+    @Test
+    public void rarelyRequestedRecipeDoesNotEvictFrequentOne() {
+        long weight = RecipeCache.weigh(recipe(1, "Vařit"));
+        RecipeCache cache = new RecipeCache(weight);
+        cache.get(1);
+        cache.put(cache.startLoad(), recipe(1, "Vařit"));
+        for (int i = 0; i < 5; i++) {
+            cache.get(1);
+        }
+
+        cache.get(2);
+        cache.put(cache.startLoad(), recipe(2, "Vařit"));
+
+        assertThat(cache.get(1)).isNotNull();
+        assertThat(cache.get(2)).isNull();
+    }
+
+    @Test
+    public void recipeIsNotAdmittedWhenLaterVictimIsRequestedMoreOften() {
+        long weight = RecipeCache.weigh(recipe(1, "Vařit"));
+        RecipeCache cache = new RecipeCache(2 * weight);
+        cache.get(1);
+        cache.put(cache.startLoad(), recipe(1, "Vařit"));
+        cache.get(2);
+        cache.put(cache.startLoad(), recipe(2, "Vařit"));
+        for (int i = 0; i < 5; i++) {
+            cache.get(2);
+        }
+
+        // recipe 3 needs space of both recipes, it is hotter than 1 but not than 2
+        for (int i = 0; i < 3; i++) {
+            cache.get(3);
+        }
+        cache.put(cache.startLoad(), recipe(3, "Vařit!"));
+
+        assertThat(cache.getStats().getEvictions()).isZero();
+        assertThat(cache.getStats().getWeight()).isEqualTo(2 * weight);
+        assertThat(cache.get(1)).isNotNull();
+        assertThat(cache.get(2)).isNotNull();
+    }
+
+    @Test
+    public void recipeLoadedBeforeInvalidationIsNotCached() {
+        RecipeCache cache = new RecipeCache(RecipeCache.DEFAULT_MAX_WEIGHT);
+        long token = cache.startLoad();
+        cache.invalidate(Collections.singleton(1L));
+        cache.put(token, recipe(1, "Vařit"));
+
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.getStats().getMisses()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,141 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.CategoryManager;
+import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecipeExporterTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2017, 5, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataSource ds;
+    private RecipeManagerImpl recipeManager;
+    private CategoryManagerImpl categoryManager;
+    private RCDependencyManagerImpl dependencyManager;
+    private RecipeExporter exporter;
+
+    @Before
+    public void setUp() throws SQLException {
+        ds = prepareDataSource("memory:recipeexport-test");
+        recipeManager = new RecipeManagerImpl(Clock.fixed(Instant.parse("2017-05-01T10:00:00Z"), ZoneId.of("UTC")));
+        recipeManager.setDataSource(ds);
+        categoryManager = new CategoryManagerImpl();
+        categoryManager.setDataSource(ds);
+        dependencyManager = new RCDependencyManagerImpl();
+        dependencyManager.setDataSource(ds);
+        exporter = new RecipeExporter();
+        exporter.setDataSource(ds);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(ds, CategoryManager.class.getResource("dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource(String name) throws SQLException {
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName(name);
+        dataSource.setCreateDatabase("create");
+        DBUtils.executeSqlScript(dataSource, RecipeManager.class.getResource("createTables.sql"));
+        return dataSource;
+    }
+
+    private void createCatalogue() {
+        Recipe svickova = recipe("Svíčková", "Maso \"na smetaně\",\npodáváme s knedlíkem", TODAY,
+                "smetana", "maso", "mrkev");
+        Recipe gulas = recipe("Guláš", "Vaříme", null, "maso", "cibule");
+        recipe("Palačinky", "Smažíme", TODAY, "mouka", "mléko");
+        Category maso = new Category(null, "Maso");
+        Category omacky = new Category(null, "Omáčky");
+        categoryManager.createCategory(omacky);
+        categoryManager.createCategory(maso);
+        categoryManager.createCategory(new Category(null, "Prázdná"));
+        dependencyManager.assignRecipesToCategory(maso, Arrays.asList(svickova, gulas));
+        dependencyManager.assignRecipesToCategory(omacky, Arrays.asList(svickova));
+    }
+
+    private Recipe recipe(String name, String procedure, LocalDate date, String... ingredients) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setProcedure(procedure);
+        recipe.setDate(date);
+        recipe.setIngredients(new HashSet<>(Arrays.asList(ingredients)));
+        recipeManager.createRecipe(recipe);
+        return recipe;
+    }
+
+    @Test
+    public void exportCsv() throws IOException {
+        createCatalogue();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(exporter.exportAll(out, RecipeFormat.CSV)).isEqualTo(3);
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(
+                "name,procedure,date,ingredients,categories\n"
+                        + "Svíčková,\"Maso \"\"na smetaně\"\",\npodáváme s knedlíkem\",2017-05-01,"
+                        + "maso;mrkev;smetana,Maso;Omáčky\n"
+                        + "Guláš,Vaříme,,cibule;maso,Maso\n"
+                        + "Palačinky,Smažíme,2017-05-01,mléko;mouka,\n");
+    }
+
+    @Test
+    public void exportEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(exporter.exportAll(out, RecipeFormat.JSON_LINES)).isEqualTo(0);
+        assertThat(out.toByteArray()).isEmpty();
+    }
+
+    @Test
+    public void exportAndImportJsonLines() throws IOException, SQLException {
+        createCatalogue();
+        Path file = folder.getRoot().toPath().resolve("recipes.jsonl");
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        exporter.exportAll(exported, RecipeFormat.JSON_LINES);
+        Files.write(file, exported.toByteArray());
+
+        DataSource copy = prepareDataSource("memory:recipeexport-copy");
+        try {
+            RecipeManagerImpl copyManager = new RecipeManagerImpl(
+                    Clock.fixed(Instant.parse("2017-05-01T10:00:00Z"), ZoneId.of("UTC")));
+            copyManager.setDataSource(copy);
+            RecipeImporter importer = new RecipeImporter(copyManager);
+            importer.setDataSource(copy);
+            assertThat(importer.importFile(file, RecipeFormat.JSON_LINES, null).getRecipesImported()).isEqualTo(3);
+
+            RecipeExporter copyExporter = new RecipeExporter();
+            copyExporter.setDataSource(copy);
+            ByteArrayOutputStream reexported = new ByteArrayOutputStream();
+            copyExporter.exportAll(reexported, RecipeFormat.JSON_LINES);
+            assertThat(new String(reexported.toByteArray(), StandardCharsets.UTF_8))
+                    .isEqualTo(new String(exported.toByteArray(), StandardCharsets.UTF_8));
+        } finally {
+            DBUtils.executeSqlScript(copy, CategoryManager.class.getResource("dropTables.sql"));
+        }
+    }
+}
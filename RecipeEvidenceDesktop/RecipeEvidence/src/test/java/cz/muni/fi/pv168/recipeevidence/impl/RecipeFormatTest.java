@@ -0,0 +1,86 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RecipeFormatTest {
+
+    @Test
+    public void parseCsv() {
+        RecipeRecord record = RecipeFormat.CSV.parse(
+                "Svíčková,\"Maso \"\"na smetaně\"\",\nomáčka\",2017-05-01,maso; mrkev ;,Maso;Omáčky");
+
+        assertThat(record.getRecipe().getName()).isEqualTo("Svíčková");
+        assertThat(record.getRecipe().getProcedure()).isEqualTo("Maso \"na smetaně\",\nomáčka");
+        assertThat(record.getRecipe().getDate()).isEqualTo(LocalDate.of(2017, 5, 1));
+        assertThat(record.getRecipe().getIngredients()).containsExactly("maso", "mrkev");
+        assertThat(record.getCategories()).containsExactly("Maso", "Omáčky");
+
+        assertThat(RecipeFormat.CSV.parse("Guláš,Vaříme,,,").getRecipe().getDate()).isNull();
+        assertThatThrownBy(() -> RecipeFormat.CSV.parse("Guláš,Vaříme"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RecipeFormat.CSV.parse("Guláš,\"Vaříme,,,"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void parseJsonLines() {
+        RecipeRecord record = RecipeFormat.JSON_LINES.parse("{\"id\": 7, \"name\": \"Sv\\u00ed\\u010dkov\\u00e1\", "
+                + "\"procedure\": \"Maso\\n\\\"na smetaně\\\"\", \"date\": null, "
+                + "\"ingredients\": [\"maso\", \"mrkev\"], \"categories\": [\"Maso\"]}");
+
+        assertThat(record.getRecipe().getName()).isEqualTo("Svíčková");
+        assertThat(record.getRecipe().getProcedure()).isEqualTo("Maso\n\"na smetaně\"");
+        assertThat(record.getRecipe().getDate()).isNull();
+        assertThat(record.getRecipe().getIngredients()).containsExactly("maso", "mrkev");
+        assertThat(record.getCategories()).containsExactly("Maso");
+
+        assertThat(RecipeFormat.JSON_LINES.parse("{\"name\": \"Guláš\"}").getRecipe().getIngredients()).isNull();
+        assertThatThrownBy(() -> RecipeFormat.JSON_LINES.parse("{\"name\": [\"Guláš\"]}"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RecipeFormat.JSON_LINES.parse("{\"name\": \"Guláš\""))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void writeAndParse() throws IOException {
+        Recipe recipe = new Recipe();
+        recipe.setName("Svíčková, \"pravá\"");
+        recipe.setProcedure("Maso\r\nna smetaně\t\\ \u0001");
+        recipe.setDate(LocalDate.of(2017, 5, 1));
+        recipe.setIngredients(new LinkedHashSet<>(Arrays.asList("maso", "smetana")));
+        RecipeRecord record = new RecipeRecord(recipe, new LinkedHashSet<>(Arrays.asList("Maso", "Omáčky")));
+
+        StringBuilder csv = new StringBuilder();
+        RecipeFormat.CSV.write(record, csv);
+        assertThat(csv.toString()).isEqualTo("\"Svíčková, \"\"pravá\"\"\",\"Maso\r\nna smetaně\t\\ \u0001\","
+                + "2017-05-01,maso;smetana,Maso;Omáčky");
+        StringBuilder json = new StringBuilder();
+        RecipeFormat.JSON_LINES.write(record, json);
+        assertThat(json.toString()).isEqualTo("{\"name\":\"Svíčková, \\\"pravá\\\"\","
+                + "\"procedure\":\"Maso\\r\\nna smetaně\\t\\\\ \\u0001\",\"date\":\"2017-05-01\","
+                + "\"ingredients\":[\"maso\",\"smetana\"],\"categories\":[\"Maso\",\"Omáčky\"]}");
+
+        for (RecipeFormat format : RecipeFormat.values()) {
+            StringBuilder out = new StringBuilder();
+            format.write(record, out);
+            RecipeRecord parsed = format.parse(out.toString());
+            assertThat(parsed.getRecipe())
+                    .isEqualToComparingOnlyGivenFields(recipe, "name", "procedure", "date", "ingredients");
+            assertThat(parsed.getCategories()).isEqualTo(record.getCategories());
+        }
+
+        recipe.setDate(null);
+        StringBuilder out = new StringBuilder();
+        RecipeFormat.JSON_LINES.write(new RecipeRecord(recipe, Collections.emptySet()), out);
+        assertThat(RecipeFormat.JSON_LINES.parse(out.toString()).getRecipe().getDate()).isNull();
+    }
+}
@@ -0,0 +1,176 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.CategoryManager;
+import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RecipeImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataSource ds;
+    private RecipeManagerImpl recipeManager;
+    private CategoryManagerImpl categoryManager;
+    private RCDependencyManagerImpl dependencyManager;
+    private RecipeImporter importer;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:recipeimport-test");
+        dataSource.setCreateDatabase("create");
+        ds = dataSource;
+        DBUtils.executeSqlScript(ds, RecipeManager.class.getResource("createTables.sql"));
+        recipeManager = new RecipeManagerImpl(Clock.fixed(Instant.parse("2017-05-01T10:00:00Z"), ZoneId.of("UTC")));
+        recipeManager.setDataSource(ds);
+        categoryManager = new CategoryManagerImpl();
+        categoryManager.setDataSource(ds);
+        dependencyManager = new RCDependencyManagerImpl();
+        dependencyManager.setDataSource(ds);
+        importer = new RecipeImporter(recipeManager);
+        importer.setDataSource(ds);
+        importer.setParserThreads(3);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(ds, CategoryManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void importCsv() throws IOException {
+        Category maso = new Category(null, "Maso");
+        categoryManager.createCategory(maso);
+        Path file = write("recipes.csv",
+                "name,procedure,date,ingredients,categories",
+                "Svíčková,\"Maso \"\"na smetaně\"\",",
+                "podáváme s knedlíkem\",2017-05-01,maso;mrkev,Maso;Omáčky",
+                "Guláš,Vaříme,,maso;cibule,Maso",
+                "Starý recept,Vaříme,2016-01-01,maso,Maso",
+                "Rozbitý,Vaříme",
+                "Rozbitý také,Vaříme,",
+                "Palačinky,Smažíme,,mouka;mléko,");
+        importer.setChunkSize(2);
+
+        ImportProgress progress = importer.importFile(file, RecipeFormat.CSV, null);
+
+        assertThat(progress.getRecordsRead()).isEqualTo(6);
+        assertThat(progress.getRecipesImported()).isEqualTo(3);
+        assertThat(progress.getRecordsRejected()).isEqualTo(3);
+        assertThat(progress.getFractionRead()).isEqualTo(1.0);
+        assertThat(names(recipeManager.findAllRecipes())).containsExactly("Svíčková", "Guláš", "Palačinky");
+        assertThat(recipeManager.findRecipeByName("Svíčková").get(0).getProcedure())
+                .isEqualTo("Maso \"na smetaně\",\npodáváme s knedlíkem");
+        assertThat(names(dependencyManager.findRecipesInCategory(maso))).containsExactly("Svíčková", "Guláš");
+        Category omacky = categoryManager.findCategoryByName("Omáčky");
+        assertThat(names(dependencyManager.findRecipesInCategory(omacky))).containsExactly("Svíčková");
+        assertThat(names(recipeManager.findRecipeByIngredients(Collections.singleton("maso"))))
+                .containsExactly("Svíčková", "Guláš");
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add("{\"name\": \"Recept " + i + "\", \"procedure\": \"Vaříme\", \"ingredients\": [\"sůl\"], "
+                    + "\"categories\": [\"Kategorie " + i % 3 + "\"]}");
+        }
+        Path file = write("recipes.jsonl", lines.toArray(new String[0]));
+        String checkpoint = "import";
+        importer.setChunkSize(3);
+        importer.setQueueCapacity(1);
+        importer.setProgressListener(progress -> {
+            if (progress.getRecipesImported() == 6) {
+                throw new IllegalStateException("crash");
+            }
+        });
+        assertThatThrownBy(() -> importer.importFile(file, RecipeFormat.JSON_LINES, checkpoint))
+                .hasMessage("crash");
+        assertThat(recipeManager.countRecipes()).isEqualTo(6);
+
+        importer.setProgressListener(progress -> { });
+        ImportProgress progress = importer.importFile(file, RecipeFormat.JSON_LINES, checkpoint);
+        assertThat(progress.getRecipesImported()).isEqualTo(10);
+        assertThat(progress.getRecordsRead()).isEqualTo(10);
+        assertThat(recipeManager.countRecipes()).isEqualTo(10);
+        assertThat(categoryManager.findAllCategories()).hasSize(3);
+        assertThat(dependencyManager.findRecipesInCategory(categoryManager.findCategoryByName("Kategorie 0")))
+                .hasSize(4);
+
+        // finished import is not repeated
+        progress = importer.importFile(file, RecipeFormat.JSON_LINES, checkpoint);
+        assertThat(progress.getRecipesImported()).isEqualTo(10);
+        assertThat(recipeManager.countRecipes()).isEqualTo(10);
+    }
+
+    @Test
+    public void failedChunkDoesNotMoveCheckpoint() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            lines.add("{\"name\": \"Recept " + i + "\", \"procedure\": \"Vaříme\", \"ingredients\": []}");
+        }
+        // procedure is longer than its column, the second chunk fails in the database
+        lines.set(4, "{\"name\": \"Recept 4\", \"procedure\": \"" + new String(new char[1001]).replace('\0', 'x')
+                + "\", \"ingredients\": []}");
+        Path file = write("recipes.jsonl", lines.toArray(new String[0]));
+        importer.setChunkSize(3);
+        importer.setQueueCapacity(1);
+        assertThatThrownBy(() -> importer.importFile(file, RecipeFormat.JSON_LINES, "import"))
+                .isInstanceOf(ServiceFailureException.class);
+        assertThat(recipeManager.countRecipes()).isEqualTo(3);
+
+        lines.set(4, "{\"name\": \"Recept 4\", \"procedure\": \"Vaříme\", \"ingredients\": []}");
+        write("recipes.jsonl", lines.toArray(new String[0]));
+        ImportProgress progress = importer.importFile(file, RecipeFormat.JSON_LINES, "import");
+        assertThat(progress.getRecipesImported()).isEqualTo(9);
+        assertThat(names(recipeManager.findAllRecipes())).containsExactlyInAnyOrder(
+                "Recept 0", "Recept 1", "Recept 2", "Recept 3", "Recept 4", "Recept 5", "Recept 6", "Recept 7",
+                "Recept 8");
+    }
+
+    @Test
+    public void checkpointOfAnotherFile() throws IOException {
+        String checkpoint = "import";
+        Path first = write("first.jsonl", "{\"name\": \"A\", \"procedure\": \"B\", \"ingredients\": []}");
+        Path second = write("second.jsonl", "{\"name\": \"C\", \"procedure\": \"D\", \"ingredients\": []}");
+        importer.importFile(first, RecipeFormat.JSON_LINES, checkpoint);
+
+        assertThatThrownBy(() -> importer.importFile(second, RecipeFormat.JSON_LINES, checkpoint))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String> names(List<Recipe> recipes) {
+        return recipes.stream().map(Recipe::getName).collect(Collectors.toList());
+    }
+}
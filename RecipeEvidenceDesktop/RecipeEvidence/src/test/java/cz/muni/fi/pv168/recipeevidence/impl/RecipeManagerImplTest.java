@@ -8,10 +8,18 @@ import org.junit.*;
 import org.junit.rules.ExpectedException;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -135,6 +143,80 @@ public class RecipeManagerImplTest {
         manager.createRecipe(recipe);
     }
 
+    @Test
+    public void createRecipeWithManyIngredients() {
+        Recipe recipe = sampleRecipe1();
+        for (int i = 0; i < 50; i++) {
+            recipe.getIngredients().add("ingredience " + i);
+        }
+        manager.createRecipe(recipe);
+
+        assertThat(manager.findRecipeById(recipe.getId()))
+                .isEqualToComparingFieldByField(recipe);
+    }
+
+    @Test
+    public void sharedIngredientsAreStoredOnce() throws SQLException {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        manager.createRecipe(recipe1);
+        manager.createRecipes(Arrays.asList(recipe2));
+        recipe1.getIngredients().add("strouhanka");
+        manager.updateRecipe(recipe1);
+
+        // maso, mrkev, strouhanka
+        assertThat(countRows("INGREDIENT")).isEqualTo(3);
+        assertThat(countRows("RECIPE_INGREDIENT")).isEqualTo(5);
+        assertThat(manager.findRecipeById(recipe1.getId()))
+                .isEqualToComparingFieldByField(recipe1);
+    }
+
+    private int countRows(String table) throws SQLException {
+        try (Connection connection = ds.getConnection();
+             PreparedStatement st = connection.prepareStatement("SELECT COUNT(*) FROM " + table)) {
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // Tests for RecipeManager.createRecipes(Collection) operation
+    //--------------------------------------------------------------------------
+
+    @Test
+    public void createRecipes() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        manager.createRecipes(Arrays.asList(recipe1, recipe2));
+
+        assertThat(recipe1.getId()).isNotNull();
+        assertThat(recipe2.getId()).isNotNull().isNotEqualTo(recipe1.getId());
+        assertThat(manager.findAllRecipes())
+                .usingFieldByFieldElementComparator()
+                .containsOnly(recipe1, recipe2);
+    }
+
+    @Test
+    public void createRecipesWithInvalidRecipe() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        recipe2.setName(null);
+
+        expectedException.expect(IllegalArgumentException.class);
+        try {
+            manager.createRecipes(Arrays.asList(recipe1, recipe2));
+        } finally {
+            assertThat(recipe1.getId()).isNull();
+            assertThat(manager.findAllRecipes()).isEmpty();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createNullRecipes() {
+        manager.createRecipes(null);
+    }
+
     //--------------------------------------------------------------------------
     // Tests for RecipeManager.deleteRecipe(Recipe) operation
     //--------------------------------------------------------------------------
@@ -179,6 +261,31 @@ public class RecipeManagerImplTest {
         manager.deleteRecipe(recipe);
     }
 
+    @Test
+    public void deleteRecipes() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        Recipe recipe3 = sampleRecipe2();
+        manager.createRecipes(Arrays.asList(recipe1, recipe2, recipe3));
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("maso"))).hasSize(3);
+
+        int count = manager.deleteRecipes(Arrays.asList(recipe1.getId(), recipe3.getId(), recipe3.getId() + 100));
+
+        assertThat(count).isEqualTo(2);
+        assertThat(manager.findAllRecipes())
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("maso")))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+        assertThat(manager.deleteRecipes(Collections.emptyList())).isZero();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteRecipesWithNullId() {
+        manager.deleteRecipes(Arrays.asList(1L, null));
+    }
+
 
     //--------------------------------------------------------------------------
     // Tests for RecipeManager.updateRecipe(Recipe) operation
@@ -220,6 +327,152 @@ public class RecipeManagerImplTest {
         testUpdateRecipe((recipe) -> recipe.setIngredients(updateIngredients));
     }
 
+    @Test
+    public void updateIngredientsCommitsOnce() {
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+
+        recipe.setName("New name");
+        recipe.getIngredients().remove("mrkev");
+        for (int i = 0; i < 10; i++) {
+            recipe.getIngredients().add("ingredience " + i);
+        }
+        manager.updateRecipe(recipe);
+
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(manager.findRecipeById(recipe.getId()))
+                .isEqualToComparingFieldByField(recipe);
+    }
+
+    @Test
+    public void findRecipeByIdIsCached() {
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        manager.findRecipeById(recipe.getId());
+        countingDataSource.reset();
+
+        Recipe found = manager.findRecipeById(recipe.getId());
+        assertThat(found).isEqualToComparingFieldByField(recipe);
+        assertThat(countingDataSource.getConnections()).isZero();
+        assertThat(manager.getRecipeCacheStats().getHits()).isEqualTo(1);
+
+        // callers cannot change the cached recipe
+        found.setName("Changed");
+        found.getIngredients().add("sůl");
+        assertThat(manager.findRecipeById(recipe.getId())).isEqualToComparingFieldByField(recipe);
+
+        recipe.setName("New name");
+        manager.updateRecipe(recipe);
+        assertThat(manager.findRecipeById(recipe.getId())).isEqualToComparingFieldByField(recipe);
+
+        manager.deleteRecipe(recipe);
+        assertThat(manager.findRecipeById(recipe.getId())).isNull();
+    }
+
+    @Test
+    public void failedUpdateLeavesRecipeUnchanged() {
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        Recipe changed = manager.findRecipeById(recipe.getId());
+        changed.setName("New name");
+        changed.getIngredients().remove("mrkev");
+        // too long for the dictionary column, fails after the row update
+        changed.getIngredients().add(String.join("", Collections.nCopies(300, "x")));
+
+        expectedException.expect(ServiceFailureException.class);
+        try {
+            manager.updateRecipe(changed);
+        } finally {
+            assertThat(manager.findRecipeById(recipe.getId()))
+                    .isEqualToComparingFieldByField(recipe);
+        }
+    }
+
+    @Test
+    public void updateRecipeChangesWritesOnlyChangedColumns() {
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        Recipe loaded = manager.findRecipeById(recipe.getId());
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+
+        loaded.setName("New name");
+        manager.updateRecipeChanges(loaded);
+
+        assertThat(countingDataSource.getStatements()).isEqualTo(1);
+        assertThat(countingDataSource.getCommits()).isEqualTo(1);
+        assertThat(loaded.isDirty()).isFalse();
+        assertThat(manager.findRecipeById(recipe.getId()))
+                .isEqualToComparingFieldByField(loaded);
+    }
+
+    @Test
+    public void updateRecipeChangesOfIngredients() {
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+
+        recipe.getIngredients().remove("mrkev");
+        recipe.getIngredients().add("brambory");
+        manager.updateRecipeChanges(recipe);
+        assertThat(manager.findRecipeById(recipe.getId()))
+                .isEqualToComparingFieldByField(recipe);
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("brambory")))
+                .usingFieldByFieldElementComparator()
+                .containsOnly(recipe);
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("mrkev"))).isEmpty();
+
+        countingDataSource.reset();
+        manager.updateRecipeChanges(recipe);
+        assertThat(countingDataSource.getConnections()).isZero();
+    }
+
+    @Test
+    public void updateRecipeChangesOfStaleRecipe() {
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        Recipe first = manager.findRecipeById(recipe.getId());
+        Recipe second = manager.findRecipeById(recipe.getId());
+        first.setName("First");
+        manager.updateRecipeChanges(first);
+
+        second.setProcedure("Second");
+        expectedException.expect(OptimisticLockException.class);
+        try {
+            manager.updateRecipeChanges(second);
+        } finally {
+            assertThat(manager.findRecipeById(recipe.getId()))
+                    .isEqualToComparingFieldByField(first);
+        }
+    }
+
+    @Test
+    public void updateStaleRecipe() {
+        Recipe recipe = sampleRecipe1();
+        manager.createRecipe(recipe);
+        Recipe stale = manager.findRecipeById(recipe.getId());
+        recipe.setName("First");
+        manager.updateRecipe(recipe);
+
+        stale.setName("Second");
+        expectedException.expect(OptimisticLockException.class);
+        manager.updateRecipe(stale);
+    }
+
+    @Test
+    public void updateRecipeChangesOfNotStoredRecipe() {
+        Recipe recipe = sampleRecipe1();
+        recipe.setId(1L);
+
+        expectedException.expect(IllegalEntityException.class);
+        manager.updateRecipeChanges(recipe);
+    }
+
     @Test
     public void updateProcedure() {
         testUpdateRecipe((recipe) -> recipe.setProcedure("Změna receptury"));
@@ -289,6 +542,120 @@ public class RecipeManagerImplTest {
                 .usingFieldByFieldElementComparator()
                 .containsOnly(recipe1,recipe2);
     }
+    @Test
+    public void findAllRecipesUsesSingleQuery() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        Recipe recipe3 = sampleRecipe2();
+        recipe3.setIngredients(new HashSet<>());
+        manager.createRecipes(Arrays.asList(recipe1, recipe2, recipe3));
+
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+
+        assertThat(manager.findAllRecipes())
+                .usingFieldByFieldElementComparator()
+                .containsOnly(recipe1, recipe2, recipe3);
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(countingDataSource.getStatements()).isEqualTo(1);
+    }
+
+    @Test
+    public void streamAllRecipes() {
+        try (Stream<Recipe> stream = manager.streamAllRecipes()) {
+            assertThat(stream.count()).isZero();
+        }
+
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        Recipe recipe3 = sampleRecipe2();
+        recipe3.setIngredients(new HashSet<>());
+        manager.createRecipes(Arrays.asList(recipe1, recipe2, recipe3));
+
+        try (Stream<Recipe> stream = manager.streamAllRecipes()) {
+            assertThat(stream.collect(Collectors.toList()))
+                    .usingFieldByFieldElementComparator()
+                    .containsExactly(recipe1, recipe2, recipe3);
+        }
+        try (Stream<Recipe> stream = manager.streamAllRecipes()) {
+            assertThat(stream.findFirst().get())
+                    .isEqualToComparingFieldByField(recipe1);
+        }
+        // closed streams released their connections, so tables can be dropped
+    }
+
+    @Test
+    public void findRecipesByPages() {
+        Recipe svickova = sampleRecipe1();
+        Recipe rizek = sampleRecipe2();
+        Recipe bramboraky = sampleRecipe2();
+        bramboraky.setName("Bramboráky");
+        Recipe gulas = sampleRecipe1();
+        gulas.setName("Guláš");
+        manager.createRecipes(Arrays.asList(svickova, rizek, bramboraky, gulas));
+        assertThat(manager.countRecipes()).isEqualTo(4);
+
+        List<Recipe> firstPage = manager.findRecipes(null, 3, RecipeSortKey.ID);
+        assertThat(firstPage)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(svickova, rizek, bramboraky);
+        assertThat(manager.findRecipes(firstPage.get(2), 3, RecipeSortKey.ID))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(gulas);
+
+        List<Recipe> byName = manager.findRecipes(null, 2, RecipeSortKey.NAME);
+        assertThat(byName)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(bramboraky, gulas);
+        assertThat(manager.findRecipes(byName.get(1), 2, RecipeSortKey.NAME))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(svickova, rizek);
+        assertThat(manager.findRecipes(rizek, 2, RecipeSortKey.NAME)).isEmpty();
+    }
+
+    @Test
+    public void findRecipesWithSameNamesByPages() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe1();
+        Recipe recipe3 = sampleRecipe1();
+        manager.createRecipes(Arrays.asList(recipe1, recipe2, recipe3));
+
+        assertThat(manager.findRecipes(recipe1, 1, RecipeSortKey.NAME))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+        assertThat(manager.findRecipes(recipe2, 5, RecipeSortKey.NAME))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe3);
+    }
+
+    @Test
+    public void findRecipesAfterDeletedRecipe() {
+        Recipe svickova = sampleRecipe1();
+        Recipe rizek = sampleRecipe2();
+        Recipe bramboraky = sampleRecipe2();
+        bramboraky.setName("Bramboráky");
+        Recipe gulas = sampleRecipe1();
+        gulas.setName("Guláš");
+        manager.createRecipes(Arrays.asList(svickova, rizek, bramboraky, gulas));
+
+        List<Recipe> byName = manager.findRecipes(null, 2, RecipeSortKey.NAME);
+        manager.deleteRecipe(byName.get(1));
+        assertThat(manager.findRecipes(byName.get(1), 2, RecipeSortKey.NAME))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(svickova, rizek);
+
+        List<Recipe> byId = manager.findRecipes(null, 2, RecipeSortKey.ID);
+        manager.deleteRecipe(byId.get(1));
+        assertThat(manager.findRecipes(byId.get(1), 2, RecipeSortKey.ID))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(bramboraky);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void findRecipesWithZeroLimit() {
+        manager.findRecipes(null, 0, RecipeSortKey.ID);
+    }
+
     /**
      @Test
      public void testFindRecipeByName() throws Exception {
@@ -335,6 +702,97 @@ public class RecipeManagerImplTest {
                 .containsOnly(recipeWithDesiredIngredients1, recipeWithDesiredIngredients2);
     }
 
+    @Test
+    public void ingredientIndexIsSharedByManagersOfDataSource() {
+        Recipe recipe1 = sampleRecipe1();
+        manager.createRecipe(recipe1);
+        RecipeManagerImpl other = new RecipeManagerImpl(prepareClockMock(NOW));
+        other.setDataSource(ds);
+        assertThat(other.findRecipeByIngredients(Collections.singleton("maso"))).hasSize(1);
+
+        Recipe recipe2 = sampleRecipe1();
+        manager.createRecipe(recipe2);
+        manager.deleteRecipe(recipe1);
+        assertThat(other.findRecipeByIngredients(Collections.singleton("maso")))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+    }
+
+    @Test
+    public void findRecipeByIngredientsUsesSingleQuery() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        Recipe recipe3 = sampleRecipe1();
+        recipe3.getIngredients().add("petržel");
+        manager.createRecipes(Arrays.asList(recipe1, recipe2, recipe3));
+
+        CountingDataSource countingDataSource = new CountingDataSource(ds);
+        manager.setDataSource(countingDataSource);
+        manager.loadIngredientIndex();
+        countingDataSource.reset();
+
+        Set<String> wanted = new HashSet<>(Arrays.asList("maso", "mrkev"));
+        assertThat(manager.findRecipeByIngredients(wanted))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1, recipe3);
+        assertThat(countingDataSource.getConnections()).isEqualTo(1);
+        assertThat(countingDataSource.getStatements()).isEqualTo(1);
+
+        countingDataSource.reset();
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("Nic"))).isEmpty();
+        assertThat(countingDataSource.getConnections()).isZero();
+    }
+
+    @Test
+    public void findRecipeByIngredientsAfterChanges() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        manager.createRecipe(recipe1);
+        Set<String> maso = Collections.singleton("maso");
+        assertThat(manager.findRecipeByIngredients(maso))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1);
+
+        manager.createRecipe(recipe2);
+        assertThat(manager.findRecipeByIngredients(maso))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1, recipe2);
+
+        recipe1.setIngredients(new HashSet<>(Arrays.asList("mrkev", "petržel")));
+        manager.updateRecipe(recipe1);
+        assertThat(manager.findRecipeByIngredients(maso))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("petržel")))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1);
+
+        manager.deleteRecipe(recipe2);
+        assertThat(manager.findRecipeByIngredients(maso)).isEmpty();
+    }
+
+    @Test
+    public void findRecipeBySimilarIngredients() {
+        Recipe recipe1 = sampleRecipe1();
+        recipe1.setIngredients(new HashSet<>(Arrays.asList("rajčata", "hovězí maso")));
+        Recipe recipe2 = sampleRecipe2();
+        recipe2.setIngredients(new HashSet<>(Arrays.asList("rajče", "vepřové maso")));
+        manager.createRecipe(recipe1);
+        manager.createRecipe(recipe2);
+
+        Set<String> rajcata = Collections.singleton("rajcata");
+        assertThat(manager.findRecipeByIngredients(rajcata)).isEmpty();
+        assertThat(manager.findRecipeByIngredients(rajcata, IngredientMatch.SIMILAR))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1, recipe2);
+        assertThat(manager.findRecipeByIngredients(new HashSet<>(Arrays.asList("rajcata", "hovezi maso")),
+                IngredientMatch.SIMILAR))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1);
+        assertThat(manager.findRecipeByIngredients(Collections.singleton("okurka"), IngredientMatch.SIMILAR))
+                .isEmpty();
+    }
+
     @Test
     public void testFindRecipeByNullIngredients() throws Exception {
         expectedException.expect(IllegalArgumentException.class);
@@ -342,6 +800,84 @@ public class RecipeManagerImplTest {
     }
 
 
+    @Test
+    public void textIndexIsSharedByManagersOfDataSource() {
+        Recipe recipe1 = sampleRecipe1();
+        manager.createRecipe(recipe1);
+        RecipeManagerImpl other = new RecipeManagerImpl(prepareClockMock(NOW));
+        other.setDataSource(ds);
+        assertThat(other.searchRecipes("svíčková", 10)).hasSize(1);
+
+        Recipe recipe2 = sampleRecipe2();
+        manager.createRecipe(recipe2);
+        assertThat(other.searchRecipes("řízek", 10))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+        manager.deleteRecipe(recipe1);
+        assertThat(other.searchRecipes("svíčková", 10)).isEmpty();
+    }
+
+    @Test
+    public void searchRecipes() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        manager.createRecipe(recipe1);
+        manager.createRecipe(recipe2);
+
+        // diacritics and case endings are ignored, the name weighs more than the procedure
+        assertThat(manager.searchRecipes("SVICKOVA", 10))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1);
+        assertThat(manager.searchRecipes("řízku osmahneme", 10))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe2);
+        assertThat(manager.searchRecipes("svíčková řízek", 1)).hasSize(1);
+        assertThat(manager.searchRecipes("a se", 10)).isEmpty();
+
+        recipe2.setProcedure("Podáváme se svíčkovou omáčkou");
+        manager.updateRecipe(recipe2);
+        assertThat(manager.searchRecipes("osmahneme", 10)).isEmpty();
+        assertThat(manager.searchRecipes("svíčkové", 10))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1, recipe2);
+
+        recipe1.setName("Guláš");
+        manager.updateRecipeChanges(recipe1);
+        assertThat(manager.searchRecipes("gulas", 10))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(recipe1);
+
+        manager.deleteRecipe(recipe2);
+        assertThat(manager.searchRecipes("omáčka", 10)).isEmpty();
+    }
+
+    @Test
+    public void searchRecipesWithZeroLimit() {
+        expectedException.expect(IllegalArgumentException.class);
+        manager.searchRecipes("maso", 0);
+    }
+
+    @Test
+    public void suggestIngredients() {
+        Recipe recipe1 = sampleRecipe1();
+        Recipe recipe2 = sampleRecipe2();
+        manager.createRecipe(recipe1);
+        manager.createRecipe(recipe2);
+
+        assertThat(manager.suggestIngredients("M", 10)).containsExactly("maso", "mrkev");
+        assertThat(manager.suggestIngredients("str", 10)).containsExactly("strouhanka");
+
+        recipe2.getIngredients().remove("maso");
+        recipe2.getIngredients().add("mrkev");
+        recipe2.getIngredients().add("máslo");
+        manager.updateRecipe(recipe2);
+        assertThat(manager.suggestIngredients("m", 10)).containsExactly("mrkev", "máslo", "maso");
+
+        manager.deleteRecipe(recipe2);
+        assertThat(manager.suggestIngredients("m", 10)).containsExactly("maso", "mrkev");
+        assertThat(manager.suggestIngredients("str", 10)).isEmpty();
+    }
+
     //--------------------------------------------------------------------------
     // Operations with DB
     //--------------------------------------------------------------------------
@@ -405,4 +941,9 @@ public class RecipeManagerImplTest {
     public void findAllRecipesWithSqlExceptionThrown() throws SQLException {
         testExpectedServiceFailureException(RecipeManager::findAllRecipes);
     }
+
+    @Test
+    public void streamAllRecipesWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException(RecipeManager::streamAllRecipes);
+    }
 }
\ No newline at end of file
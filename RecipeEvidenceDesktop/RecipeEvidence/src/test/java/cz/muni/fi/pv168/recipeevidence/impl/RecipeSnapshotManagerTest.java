@@ -0,0 +1,201 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import cz.muni.fi.pv168.recipeevidence.CategoryManager;
+import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RecipeSnapshotManagerTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2017-05-01T10:00:00Z"), ZoneId.of("UTC"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataSource ds;
+    private RecipeManagerImpl recipeManager;
+    private CategoryManagerImpl categoryManager;
+    private RCDependencyManagerImpl dependencyManager;
+    private RecipeSnapshotManager snapshotManager;
+    private Path file;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:recipesnapshot-test");
+        dataSource.setCreateDatabase("create");
+        ds = dataSource;
+        DBUtils.executeSqlScript(ds, RecipeManager.class.getResource("createTables.sql"));
+        recipeManager = new RecipeManagerImpl(CLOCK);
+        recipeManager.setDataSource(ds);
+        categoryManager = new CategoryManagerImpl();
+        categoryManager.setDataSource(ds);
+        dependencyManager = new RCDependencyManagerImpl();
+        dependencyManager.setDataSource(ds);
+        snapshotManager = new RecipeSnapshotManager(CLOCK);
+        snapshotManager.setDataSource(ds);
+        file = folder.getRoot().toPath().resolve("recipes.snapshot");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(ds, CategoryManager.class.getResource("dropTables.sql"));
+    }
+
+    private Recipe createRecipe(String name, String procedure, LocalDate date, String... ingredients) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setProcedure(procedure);
+        recipe.setDate(date);
+        recipe.setIngredients(new HashSet<>(Arrays.asList(ingredients)));
+        recipeManager.createRecipe(recipe);
+        return recipe;
+    }
+
+    @Test
+    public void writeAndOpenSnapshot() throws IOException {
+        Recipe svickova = createRecipe("Svíčková", "Maso na smetaně", LocalDate.of(2017, 5, 1),
+                "smetana", "maso", "mrkev");
+        Recipe gulas = createRecipe("Guláš", "Vaříme", null, "maso", "cibule");
+        Recipe voda = createRecipe("Voda", "Nalijeme", null);
+        Category maso = new Category(null, "Maso");
+        Category omacky = new Category(null, "Omáčky");
+        categoryManager.createCategory(maso);
+        categoryManager.createCategory(omacky);
+        categoryManager.createCategory(new Category(null, "Prázdná"));
+        dependencyManager.assignRecipesToCategory(omacky, Collections.singletonList(svickova));
+        dependencyManager.assignRecipesToCategory(maso, Arrays.asList(svickova, gulas));
+
+        snapshotManager.writeSnapshot(file);
+        RecipeSnapshot snapshot = RecipeSnapshot.open(file);
+
+        assertThat(snapshot.getCreated()).isEqualTo(CLOCK.instant());
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.getRecipe(0)).isEqualToComparingOnlyGivenFields(svickova,
+                "id", "version", "name", "procedure", "date", "ingredients");
+        assertThat(snapshot.getIngredients(0)).containsExactly("maso", "mrkev", "smetana");
+        assertThat(snapshot.getCategories(0)).containsExactly(maso, omacky);
+        assertThat(snapshot.getRecipe(1)).isEqualToComparingOnlyGivenFields(gulas,
+                "id", "version", "name", "procedure", "date", "ingredients");
+        assertThat(snapshot.getCategories(1)).containsExactly(maso);
+        assertThat(snapshot.getId(2)).isEqualTo(voda.getId());
+        assertThat(snapshot.getIngredients(2)).isEmpty();
+        assertThat(snapshot.getCategories(2)).isEmpty();
+        assertThat(snapshot.getCategoryCount()).isEqualTo(3);
+        assertThat(snapshot.getCategory(2).getCategoryName()).isEqualTo("Prázdná");
+        assertThatThrownBy(() -> snapshot.getName(3)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isTrue();
+    }
+
+    @Test
+    public void detectChanges() throws IOException {
+        Recipe svickova = createRecipe("Svíčková", "Maso na smetaně", null, "maso");
+        Recipe gulas = createRecipe("Guláš", "Vaříme", null, "maso", "cibule");
+        Category maso = new Category(null, "Maso");
+        categoryManager.createCategory(maso);
+        snapshotManager.writeSnapshot(file);
+        RecipeSnapshot snapshot = RecipeSnapshot.open(file);
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isTrue();
+
+        dependencyManager.assignRecipesToCategory(maso, Collections.singletonList(gulas));
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isFalse();
+        snapshotManager.writeSnapshot(file);
+        snapshot = RecipeSnapshot.open(file);
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isTrue();
+
+        svickova.setProcedure("Maso na smetaně s knedlíkem");
+        recipeManager.updateRecipe(svickova);
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isFalse();
+        snapshotManager.writeSnapshot(file);
+        snapshot = RecipeSnapshot.open(file);
+
+        recipeManager.deleteRecipe(gulas);
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isFalse();
+        snapshotManager.writeSnapshot(file);
+        snapshot = RecipeSnapshot.open(file);
+
+        createRecipe("Palačinky", "Smažíme", null, "mouka");
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isFalse();
+        snapshotManager.writeSnapshot(file);
+        snapshot = RecipeSnapshot.open(file);
+
+        categoryManager.deleteCategory(maso);
+        assertThat(snapshotManager.isSnapshotCurrent(snapshot)).isFalse();
+    }
+
+    @Test
+    public void openInvalidSnapshot() throws IOException {
+        createRecipe("Guláš", "Vaříme", null, "maso");
+        snapshotManager.writeSnapshot(file);
+        Path current = RecipeSnapshot.currentFile(file);
+        byte[] bytes = Files.readAllBytes(current);
+        Files.write(current, Arrays.copyOf(bytes, bytes.length - 1));
+
+        assertThatThrownBy(() -> RecipeSnapshot.open(file)).isInstanceOf(IOException.class);
+        Files.write(current, new byte[]{1, 2, 3});
+        assertThatThrownBy(() -> RecipeSnapshot.open(file)).isInstanceOf(IOException.class);
+        assertThat(Files.exists(file.resolveSibling("recipes.snapshot.tmp"))).isFalse();
+        Files.delete(current);
+        assertThatThrownBy(() -> RecipeSnapshot.open(file)).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    public void openSnapshotWithInvalidOffset() throws IOException {
+        createRecipe("Guláš", "Vaříme", null, "maso");
+        snapshotManager.writeSnapshot(file);
+        Path current = RecipeSnapshot.currentFile(file);
+        byte[] bytes = Files.readAllBytes(current);
+        int stringsSize = ByteBuffer.wrap(bytes).getInt(36);
+        int recipe = RecipeSnapshot.HEADER_SIZE + stringsSize;
+
+        ByteBuffer.wrap(bytes).putInt(recipe + 16, stringsSize);
+        Files.write(current, bytes);
+        assertThatThrownBy(() -> RecipeSnapshot.open(file)).isInstanceOf(IOException.class);
+        ByteBuffer.wrap(bytes).putInt(recipe + 16, 0).putInt(recipe + 28, 2);
+        Files.write(current, bytes);
+        assertThatThrownBy(() -> RecipeSnapshot.open(file)).isInstanceOf(IOException.class);
+        ByteBuffer.wrap(bytes).putInt(recipe + 28, 0).putInt(bytes.length - RecipeSnapshot.LINK_SIZE, 1);
+        Files.write(current, bytes);
+        assertThatThrownBy(() -> RecipeSnapshot.open(file)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void writeSnapshotWhileOpen() throws IOException {
+        Recipe gulas = createRecipe("Guláš", "Vaříme", null, "maso");
+        snapshotManager.writeSnapshot(file);
+        RecipeSnapshot first = RecipeSnapshot.open(file);
+
+        createRecipe("Knedlík", "Vaříme", null, "mouka");
+        snapshotManager.writeSnapshot(file);
+        RecipeSnapshot second = RecipeSnapshot.open(file);
+
+        assertThat(first.size()).isEqualTo(1);
+        assertThat(first.getRecipe(0)).isEqualToComparingOnlyGivenFields(gulas,
+                "id", "version", "name", "procedure", "date", "ingredients");
+        assertThat(second.size()).isEqualTo(2);
+        assertThat(RecipeSnapshot.generations(file).keySet()).containsExactly(2L);
+    }
+}
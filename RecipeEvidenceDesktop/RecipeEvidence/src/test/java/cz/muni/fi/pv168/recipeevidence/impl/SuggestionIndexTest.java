@@ -0,0 +1,68 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SuggestionIndexTest {
+
+    @Test
+    public void completeByUsage() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.adjust("mouka", 5);
+        index.adjust("máslo", 7);
+        index.adjust("mléko", 7);
+        index.adjust("Mrkev", 1);
+        index.adjust("sůl", 9);
+
+        assertThat(index.complete("m", 10)).containsExactly("máslo", "mléko", "mouka", "Mrkev");
+        assertThat(index.complete("MA", 10)).containsExactly("máslo");
+        assertThat(index.complete("m", 2)).containsExactly("máslo", "mléko");
+        assertThat(index.complete("", 1)).containsExactly("sůl");
+        assertThat(index.complete("x", 10)).isEmpty();
+
+        index.adjust("mouka", 3);
+        index.remove("mléko");
+        assertThat(index.complete("m", 10)).containsExactly("mouka", "máslo", "Mrkev");
+        assertThat(index.getCount("mouka")).isEqualTo(8);
+        assertThat(index.getCount("mléko")).isEqualTo(-1);
+    }
+
+    @Test
+    public void completeAfterRebuilds() {
+        SuggestionIndex index = new SuggestionIndex();
+        Map<String, Integer> counts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            String name = "" + (char) ('a' + random.nextInt(3)) + (char) ('a' + random.nextInt(5)) + random.nextInt(100);
+            if (random.nextInt(10) == 0) {
+                index.remove(name);
+                counts.remove(name);
+            } else {
+                index.adjust(name, 1);
+                counts.merge(name, 1, Integer::sum);
+            }
+            if (i % 100 == 0) {
+                String prefix = name.substring(0, 1 + random.nextInt(2));
+                assertThat(index.complete(prefix, 7)).as(prefix).isEqualTo(expected(counts, prefix, 7));
+            }
+        }
+        assertThat(index.complete("", 20)).isEqualTo(expected(counts, "", 20));
+    }
+
+    private static List<String> expected(Map<String, Integer> counts, String prefix, int limit) {
+        return new ArrayList<>(counts.keySet()).stream()
+                .filter(name -> name.startsWith(prefix))
+                .sorted(Comparator.comparing((String name) -> -counts.get(name)).thenComparing(name -> name))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,44 @@
+package cz.muni.fi.pv168.recipeevidence.impl;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TextIndexTest {
+
+    @Test
+    public void analyzeFoldsAndStems() {
+        assertThat(TextAnalyzer.analyze("Cibule, cibuli a CIBULÍ se solí!"))
+                .containsExactly("cibul", "cibul", "cibul", "sol");
+        assertThat(TextAnalyzer.analyze("Svíčková na smetaně")).containsExactly("svick", "smetan");
+        assertThat(TextAnalyzer.analyze("200 g")).containsExactly("200");
+        assertThat(TextAnalyzer.analyze(null)).isEmpty();
+    }
+
+    @Test
+    public void rankByRelevance() {
+        TextIndex index = new TextIndex();
+        index.add(1, "Polévka", "Vaříme vodu s kořením");
+        index.add(2, "Bramborová polévka", "Brambory vaříme ve vodě");
+        index.add(3, "Bramboráky", "Brambory strouháme, smažíme");
+
+        assertThat(index.search("brambory", 10)).containsExactly(2, 3);
+        // rare term weighs more than common one
+        assertThat(index.search("polévka smažíme", 10)).startsWith(3);
+        assertThat(index.search("vodu", 1)).hasSize(1);
+        assertThat(index.search("knedlík", 10)).isEmpty();
+    }
+
+    @Test
+    public void addReplacesAndRemoveDeletes() {
+        TextIndex index = new TextIndex();
+        index.add(1, "Polévka", "Vaříme");
+        index.add(1, "Guláš", "Dusíme");
+        assertThat(index.search("polévka", 10)).isEmpty();
+        assertThat(index.search("guláš", 10)).containsExactly(1);
+
+        index.remove(1);
+        index.remove(1);
+        assertThat(index.search("guláš", 10)).isEmpty();
+    }
+}
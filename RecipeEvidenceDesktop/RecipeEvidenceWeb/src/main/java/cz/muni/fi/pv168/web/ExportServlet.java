@@ -0,0 +1,71 @@
+package cz.muni.fi.pv168.web;
+
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeExporter;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Servlet for downloading all recipes. Parameter "format" selects "csv" (default)
+ * or "jsonl". Recipes are streamed from the database as they are read, the length
+ * is not known in advance, so the response is sent in chunks.
+ */
+@WebServlet(ExportServlet.URL_MAPPING)
+public class ExportServlet extends HttpServlet {
+
+    public static final String URL_MAPPING = "/export";
+
+    private final static Logger log = LoggerFactory.getLogger(ExportServlet.class);
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        String formatParameter = request.getParameter("format");
+        RecipeFormat format;
+        String contentType;
+        String fileName;
+        if (formatParameter == null || formatParameter.equals("csv")) {
+            format = RecipeFormat.CSV;
+            contentType = "text/csv;charset=utf-8";
+            fileName = "recipes.csv";
+        } else if (formatParameter.equals("jsonl")) {
+            format = RecipeFormat.JSON_LINES;
+            contentType = "application/x-ndjson;charset=utf-8";
+            fileName = "recipes.jsonl";
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown format " + formatParameter);
+            return;
+        }
+        log.debug("GET export {}", format);
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        try {
+            long count = getRecipeExporter().exportAll(response.getOutputStream(), format);
+            log.debug("exported {} recipes", count);
+        } catch (IOException e) {
+            // usually the client closed the connection
+            log.warn("Export interrupted", e);
+        } catch (Exception e) {
+            log.error("Cannot export recipes", e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets RecipeExporter from ServletContext, where it was stored by {@link StartListener}.
+     *
+     * @return RecipeExporter instance
+     */
+    private RecipeExporter getRecipeExporter() {
+        return (RecipeExporter) getServletContext().getAttribute("recipeExporter");
+    }
+}
@@ -1,8 +1,11 @@
 package cz.muni.fi.pv168.web;
 
+import cz.muni.fi.pv168.recipeevidence.CategoryManager;
 import cz.muni.fi.pv168.recipeevidence.RecipeManager;
+import cz.muni.fi.pv168.recipeevidence.impl.IllegalEntityException;
 import cz.muni.fi.pv168.recipeevidence.impl.Recipe;
 import cz.muni.fi.pv168.recipeevidence.impl.RecipeManagerImpl;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeSortKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +16,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -22,6 +26,8 @@ import java.util.Set;
 public class RecipesServlet extends HttpServlet {
 
     private static final String LIST_JSP = "/list.jsp";
+    private static final int PAGE_SIZE = 50;
+    private static final int SUGGESTION_LIMIT = 10;
     public static final String URL_MAPPING = "/recipes";
 
     private final static Logger log = LoggerFactory.getLogger(RecipesServlet.class);
@@ -29,6 +35,10 @@ public class RecipesServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         log.debug("GET ...");
+        if ("/suggest".equals(request.getPathInfo())) {
+            suggest(request, response);
+            return;
+        }
         showRecipesList(request, response);
     }
 
@@ -103,12 +113,114 @@ public class RecipesServlet extends HttpServlet {
     }
 
     /**
-     * Stores the list of recipes to request attribute "recipes" and forwards to the JSP to display it.
+     * Gets CategoryManager from ServletContext, where it was stored by {@link StartListener}.
+     *
+     * @return CategoryManager instance
+     */
+    private CategoryManager getCategoryManager() {
+        return (CategoryManager) getServletContext().getAttribute("categoryManager");
+    }
+
+    /**
+     * Writes JSON array of names completing parameter "prefix", the most used first.
+     * Parameter "type" selects names of "ingredients" (default) or "categories",
+     * parameter "limit" the maximal number of names.
+     */
+    private void suggest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        request.setCharacterEncoding("utf-8");
+        String prefix = request.getParameter("prefix");
+        String type = request.getParameter("type");
+        String limitParameter = request.getParameter("limit");
+        List<String> names;
+        try {
+            int limit = limitParameter == null ? SUGGESTION_LIMIT : Integer.parseInt(limitParameter);
+            if (prefix == null || limit <= 0) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing prefix or invalid limit");
+                return;
+            }
+            if (type == null || type.equals("ingredients")) {
+                names = getRecipeManager().suggestIngredients(prefix, limit);
+            } else if (type.equals("categories")) {
+                names = getCategoryManager().suggestCategories(prefix, limit);
+            } else {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown type " + type);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid limit " + limitParameter);
+            return;
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (Exception e) {
+            log.error("Cannot suggest names", e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (String name : names) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            appendJsonString(json, name);
+        }
+        json.append(']');
+        response.setContentType("application/json;charset=utf-8");
+        response.getWriter().write(json.toString());
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Stores one page of recipes to request attribute "recipes" and forwards to the JSP to display it.
+     * The page follows the recipe with id and name given by parameters "after" and "afterName"
+     * in order given by parameter "sort".
      */
     private void showRecipesList(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        request.setCharacterEncoding("utf-8");
+        String afterParameter = request.getParameter("after");
+        String sortParameter = request.getParameter("sort");
+        Recipe after = null;
+        RecipeSortKey sort;
+        try {
+            if (afterParameter != null && !afterParameter.isEmpty()) {
+                after = new Recipe();
+                after.setId(Long.valueOf(afterParameter));
+                after.setName(request.getParameter("afterName"));
+            }
+            sort = sortParameter == null ? RecipeSortKey.ID : RecipeSortKey.valueOf(sortParameter);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid parameter after or sort");
+            return;
+        }
         try {
             log.debug("showing table of recipes");
-            request.setAttribute("recipes", getRecipeManager().findAllRecipes());
+            List<Recipe> recipes;
+            try {
+                recipes = getRecipeManager().findRecipes(after, PAGE_SIZE, sort);
+            } catch (IllegalArgumentException | IllegalEntityException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            request.setAttribute("recipes", recipes);
+            request.setAttribute("recipeCount", getRecipeManager().countRecipes());
+            request.setAttribute("sort", sort);
+            if (recipes.size() == PAGE_SIZE) {
+                request.setAttribute("nextAfter", recipes.get(PAGE_SIZE - 1));
+            }
             request.getRequestDispatcher(LIST_JSP).forward(request, response);
         } catch (Exception e) {
             log.error("Cannot show recipes", e);
@@ -1,11 +1,15 @@
 package cz.muni.fi.pv168.web;
 
 import cz.muni.fi.pv168.recipeevidence.CategoryManager;
-import cz.muni.fi.pv168.recipeevidence.RecipeManager;
 import cz.muni.fi.pv168.recipeevidence.common.DBUtils;
+import cz.muni.fi.pv168.recipeevidence.common.DataSourceFactory;
+import cz.muni.fi.pv168.recipeevidence.common.PooledDataSource;
+import cz.muni.fi.pv168.recipeevidence.common.SchemaMigrator;
+import cz.muni.fi.pv168.recipeevidence.impl.CategoryManagerImpl;
+import cz.muni.fi.pv168.recipeevidence.impl.RCDependencyManagerImpl;
 import cz.muni.fi.pv168.recipeevidence.impl.Recipe;
+import cz.muni.fi.pv168.recipeevidence.impl.RecipeExporter;
 import cz.muni.fi.pv168.recipeevidence.impl.RecipeManagerImpl;
-import org.apache.derby.jdbc.EmbeddedDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,7 +17,6 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
-import javax.sql.DataSource;
 import javax.xml.crypto.Data;
 import java.sql.SQLException;
 import java.time.Clock;
@@ -21,6 +24,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.HashSet;
+import java.util.Properties;
 import java.util.Set;
 
 /**
@@ -30,8 +34,11 @@ import java.util.Set;
 public class StartListener implements ServletContextListener {
 
     private final static Logger log = LoggerFactory.getLogger(StartListener.class);
-    private DataSource ds;
+    private PooledDataSource ds;
     private RecipeManagerImpl rm;
+    private RCDependencyManagerImpl dm;
+    private CategoryManagerImpl cm;
+    private RecipeExporter exporter;
     private final static ZonedDateTime NOW
             = LocalDateTime.now().atZone(ZoneId.of("UTC"));
 
@@ -55,20 +62,29 @@ public class StartListener implements ServletContextListener {
         if(ds == null){
             System.out.println("ds null");
         }
-        DBUtils.executeSqlScript(ds, RecipeManager.class.getResource("createTables.sql"));
+        SchemaMigrator.migrate(ds);
         rm = new RecipeManagerImpl(prepareClockMock(NOW));
         rm.setDataSource(ds);
+        rm.loadIngredientIndex();
+        rm.loadTextIndex();
+        dm = new RCDependencyManagerImpl();
+        dm.setDataSource(ds);
+        dm.loadCategoryIndex();
+        cm = new CategoryManagerImpl();
+        cm.setDataSource(ds);
+        exporter = new RecipeExporter();
+        exporter.setDataSource(ds);
 
         //add sample recipe
         Recipe recipe = sampleRecipe1();
         rm.createRecipe(recipe);
     }
 
-    private static DataSource prepareDataSource() throws SQLException {
-        EmbeddedDataSource ds = new EmbeddedDataSource();
-        ds.setDatabaseName("memory:recipemgr");
-        ds.setCreateDatabase("create");
-        return ds;
+    private static PooledDataSource prepareDataSource() {
+        Properties properties = new Properties();
+        properties.setProperty("url", "jdbc:derby:memory:recipemgr;create=true");
+        properties.setProperty("jmxName", "cz.muni.fi.pv168.web:type=DataSource,name=recipemgr");
+        return DataSourceFactory.createPooledDataSource(properties);
     }
 
     @Override
@@ -82,6 +98,10 @@ public class StartListener implements ServletContextListener {
             e.printStackTrace();
         }
         servletContext.setAttribute("recipeManager", rm);
+        servletContext.setAttribute("dependencyManager", dm);
+        servletContext.setAttribute("categoryManager", cm);
+        servletContext.setAttribute("recipeExporter", exporter);
+        servletContext.setAttribute("dataSource", ds);
         //servletContext.setAttribute("bookManager", new BookManagerImpl(dataSource));
         log.info("vytvořeny manažery a uloženy do atributů servletContextu");
     }
@@ -94,5 +114,11 @@ public class StartListener implements ServletContextListener {
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        log.info("pool connections: {}", ds.getMetrics());
+        try {
+            ds.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -3,6 +3,14 @@
 <html>
 <body>
 
+<p>
+    počet receptů: <c:out value="${recipeCount}"/>,
+    řadit podle: <a href="${pageContext.request.contextPath}/recipes?sort=ID">pořadí vložení</a>
+    | <a href="${pageContext.request.contextPath}/recipes?sort=NAME">názvu</a>,
+    stáhnout: <a href="${pageContext.request.contextPath}/export?format=csv">CSV</a>
+    | <a href="${pageContext.request.contextPath}/export?format=jsonl">JSON Lines</a>
+</p>
+
 <table border="1">
     <thead>
     <tr>
@@ -21,6 +29,14 @@
         </tr>
     </c:forEach>
 </table>
+<c:if test="${not empty nextAfter}">
+    <c:url var="nextUrl" value="/recipes">
+        <c:param name="sort" value="${sort}"/>
+        <c:param name="after" value="${nextAfter.id}"/>
+        <c:param name="afterName" value="${nextAfter.name}"/>
+    </c:url>
+    <a href="${nextUrl}">další</a>
+</c:if>
 
 <h2>Zadejte recept</h2>
 <c:if test="${not empty chyba}">